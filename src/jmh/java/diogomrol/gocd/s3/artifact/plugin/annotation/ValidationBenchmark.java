@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.annotation;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.reflect.TypeToken;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the generic checks of a store config, the blank, all-or-none and field type checks, through a Gson round
+ * trip of the config per check, as before, and through the {@link ConfigValidator} of the class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    private static final Type PROPERTIES = new TypeToken<Map<String, String>>() {
+    }.getType();
+    private static final Set<String> OPTIONAL = ImmutableSet.of("Region", "DownloadBufferSize", "Layout", "Transport", "SmallObjectSize",
+            "Endpoint", "SigningRegion", "HedgePercentile", "RoleArn", "ExternalId", "CircuitBreakerErrorRate");
+    private static final Set<String> AWS_ACCESS = ImmutableSet.of("AWSAccessKey", "AWSSecretAccessKey");
+
+    private final ArtifactStoreConfig config = new ArtifactStoreConfig("bucket", "eu-west-1", "access-key", "");
+    private final ConfigValidator validator = MetadataRegistry.of(ArtifactStoreConfig.class).validator();
+
+    @Setup
+    public void setUp() {
+        config.setDownloadBufferSize("1048576");
+        config.setHedgePercentile("ninety-five");
+    }
+
+    @Benchmark
+    public void gsonRoundTrip(Blackhole blackhole) {
+        Map<String, String> properties = Util.GSON.fromJson(Util.GSON.toJson(config), PROPERTIES);
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            if (!OPTIONAL.contains(property.getKey()) && StringUtils.isBlank(property.getValue())) {
+                blackhole.consume(ConfigValidator.blankError(property.getKey()));
+            }
+        }
+        for (String key : AWS_ACCESS) {
+            blackhole.consume(StringUtils.isBlank(Util.GSON.<Map<String, String>>fromJson(Util.GSON.toJson(config), PROPERTIES).get(key)));
+        }
+        properties = Util.GSON.fromJson(Util.GSON.toJson(config), PROPERTIES);
+        for (ConfigMetadata metadata : MetadataRegistry.of(ArtifactStoreConfig.class).getMetadata()) {
+            String value = properties.get(metadata.getKey());
+            if (StringUtils.isNotBlank(value)) {
+                blackhole.consume(metadata.getType().validate(value));
+            }
+        }
+    }
+
+    @Benchmark
+    public void validator(Blackhole blackhole) {
+        blackhole.consume(validator.validateAllFieldsAsRequired(config, OPTIONAL));
+        blackhole.consume(validator.validateAllOrNoneRequired(config, AWS_ACCESS));
+        blackhole.consume(validator.validateFieldTypes(config));
+    }
+
+    @Benchmark
+    public Object validateStoreConfig() {
+        return config.validate();
+    }
+}
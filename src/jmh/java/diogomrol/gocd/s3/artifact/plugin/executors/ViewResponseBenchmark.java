@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.executors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares answering the icon, view and plugin properties requests by reading, encoding and parsing the
+ * resources on each request, as before, with the responses rendered once and cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ViewResponseBenchmark {
+    private static final Gson GSON = new Gson();
+
+    @Benchmark
+    public GoPluginApiResponse iconPerRequest() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("content_type", "image/svg+xml");
+        jsonObject.addProperty("data", Base64.getEncoder().encodeToString(Util.readResourceBytes("/plugin-icon.svg")));
+        return DefaultGoPluginApiResponse.success(GSON.toJson(jsonObject));
+    }
+
+    @Benchmark
+    public GoPluginApiResponse iconCached() {
+        return new GetPluginIconExecutor().execute();
+    }
+
+    @Benchmark
+    public GoPluginApiResponse storeViewPerRequest() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("template", Util.readResource("/artifact-store.template.html"));
+        return DefaultGoPluginApiResponse.success(GSON.toJson(jsonObject));
+    }
+
+    @Benchmark
+    public GoPluginApiResponse storeViewCached() {
+        return new GetArtifactStoreViewExecutor().execute();
+    }
+
+    @Benchmark
+    public String pluginIdPerRequest() throws IOException {
+        Properties properties = new Properties();
+        properties.load(new StringReader(Util.readResource("/plugin.properties")));
+        return properties.getProperty("pluginId");
+    }
+
+    @Benchmark
+    public String pluginIdCached() {
+        return Util.pluginId();
+    }
+}
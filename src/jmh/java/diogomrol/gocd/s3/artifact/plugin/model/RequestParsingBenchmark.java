@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses publish and fetch requests with many environment variables and metadata entries through the reflective
+ * adapters of Gson and a {@code JsonObject} of the artifact plan configuration, as before, and through the
+ * streaming type adapters. Run with {@code -prof gc} for the allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestParsingBenchmark {
+    private static final Gson REFLECTIVE = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .serializeNulls()
+            .registerTypeAdapter(ArtifactPlanConfig.class, (JsonDeserializer<ArtifactPlanConfig>) (json, typeOfT, context) -> {
+                JsonObject jsonObject = json.getAsJsonObject();
+                return new S3FileArtifactPlanConfig(jsonObject.get("Source").getAsString(), optional(jsonObject, "Destination"), optional(jsonObject, "Baseline"));
+            })
+            .create();
+
+    @Param({"10", "2000"})
+    private int entries;
+
+    private String publishJson;
+    private String fetchJson;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> environmentVariables = new LinkedHashMap<>();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            environmentVariables.put("GO_ENVIRONMENT_VARIABLE_" + i, "/var/lib/go-agent/pipelines/build/value-" + i);
+            metadata.put("Key" + i, i % 2 == 0 ? "artifacts/pipe/" + i : Boolean.TRUE);
+        }
+        ArtifactStoreConfig storeConfig = new ArtifactStoreConfig("bucket", "eu-west-1", "access-key", "secret-key");
+        PublishArtifactRequest publishRequest = new PublishArtifactRequest(new ArtifactStore("store", storeConfig),
+                new ArtifactPlan("plan", "store", "bin/**/*", Optional.of("${GO_PIPELINE_NAME}/${GO_PIPELINE_COUNTER}")), "/var/lib/go-agent/pipelines/build");
+        publishRequest.setEnvironmentVariables(environmentVariables);
+        publishJson = publishRequest.toJSON();
+        fetchJson = new FetchArtifactRequest(storeConfig, metadata, new FetchArtifactConfig("", "", false), "/var/lib/go-agent/pipelines/build").toJSON();
+    }
+
+    @Benchmark
+    public PublishArtifactRequest publishReflective() {
+        return REFLECTIVE.fromJson(publishJson, PublishArtifactRequest.class);
+    }
+
+    @Benchmark
+    public PublishArtifactRequest publishStreaming() {
+        return PublishArtifactRequest.fromJSON(publishJson);
+    }
+
+    @Benchmark
+    public FetchArtifactRequest fetchReflective() {
+        return REFLECTIVE.fromJson(fetchJson, FetchArtifactRequest.class);
+    }
+
+    @Benchmark
+    public FetchArtifactRequest fetchStreaming() {
+        return FetchArtifactRequest.fromJSON(fetchJson);
+    }
+
+    private static Optional<String> optional(JsonObject jsonObject, String property) {
+        JsonElement value = jsonObject.get(property);
+        return value == null || value.isJsonNull() || value.getAsString().trim().isEmpty() ? Optional.empty() : Optional.of(value.getAsString());
+    }
+}
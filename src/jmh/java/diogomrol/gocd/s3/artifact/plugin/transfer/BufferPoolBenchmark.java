@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one small downloaded file per operation through the download writer, with a pool which
+ * keeps no buffers ({@code maxPooledBytes} 0, a fresh buffer per file) and with a pool which reuses them.
+ * Run with {@code -prof gc}; {@code gc.alloc.rate.norm} is the allocation per file transferred.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferPoolBenchmark {
+    private static final int FILE_SIZE = 64 * 1024;
+
+    @Param({"0", "67108864"})
+    public long maxPooledBytes;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private byte[] content;
+    private Path directory;
+    private File downloadTarget;
+    private BufferPool pool;
+    private ChannelDownloadWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = new byte[FILE_SIZE];
+        new Random(7).nextBytes(content);
+        directory = Files.createTempDirectory("buffer-pool-benchmark");
+        downloadTarget = directory.resolve("download.bin").toFile();
+        pool = new BufferPool(maxPooledBytes, direct);
+        writer = new ChannelDownloadWriter(ChannelDownloadWriter.DEFAULT_BUFFER_SIZE, pool);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println(pool);
+        Files.deleteIfExists(downloadTarget.toPath());
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        return writer.write(new ByteArrayInputStream(content), content.length, downloadTarget);
+    }
+}
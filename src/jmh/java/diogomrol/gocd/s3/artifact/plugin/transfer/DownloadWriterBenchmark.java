@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the SDK's {@code getObject(GetObjectRequest, File)} copy loop (10 KB buffer through a
+ * BufferedOutputStream) with {@link ChannelDownloadWriter}. Run with {@code -prof gc} for the allocation
+ * rate; on Linux the {@code writeSyscalls} and {@code gigabytes} counters give write syscalls per GB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadWriterBenchmark {
+    private static final int OBJECT_SIZE = 64 * 1024 * 1024;
+    private static final int NETWORK_READ_SIZE = 8 * 1024;
+
+    @Param({"65536", "1048576"})
+    public int bufferSize;
+
+    private byte[] content;
+    private Path directory;
+    private File target;
+    private ChannelDownloadWriter channelWriter;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = new byte[OBJECT_SIZE];
+        new java.util.Random(7).nextBytes(content);
+        directory = Files.createTempDirectory("download-writer-benchmark");
+        target = directory.resolve("artifact.bin").toFile();
+        channelWriter = new ChannelDownloadWriter(bufferSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target.toPath());
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long sdkStreamCopy(SyscallCounters counters) throws IOException {
+        long before = SyscallCounters.writeSyscalls();
+        long written = 0;
+        byte[] buffer = new byte[10 * 1024];
+        try (InputStream in = new NetworkLikeInputStream(content);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            int read;
+            while ((read = in.read(buffer)) > -1) {
+                out.write(buffer, 0, read);
+                written += read;
+            }
+        }
+        counters.record(before, written);
+        return written;
+    }
+
+    @Benchmark
+    public long channelWriter(SyscallCounters counters) throws IOException {
+        long before = SyscallCounters.writeSyscalls();
+        long written = channelWriter.write(new NetworkLikeInputStream(content), content.length, target);
+        counters.record(before, written);
+        return written;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SyscallCounters {
+        private static final Path PROC_IO = Paths.get("/proc/self/io");
+
+        public long writeSyscalls;
+        public double gigabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            writeSyscalls = 0;
+            gigabytes = 0;
+        }
+
+        void record(long before, long bytes) {
+            writeSyscalls += writeSyscalls() - before;
+            gigabytes += bytes / (1024.0 * 1024 * 1024);
+        }
+
+        static long writeSyscalls() {
+            if (!Files.isReadable(PROC_IO)) {
+                return 0;
+            }
+            try {
+                for (String line : Files.readAllLines(PROC_IO)) {
+                    if (line.startsWith("syscw:")) {
+                        return Long.parseLong(line.substring("syscw:".length()).trim());
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                return 0;
+            }
+            return 0;
+        }
+    }
+
+    private static class NetworkLikeInputStream extends InputStream {
+        private final byte[] content;
+        private int position;
+
+        NetworkLikeInputStream(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() {
+            return position < content.length ? content[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= content.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, NETWORK_READ_SIZE), content.length - position);
+            System.arraycopy(content, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
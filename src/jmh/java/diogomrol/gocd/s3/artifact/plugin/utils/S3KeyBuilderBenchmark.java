@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the key, relative path and local file of 100k files, as a publish does, through {@code Paths.get}
+ * and through {@link S3KeyBuilder}. Run with {@code -prof gc} for the allocation per file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S3KeyBuilderBenchmark {
+    private static final int FILE_COUNT = 100_000;
+
+    private final String workingDir = "/var/lib/go-agent/pipelines/build";
+    private final String destination = "artifacts/${GO_PIPELINE_COUNTER}/x";
+    private File[] files;
+
+    @Setup
+    public void setUp() {
+        files = new File[FILE_COUNT];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            files[i] = new File("target/classes/module" + (i % 100) + "/package" + (i % 10) + "/Class" + i + ".class");
+        }
+    }
+
+    @Benchmark
+    public void paths(Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(new File(Paths.get(workingDir, file.toString()).toString()));
+            blackhole.consume(Paths.get(destination, file.getPath()).toString().replace("\\", "/"));
+            blackhole.consume(file.toPath().toString().replace("\\", "/"));
+        }
+    }
+
+    @Benchmark
+    public void keyBuilder(Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(new File(workingDir, file.getPath()));
+            blackhole.consume(S3KeyBuilder.join(destination, file.getPath()));
+            blackhole.consume(S3KeyBuilder.normalize(file.getPath()));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Times requests to the store's bucket through its Transfer Acceleration endpoint and through its standard
+ * endpoint, so that operators can compare them before relying on acceleration. Each request is a GET of a key
+ * which is not expected to exist: an answer of 404 or 403 is a complete round trip.
+ * <p>
+ * The accelerated endpoint answers 400 {@code InvalidRequest} with a message naming Transfer Acceleration when
+ * acceleration is not enabled on the bucket. Any other error leaves the probe inconclusive. Results are kept
+ * for {@link #CACHE_TTL_MILLIS} per bucket and credentials, for at most {@link #MAX_CACHED} of them, so that
+ * validating the same store again sends no requests.
+ */
+public class AccelerationProbe {
+    static final String PROBE_KEY = ".gocd-acceleration-probe";
+    static final int ROUNDS = 3;
+    static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final String NOT_ENABLED_ERROR_CODE = "InvalidRequest";
+    static final String NOT_ENABLED_MESSAGE = "Transfer Acceleration is not configured";
+    static final int MAX_CACHED = 32;
+
+    private final S3ClientFactory clientFactory;
+    private final LongSupplier clock;
+    private final Map<List<Object>, CachedResult> results = Collections.synchronizedMap(new LinkedHashMap<List<Object>, CachedResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+            return size() > MAX_CACHED;
+        }
+    });
+
+    public AccelerationProbe(S3ClientFactory clientFactory) {
+        this(clientFactory, System::currentTimeMillis);
+    }
+
+    AccelerationProbe(S3ClientFactory clientFactory, LongSupplier clock) {
+        this.clientFactory = clientFactory;
+        this.clock = clock;
+    }
+
+    public Result probe(ArtifactStoreConfig artifactStoreConfig) {
+        long now = clock.getAsLong();
+        List<Object> key = cacheKey(artifactStoreConfig);
+        CachedResult cached = results.get(key);
+        if (cached != null && cached.expiresAtMillis > now) {
+            return cached.result;
+        }
+        Result result = measure(artifactStoreConfig);
+        results.put(key, new CachedResult(result, now + CACHE_TTL_MILLIS));
+        return result;
+    }
+
+    /**
+     * @return the settings the probe clients are built from, acceleration excludes a custom endpoint and path-style access
+     */
+    private static List<Object> cacheKey(ArtifactStoreConfig artifactStoreConfig) {
+        return Arrays.asList(artifactStoreConfig.getS3bucket(), artifactStoreConfig.getRegion(), artifactStoreConfig.getAwsaccesskey(),
+                artifactStoreConfig.getAwssecretaccesskey(), artifactStoreConfig.getRoleArn(), artifactStoreConfig.getExternalId(),
+                artifactStoreConfig.getDualStack());
+    }
+
+    private Result measure(ArtifactStoreConfig artifactStoreConfig) {
+        String bucket = artifactStoreConfig.getS3bucket();
+        AmazonS3 accelerated = clientFactory.probeClient(artifactStoreConfig, true);
+        AmazonS3 standard = clientFactory.probeClient(artifactStoreConfig, false);
+        try {
+            // the first request of each client opens its connection, which transfers do only once
+            roundTrip(accelerated, bucket, true);
+            roundTrip(standard, bucket, false);
+            long[] acceleratedNanos = new long[ROUNDS];
+            long[] standardNanos = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                acceleratedNanos[i] = roundTrip(accelerated, bucket, true);
+                standardNanos[i] = roundTrip(standard, bucket, false);
+            }
+            return Result.measured(median(acceleratedNanos), median(standardNanos));
+        } catch (AccelerationNotEnabledException e) {
+            return Result.notEnabled(e.getMessage());
+        } catch (RuntimeException e) {
+            return Result.failed(e.getMessage());
+        } finally {
+            accelerated.shutdown();
+            standard.shutdown();
+        }
+    }
+
+    private static long roundTrip(AmazonS3 s3, String bucket, boolean accelerated) {
+        long start = System.nanoTime();
+        try (S3Object ignored = s3.getObject(new GetObjectRequest(bucket, PROBE_KEY).withRange(0, 0))) {
+            // the probe key exists after all, its first byte was read
+        } catch (AmazonServiceException e) {
+            if (accelerated && isAccelerationNotEnabled(e)) {
+                throw new AccelerationNotEnabledException(e.getErrorMessage());
+            }
+            if (e.getStatusCode() != 403 && e.getStatusCode() != 404) {
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new SdkClientException(e);
+        }
+        return System.nanoTime() - start;
+    }
+
+    static boolean isAccelerationNotEnabled(AmazonServiceException e) {
+        return e.getStatusCode() == 400
+                && NOT_ENABLED_ERROR_CODE.equals(e.getErrorCode())
+                && e.getErrorMessage() != null && e.getErrorMessage().contains(NOT_ENABLED_MESSAGE);
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    public static class Result {
+        private final long acceleratedMillis;
+        private final long standardMillis;
+        private final boolean accelerationEnabled;
+        private final String error;
+
+        private Result(long acceleratedMillis, long standardMillis, boolean accelerationEnabled, String error) {
+            this.acceleratedMillis = acceleratedMillis;
+            this.standardMillis = standardMillis;
+            this.accelerationEnabled = accelerationEnabled;
+            this.error = error;
+        }
+
+        public static Result measured(long acceleratedNanos, long standardNanos) {
+            return new Result(TimeUnit.NANOSECONDS.toMillis(acceleratedNanos), TimeUnit.NANOSECONDS.toMillis(standardNanos), true, null);
+        }
+
+        public static Result notEnabled(String message) {
+            return new Result(-1, -1, false, message);
+        }
+
+        /**
+         * The bucket could not be reached, e.g. from a GoCD server without access to S3, or answered an unexpected
+         * error. Acceleration may well be enabled.
+         */
+        public static Result failed(String message) {
+            return new Result(-1, -1, true, message);
+        }
+
+        /**
+         * @return false only when S3 answered that acceleration is not enabled on the bucket
+         */
+        public boolean isAccelerationEnabled() {
+            return accelerationEnabled;
+        }
+
+        public boolean isInconclusive() {
+            return accelerationEnabled && error != null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getAcceleratedMillis() {
+            return acceleratedMillis;
+        }
+
+        public long getStandardMillis() {
+            return standardMillis;
+        }
+
+        @Override
+        public String toString() {
+            if (!accelerationEnabled) {
+                return "Transfer Acceleration is not enabled: " + error;
+            }
+            if (error != null) {
+                return "bucket could not be reached: " + error;
+            }
+            return String.format("accelerated %d ms, standard %d ms per request", acceleratedMillis, standardMillis);
+        }
+    }
+
+    private static class CachedResult {
+        private final Result result;
+        private final long expiresAtMillis;
+
+        CachedResult(Result result, long expiresAtMillis) {
+            this.result = result;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static class AccelerationNotEnabledException extends RuntimeException {
+        AccelerationNotEnabledException(String message) {
+            super(message);
+        }
+    }
+}
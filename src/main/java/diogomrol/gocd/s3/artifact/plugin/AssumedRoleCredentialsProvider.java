@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicSessionCredentials;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.model.AssumeRoleRequest;
+import com.amazonaws.services.securitytoken.model.Credentials;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
+
+/**
+ * Credentials of an assumed IAM role. The role is assumed on first use, then again in the background
+ * {@link #REFRESH_MARGIN_MILLIS} before the credentials expire, so that requests are signed with the credentials at
+ * hand instead of waiting for STS. When the background refresh fails, it is retried and the current credentials
+ * are used until they are about to expire; only then does a request wait for STS.
+ * <p>
+ * The background refresh only assumes the role again when the credentials were used since they were last assumed.
+ * An idle provider stops refreshing and assumes the role on its next use instead.
+ */
+class AssumedRoleCredentialsProvider implements AWSCredentialsProvider {
+    static final String SESSION_NAME = "gocd-s3-artifact-plugin";
+    static final int SESSION_DURATION_SECONDS = 3600;
+    static final long REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final long EXPIRY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final AWSSecurityTokenService sts;
+    private final String roleArn;
+    private final String externalId;
+    private final ScheduledExecutorService refresher;
+    private volatile Session session;
+    private volatile boolean used;
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean closed;
+
+    AssumedRoleCredentialsProvider(AWSSecurityTokenService sts, String roleArn, String externalId, ScheduledExecutorService refresher) {
+        this.sts = sts;
+        this.roleArn = roleArn;
+        this.externalId = externalId;
+        this.refresher = refresher;
+    }
+
+    @Override
+    public AWSCredentials getCredentials() {
+        Session current = session;
+        if (current == null || current.expiresSoon()) {
+            current = assumeIfExpiring();
+        } else {
+            used = true;
+        }
+        return current.credentials;
+    }
+
+    @Override
+    public void refresh() {
+        assume();
+    }
+
+    private synchronized Session assumeIfExpiring() {
+        Session current = session;
+        if (current != null && !current.expiresSoon()) {
+            // assumed by another thread meanwhile
+            return current;
+        }
+        return assume();
+    }
+
+    private synchronized Session assume() {
+        AssumeRoleRequest assumeRoleRequest = new AssumeRoleRequest()
+                .withRoleArn(roleArn)
+                .withRoleSessionName(SESSION_NAME)
+                .withDurationSeconds(SESSION_DURATION_SECONDS);
+        if (externalId != null) {
+            assumeRoleRequest.setExternalId(externalId);
+        }
+        Credentials credentials = sts.assumeRole(assumeRoleRequest).getCredentials();
+        Session assumed = new Session(new BasicSessionCredentials(credentials.getAccessKeyId(), credentials.getSecretAccessKey(), credentials.getSessionToken()),
+                credentials.getExpiration().getTime());
+        session = assumed;
+        used = false;
+        long refreshInMillis = Math.max(0, assumed.expiresAtMillis - REFRESH_MARGIN_MILLIS - System.currentTimeMillis());
+        scheduleRefresh(refreshInMillis);
+        LOG.debug(String.format("Assumed role `%s`, refreshing its credentials in %d s.", roleArn, TimeUnit.MILLISECONDS.toSeconds(refreshInMillis)));
+        return assumed;
+    }
+
+    /**
+     * Stops the background refresh. The credentials are still assumed on demand if the provider is used afterwards.
+     */
+    synchronized void close() {
+        closed = true;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!used) {
+            LOG.debug(String.format("Credentials of role `%s` were not used since they were assumed, assuming it again on next use.", roleArn));
+            return;
+        }
+        try {
+            assume();
+        } catch (SdkClientException e) {
+            LOG.warn(String.format("Could not refresh the credentials of role `%s`, retrying in %d s: %s", roleArn, TimeUnit.MILLISECONDS.toSeconds(RETRY_DELAY_MILLIS), e.getMessage()));
+            scheduleRefresh(RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private synchronized void scheduleRefresh(long delayMillis) {
+        // a blocking assume while a retry is pending leaves a single refresh scheduled
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (closed) {
+            scheduledRefresh = null;
+            return;
+        }
+        scheduledRefresh = refresher.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Session {
+        private final AWSCredentials credentials;
+        private final long expiresAtMillis;
+
+        private Session(AWSCredentials credentials, long expiresAtMillis) {
+            this.credentials = credentials;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private boolean expiresSoon() {
+            return expiresAtMillis - System.currentTimeMillis() < EXPIRY_MARGIN_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import diogomrol.gocd.s3.artifact.plugin.transfer.CircuitBreaker;
+
+/**
+ * Passes the requests of a client through the store's {@link CircuitBreaker}. A request is admitted once and its
+ * outcome reported after the SDK's retries.
+ */
+class CircuitBreakerHandler extends RequestHandler2 {
+    private final CircuitBreaker circuitBreaker;
+
+    CircuitBreakerHandler(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        circuitBreaker.acquire();
+        return request;
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        circuitBreaker.onSuccess();
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        if (isBucketFailure(e)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    static boolean isBucketFailure(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) e;
+            return serviceException.getStatusCode() >= 500 || RetryUtils.isThrottlingException(serviceException);
+        }
+        // requests aborted by the plugin itself say nothing about the bucket
+        return e instanceof SdkClientException && !(e instanceof AbortedException);
+    }
+}
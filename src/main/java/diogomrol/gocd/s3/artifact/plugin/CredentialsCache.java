@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+/**
+ * Resolves the credentials provider of a store once and shares it with every client built for a store with the same
+ * credentials settings. Providers of assumed roles keep their credentials fresh in the background while they are in
+ * use, see {@link AssumedRoleCredentialsProvider}. At most {@link #MAX_CACHED} providers are kept; the least recently
+ * resolved one is evicted beyond that and stops refreshing.
+ */
+public class CredentialsCache {
+    private static final CredentialsCache SHARED = new CredentialsCache(CredentialsCache::createStsClient, Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "s3-credentials-refresh");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
+    static final int MAX_CACHED = 32;
+
+    private final Map<List<String>, AWSCredentialsProvider> providers = Collections.synchronizedMap(new LinkedHashMap<List<String>, AWSCredentialsProvider>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, AWSCredentialsProvider> eldest) {
+            if (size() <= MAX_CACHED) {
+                return false;
+            }
+            if (eldest.getValue() instanceof AssumedRoleCredentialsProvider) {
+                ((AssumedRoleCredentialsProvider) eldest.getValue()).close();
+            }
+            return true;
+        }
+    });
+    private final Function<ArtifactStoreConfig, AWSSecurityTokenService> stsClients;
+    private final ScheduledExecutorService refresher;
+
+    CredentialsCache(Function<ArtifactStoreConfig, AWSSecurityTokenService> stsClients, ScheduledExecutorService refresher) {
+        this.stsClients = stsClients;
+        this.refresher = refresher;
+    }
+
+    public static CredentialsCache shared() {
+        return SHARED;
+    }
+
+    public AWSCredentialsProvider provider(ArtifactStoreConfig artifactStoreConfig) {
+        List<String> key = Arrays.asList(artifactStoreConfig.getAwsaccesskey(), artifactStoreConfig.getAwssecretaccesskey(),
+                artifactStoreConfig.getRegion(), artifactStoreConfig.getRoleArn(), artifactStoreConfig.getExternalId());
+        return providers.computeIfAbsent(key, ignored -> createProvider(artifactStoreConfig));
+    }
+
+    private AWSCredentialsProvider createProvider(ArtifactStoreConfig artifactStoreConfig) {
+        if (StringUtils.isNotBlank(artifactStoreConfig.getRoleArn())) {
+            return new AssumedRoleCredentialsProvider(stsClients.apply(artifactStoreConfig), artifactStoreConfig.getRoleArn().trim(),
+                    StringUtils.trimToNull(artifactStoreConfig.getExternalId()), refresher);
+        }
+        return baseProvider(artifactStoreConfig);
+    }
+
+    /**
+     * @return the store's access keys, or the default chain, e.g. the instance profile, when they are not set
+     */
+    static AWSCredentialsProvider baseProvider(ArtifactStoreConfig artifactStoreConfig) {
+        if (StringUtils.isNotBlank(artifactStoreConfig.getAwsaccesskey()) && StringUtils.isNotBlank(artifactStoreConfig.getAwssecretaccesskey())) {
+            return new AWSStaticCredentialsProvider(new BasicAWSCredentials(artifactStoreConfig.getAwsaccesskey(), artifactStoreConfig.getAwssecretaccesskey()));
+        }
+        return DefaultAWSCredentialsProviderChain.getInstance();
+    }
+
+    private static AWSSecurityTokenService createStsClient(ArtifactStoreConfig artifactStoreConfig) {
+        // the regional STS endpoint of the bucket, STS is not reached through the store's Endpoint
+        String region = StringUtils.isNotBlank(artifactStoreConfig.getRegion()) ? artifactStoreConfig.getRegion().trim() : Regions.US_EAST_1.getName();
+        return AWSSecurityTokenServiceClientBuilder.standard()
+                .withRegion(region)
+                .withCredentials(baseProvider(artifactStoreConfig))
+                .build();
+    }
+}
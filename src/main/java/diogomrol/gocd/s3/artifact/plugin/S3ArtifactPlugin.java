@@ -15,6 +15,10 @@
  */
 
 package diogomrol.gocd.s3.artifact.plugin;
+import diogomrol.gocd.s3.artifact.plugin.annotation.MetadataRegistry;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.model.FetchArtifactConfig;
+import diogomrol.gocd.s3.artifact.plugin.model.S3FileArtifactPlanConfig;
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.GoPlugin;
@@ -39,6 +43,7 @@ public class S3ArtifactPlugin implements GoPlugin {
     public void onLoad(PluginContext ctx) {
         final Properties properties = Util.getPluginProperties();
         LOG.info(String.format("Loading plugin %s[%s].", properties.getProperty("name"), properties.getProperty("pluginId")));
+        MetadataRegistry.register(ArtifactStoreConfig.class, S3FileArtifactPlanConfig.class, FetchArtifactConfig.class);
     }
 
     @Override
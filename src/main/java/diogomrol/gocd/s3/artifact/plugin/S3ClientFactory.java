@@ -1,36 +1,200 @@
 package diogomrol.gocd.s3.artifact.plugin;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.transfer.AsyncS3Transport;
+import diogomrol.gocd.s3.artifact.plugin.transfer.CircuitBreaker;
+import diogomrol.gocd.s3.artifact.plugin.transfer.S3Transport;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.SdkClientException;
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
 
 public class S3ClientFactory {
     private static final S3ClientFactory S3_CLIENT_FACTORY = new S3ClientFactory();
+    private static final int ASYNC_MAX_CONNECTIONS = 64;
+    private static final int PROBE_TIMEOUT_MILLIS = 3000;
+
+    // keyed by bucket, so that editing a store replaces its transport instead of leaving the old one running
+    private final Map<String, StoreScoped<S3Transport>> asyncTransports = new ConcurrentHashMap<>();
+    private final Map<String, StoreScoped<CircuitBreaker>> circuitBreakers = new ConcurrentHashMap<>();
 
     public AmazonS3 s3(ArtifactStoreConfig artifactStoreConfig) throws SdkClientException {
-        return createClient(artifactStoreConfig);
+        AmazonS3ClientBuilder s3ClientBuilder = clientBuilder(artifactStoreConfig);
+        CircuitBreaker circuitBreaker = circuitBreaker(artifactStoreConfig);
+        if (circuitBreaker != null) {
+            s3ClientBuilder = s3ClientBuilder.withRequestHandlers(new CircuitBreakerHandler(circuitBreaker));
+        }
+        return s3ClientBuilder.build();
+    }
+
+    /**
+     * Returns the non-blocking transport for the store. Its event loops are expensive to start, so one transport
+     * is kept per bucket for the lifetime of the plugin; callers must not close it. When the configuration of the
+     * bucket's store changes, the previous transport is closed and replaced.
+     */
+    public S3Transport asyncTransport(ArtifactStoreConfig artifactStoreConfig) {
+        return asyncTransports.compute(artifactStoreConfig.getS3bucket(), (bucket, current) -> {
+            if (current != null && current.settings.equals(artifactStoreConfig)) {
+                return current;
+            }
+            if (current != null) {
+                close(bucket, current.value);
+            }
+            return new StoreScoped<>(artifactStoreConfig, createAsyncTransport(artifactStoreConfig, circuitBreaker(artifactStoreConfig)));
+        }).value;
+    }
+
+    private static void close(String bucket, S3Transport transport) {
+        try {
+            transport.close();
+        } catch (IOException e) {
+            LOG.warn(String.format("Could not close the previous transport of S3 bucket `%s`: %s", bucket, e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns the circuit breaker shared by all clients and transports of the store's bucket, or {@code null} when
+     * the store has no {@code CircuitBreakerErrorRate}. A changed error rate replaces the breaker.
+     */
+    public CircuitBreaker circuitBreaker(ArtifactStoreConfig artifactStoreConfig) {
+        String errorRate = StringUtils.trimToNull(artifactStoreConfig.getCircuitBreakerErrorRate());
+        StoreScoped<CircuitBreaker> breaker = circuitBreakers.compute(artifactStoreConfig.getS3bucket(), (bucket, current) -> {
+            if (errorRate == null) {
+                return null;
+            }
+            if (current != null && current.settings.equals(errorRate)) {
+                return current;
+            }
+            return new StoreScoped<>(errorRate, new CircuitBreaker(bucket, Double.parseDouble(errorRate) / 100));
+        });
+        return breaker == null ? null : breaker.value;
+    }
+
+    /**
+     * Reports the state of the store's circuit breaker after a publish or fetch, to the job console as well when
+     * it is not closed. Nothing is reported while the breaker stays closed.
+     */
+    public void reportCircuitBreaker(ArtifactStoreConfig artifactStoreConfig, ConsoleLogger consoleLogger) {
+        CircuitBreaker circuitBreaker = circuitBreaker(artifactStoreConfig);
+        if (circuitBreaker == null || !circuitBreaker.needsReport()) {
+            return;
+        }
+        String message = String.format("Circuit breaker of S3 bucket `%s`: %s.", artifactStoreConfig.getS3bucket(), circuitBreaker);
+        if (circuitBreaker.getState() == CircuitBreaker.State.CLOSED) {
+            LOG.info(message);
+        } else {
+            consoleLogger.error(message);
+            LOG.warn(message);
+        }
+    }
+
+    /**
+     * Returns a client for the store's bucket through its Transfer Acceleration endpoint or through its standard
+     * endpoint, whatever the store's own setting. Requests time out after a few seconds and are not retried.
+     */
+    AmazonS3 probeClient(ArtifactStoreConfig artifactStoreConfig, boolean accelerate) {
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .withConnectionTimeout(PROBE_TIMEOUT_MILLIS)
+                .withRequestTimeout(PROBE_TIMEOUT_MILLIS)
+                .withMaxErrorRetry(0);
+        return clientBuilder(artifactStoreConfig)
+                .withAccelerateModeEnabled(accelerate)
+                .withClientConfiguration(clientConfiguration)
+                .build();
     }
 
     public static S3ClientFactory instance() {
         return S3_CLIENT_FACTORY;
     }
 
-    private static AmazonS3 createClient(ArtifactStoreConfig artifactStoreConfig) throws SdkClientException {
+    private static AmazonS3ClientBuilder clientBuilder(ArtifactStoreConfig artifactStoreConfig) {
         AmazonS3ClientBuilder s3ClientBuilder = AmazonS3ClientBuilder.standard();
 
-        if (StringUtils.isNotBlank(artifactStoreConfig.getRegion())) {
+        if (StringUtils.isNotBlank(artifactStoreConfig.getEndpoint())) {
+            s3ClientBuilder = s3ClientBuilder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(
+                    artifactStoreConfig.getEndpoint().trim(), StringUtils.trimToNull(artifactStoreConfig.endpointSigningRegion())));
+        } else if (StringUtils.isNotBlank(artifactStoreConfig.getRegion())) {
             s3ClientBuilder = s3ClientBuilder.withRegion(Regions.fromName(artifactStoreConfig.getRegion()));
         }
 
-        if (StringUtils.isNotBlank(artifactStoreConfig.getAwsaccesskey()) && StringUtils.isNotBlank(artifactStoreConfig.getAwssecretaccesskey())) {
-            BasicAWSCredentials awsCredentials = new BasicAWSCredentials(artifactStoreConfig.getAwsaccesskey(), artifactStoreConfig.getAwssecretaccesskey());
-            s3ClientBuilder = s3ClientBuilder.withCredentials(new AWSStaticCredentialsProvider(awsCredentials));
+        if (artifactStoreConfig.getPathStyleAccess()) {
+            s3ClientBuilder = s3ClientBuilder.withPathStyleAccessEnabled(true);
         }
 
-        return s3ClientBuilder.build();
+        if (artifactStoreConfig.getTransferAcceleration()) {
+            s3ClientBuilder = s3ClientBuilder.withAccelerateModeEnabled(true);
+        }
+
+        if (artifactStoreConfig.getDualStack()) {
+            s3ClientBuilder = s3ClientBuilder.withDualstackEnabled(true);
+        }
+
+        return s3ClientBuilder.withCredentials(CredentialsCache.shared().provider(artifactStoreConfig));
+    }
+
+    private static S3Transport createAsyncTransport(ArtifactStoreConfig artifactStoreConfig, CircuitBreaker circuitBreaker) {
+        S3AsyncClientBuilder s3ClientBuilder = S3AsyncClient.builder()
+                .httpClient(NettyNioAsyncHttpClient.builder().maxConcurrency(ASYNC_MAX_CONNECTIONS).build());
+
+        if (StringUtils.isNotBlank(artifactStoreConfig.getEndpoint())) {
+            s3ClientBuilder = s3ClientBuilder.endpointOverride(URI.create(artifactStoreConfig.getEndpoint().trim()));
+        }
+
+        String region = StringUtils.isNotBlank(artifactStoreConfig.getEndpoint())
+                ? artifactStoreConfig.endpointSigningRegion() : artifactStoreConfig.getRegion();
+        if (StringUtils.isNotBlank(region)) {
+            s3ClientBuilder = s3ClientBuilder.region(Region.of(region));
+        }
+
+        s3ClientBuilder = s3ClientBuilder.serviceConfiguration(S3Configuration.builder()
+                .pathStyleAccessEnabled(artifactStoreConfig.getPathStyleAccess())
+                .accelerateModeEnabled(artifactStoreConfig.getTransferAcceleration())
+                .dualstackEnabled(artifactStoreConfig.getDualStack())
+                .build());
+
+        if (StringUtils.isNotBlank(artifactStoreConfig.getRoleArn())) {
+            AWSCredentialsProvider roleCredentials = CredentialsCache.shared().provider(artifactStoreConfig);
+            s3ClientBuilder = s3ClientBuilder.credentialsProvider(() -> {
+                AWSSessionCredentials credentials = (AWSSessionCredentials) roleCredentials.getCredentials();
+                return AwsSessionCredentials.create(credentials.getAWSAccessKeyId(), credentials.getAWSSecretKey(), credentials.getSessionToken());
+            });
+        } else if (StringUtils.isNotBlank(artifactStoreConfig.getAwsaccesskey()) && StringUtils.isNotBlank(artifactStoreConfig.getAwssecretaccesskey())) {
+            AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(artifactStoreConfig.getAwsaccesskey(), artifactStoreConfig.getAwssecretaccesskey());
+            s3ClientBuilder = s3ClientBuilder.credentialsProvider(StaticCredentialsProvider.create(awsCredentials));
+        }
+
+        return new AsyncS3Transport(s3ClientBuilder.build(), AsyncS3Transport.DEFAULT_MAX_IN_FLIGHT, circuitBreaker);
+    }
+
+    /**
+     * A client kept for a bucket, with the settings it was built from.
+     */
+    private static class StoreScoped<T> {
+        private final Object settings;
+        private final T value;
+
+        StoreScoped(Object settings, T value) {
+            this.settings = settings;
+            this.value = value;
+        }
     }
 }
@@ -41,4 +41,8 @@ public class ConfigMetadata {
     public boolean isRequired() {
         return metadata.required();
     }
+
+    public FieldType getType() {
+        return metadata.type();
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.annotation;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the generic checks of {@link Validatable} by reading the exposed fields of a config class through the
+ * accessors {@link MetadataRegistry} resolved for it, instead of serializing the instance to JSON and parsing it
+ * back into a map for each check. Only the fields with a type other than {@link FieldType#STRING} are read for
+ * the type checks.
+ */
+public class ConfigValidator {
+    private final List<Property> properties;
+    private final Map<String, Property> propertiesByKey;
+    private final List<Property> typedProperties;
+
+    ConfigValidator(Map<String, Field> fields, List<ConfigMetadata> metadata) {
+        Map<String, FieldType> types = new HashMap<>();
+        for (ConfigMetadata configMetadata : metadata) {
+            types.put(configMetadata.getKey(), configMetadata.getType());
+        }
+        List<Property> properties = new ArrayList<>();
+        Map<String, Property> propertiesByKey = new HashMap<>();
+        List<Property> typedProperties = new ArrayList<>();
+        for (Map.Entry<String, Field> field : fields.entrySet()) {
+            Property property = new Property(field.getKey(), field.getValue());
+            properties.add(property);
+            propertiesByKey.put(property.key, property);
+            FieldType type = types.get(property.key);
+            if (type != null && type != FieldType.STRING) {
+                typedProperties.add(property.withType(type));
+            }
+        }
+        this.properties = Collections.unmodifiableList(properties);
+        this.propertiesByKey = Collections.unmodifiableMap(propertiesByKey);
+        this.typedProperties = Collections.unmodifiableList(typedProperties);
+    }
+
+    public List<ValidationError> validateAllFieldsAsRequired(Object instance, Set<String> excluding) {
+        List<ValidationError> errors = new ArrayList<>();
+        for (Property property : properties) {
+            if (!excluding.contains(property.key) && property.isBlank(instance)) {
+                errors.add(blankError(property.key));
+            }
+        }
+        return errors;
+    }
+
+    public List<ValidationError> validateAllOrNoneRequired(Object instance, Set<String> including) {
+        boolean allBlank = true, noneBlank = true;
+        for (String propertyName : including) {
+            Property property = propertiesByKey.get(propertyName);
+            boolean blank = property == null || property.isBlank(instance);
+
+            allBlank &= blank;
+            noneBlank &= !blank;
+        }
+        return allBlank || noneBlank ? Collections.emptyList() : allOrNoneErrors(including);
+    }
+
+    public List<ValidationError> validateFieldTypes(Object instance) {
+        List<ValidationError> errors = new ArrayList<>();
+        for (Property property : typedProperties) {
+            String value = property.read(instance);
+            if (StringUtils.isNotBlank(value)) {
+                String error = property.type.validate(value);
+                if (error != null) {
+                    errors.add(typeError(property.key, error));
+                }
+            }
+        }
+        return errors;
+    }
+
+    static ValidationError blankError(String key) {
+        return new ValidationError(key, key + " must not be blank.");
+    }
+
+    static List<ValidationError> allOrNoneErrors(Collection<String> including) {
+        List<String> fieldsList = Lists.newArrayList(including);
+        String fields = String.join(" and ", String.join(", ", fieldsList.subList(0, fieldsList.size() - 1)), fieldsList.get(fieldsList.size() - 1));
+
+        String errorMessage = fields + " must be filled altogether, if required.";
+
+        List<ValidationError> errors = new ArrayList<>();
+        for (String key : including) {
+            errors.add(new ValidationError(key, errorMessage));
+        }
+        return errors;
+    }
+
+    static ValidationError typeError(String key, String error) {
+        return new ValidationError(key, key + " " + error + ".");
+    }
+
+    private static class Property {
+        private final String key;
+        private final Field field;
+        private final boolean flag;
+        private final FieldType type;
+
+        Property(String key, Field field) {
+            this(key, field, FieldType.STRING);
+        }
+
+        private Property(String key, Field field, FieldType type) {
+            this.key = key;
+            this.field = field;
+            this.flag = field.getType() == boolean.class;
+            this.type = type;
+        }
+
+        Property withType(FieldType type) {
+            return new Property(key, field, type);
+        }
+
+        /**
+         * @return the value as Gson serializes it, a boolean as {@code true} or {@code false}
+         */
+        String read(Object instance) {
+            try {
+                return flag ? Boolean.toString(field.getBoolean(instance)) : (String) field.get(instance);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        boolean isBlank(Object instance) {
+            // a boolean is never blank
+            return !flag && StringUtils.isBlank(read(instance));
+        }
+    }
+}
@@ -17,26 +17,11 @@
 package diogomrol.gocd.s3.artifact.plugin.annotation;
 
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
 import java.util.List;
 
 public class MetadataHelper {
 
     public static List<ConfigMetadata> getMetadata(Class<?> clazz) {
-        return buildMetadata(clazz);
-    }
-
-    private static List<ConfigMetadata> buildMetadata(Class<?> clazz) {
-        Field[] fields = clazz.getDeclaredFields();
-        List<ConfigMetadata> metadata = new ArrayList<>();
-        for (Field field : fields) {
-            FieldMetadata profileField = field.getAnnotation(FieldMetadata.class);
-            if (profileField != null) {
-                final ConfigMetadata configMetadata = new ConfigMetadata(profileField.key(), profileField);
-                metadata.add(configMetadata);
-            }
-        }
-        return metadata;
+        return MetadataRegistry.of(clazz).getMetadata();
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.annotation;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scans the {@link FieldMetadata} annotations of a config class once, and keeps its metadata, the metadata
+ * response and the validator reading its fields for the lifetime of the plugin.
+ */
+public class MetadataRegistry {
+    private static final Map<Class<?>, ClassMetadata> CLASSES = new ConcurrentHashMap<>();
+
+    /**
+     * Scans the given classes ahead of their first use.
+     */
+    public static void register(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            of(clazz);
+        }
+    }
+
+    public static ClassMetadata of(Class<?> clazz) {
+        return CLASSES.computeIfAbsent(clazz, ClassMetadata::new);
+    }
+
+    public static class ClassMetadata {
+        private final List<ConfigMetadata> metadata;
+        private final String json;
+        private final ConfigValidator validator;
+
+        private ClassMetadata(Class<?> clazz) {
+            List<ConfigMetadata> metadata = new ArrayList<>();
+            Map<String, Field> properties = new LinkedHashMap<>();
+            for (Field field : clazz.getDeclaredFields()) {
+                FieldMetadata fieldMetadata = field.getAnnotation(FieldMetadata.class);
+                if (fieldMetadata != null) {
+                    metadata.add(new ConfigMetadata(fieldMetadata.key(), fieldMetadata));
+                }
+                if (properties != null && field.getAnnotation(Expose.class) != null) {
+                    properties = addProperty(properties, field, fieldMetadata);
+                }
+            }
+            for (Class<?> superclass = clazz.getSuperclass(); superclass != null; superclass = superclass.getSuperclass()) {
+                for (Field field : superclass.getDeclaredFields()) {
+                    if (field.getAnnotation(Expose.class) != null) {
+                        properties = null;
+                    }
+                }
+            }
+            this.metadata = Collections.unmodifiableList(metadata);
+            this.json = Util.GSON.toJson(metadata);
+            this.validator = properties == null ? null : new ConfigValidator(properties, this.metadata);
+        }
+
+        /**
+         * Adds a field for the validator when it reads the same value as its Gson serialization, otherwise drops all
+         * fields so that properties of the class are read through Gson.
+         */
+        private static Map<String, Field> addProperty(Map<String, Field> properties, Field field, FieldMetadata fieldMetadata) {
+            SerializedName name = field.getAnnotation(SerializedName.class);
+            boolean readable = fieldMetadata != null && name != null && name.value().equals(fieldMetadata.key())
+                    && !Modifier.isStatic(field.getModifiers())
+                    && (field.getType() == String.class || field.getType() == boolean.class);
+            if (!readable) {
+                return null;
+            }
+            field.setAccessible(true);
+            properties.put(fieldMetadata.key(), field);
+            return properties;
+        }
+
+        public List<ConfigMetadata> getMetadata() {
+            return metadata;
+        }
+
+        public String toJSON() {
+            return json;
+        }
+
+        /**
+         * @return the validator reading the fields of the class directly, or {@code null} when its properties can
+         * only be read through Gson
+         */
+        public ConfigValidator validator() {
+            return validator;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package diogomrol.gocd.s3.artifact.plugin.annotation;
 
-import com.google.common.collect.Lists;
 import com.google.gson.reflect.TypeToken;
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 import org.apache.commons.lang3.StringUtils;
@@ -24,6 +23,7 @@ import org.apache.commons.lang3.StringUtils;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -45,19 +45,28 @@ public interface Validatable {
     }
 
     default List<ValidationError> validateAllFieldsAsRequired(Set<String> excluding) {
+        ConfigValidator validator = MetadataRegistry.of(getClass()).validator();
+        if (validator != null) {
+            return validator.validateAllFieldsAsRequired(this, excluding);
+        }
         return toProperties().entrySet().stream()
                 .filter(entry -> !excluding.contains(entry.getKey()))
                 .filter(entry -> StringUtils.isBlank(entry.getValue()))
-                .map(entry -> new ValidationError(entry.getKey(), entry.getKey() + " must not be blank."))
+                .map(entry -> ConfigValidator.blankError(entry.getKey()))
                 .collect(Collectors.toList());
     }
 
     default List<ValidationError> validateAllOrNoneRequired(Set<String> including) {
+        ConfigValidator validator = MetadataRegistry.of(getClass()).validator();
+        if (validator != null) {
+            return validator.validateAllOrNoneRequired(this, including);
+        }
 
         boolean allBlank = true, noneBlank = true;
+        Map<String, String> properties = toProperties();
 
         for (String propertyName : including) {
-            String value = toProperties().get(propertyName);
+            String value = properties.get(propertyName);
 
             allBlank &= StringUtils.isBlank(value);
             noneBlank &= StringUtils.isNotBlank(value);
@@ -66,14 +75,23 @@ public interface Validatable {
         if (allBlank || noneBlank) {
             return Collections.emptyList();
         } else {
-            List<String> fieldsList = Lists.newArrayList(including);
-            String fields = String.join(" and ", String.join(", ", fieldsList.subList(0, fieldsList.size() - 1)), fieldsList.get(fieldsList.size() - 1));
-
-            String errorMessage = fields + " must be filled altogether, if required.";
+            return ConfigValidator.allOrNoneErrors(including);
+        }
+    }
 
-            return including.stream()
-                    .map(s -> new ValidationError(s, errorMessage))
-                    .collect(Collectors.toList());
+    default List<ValidationError> validateFieldTypes() {
+        ConfigValidator validator = MetadataRegistry.of(getClass()).validator();
+        if (validator != null) {
+            return validator.validateFieldTypes(this);
         }
+        Map<String, String> properties = toProperties();
+        return MetadataRegistry.of(getClass()).getMetadata().stream()
+                .filter(metadata -> StringUtils.isNotBlank(properties.get(metadata.getKey())))
+                .map(metadata -> {
+                    String error = metadata.getType().validate(properties.get(metadata.getKey()));
+                    return error == null ? null : ConfigValidator.typeError(metadata.getKey(), error);
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 }
@@ -20,9 +20,22 @@ import com.amazonaws.services.s3.model.*;
 import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
 import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
 import diogomrol.gocd.s3.artifact.plugin.model.AntDirectoryScanner;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactLayout;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactManifest;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.FetchArtifactConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.FetchArtifactRequest;
+import diogomrol.gocd.s3.artifact.plugin.model.TransportType;
+import diogomrol.gocd.s3.artifact.plugin.transfer.BufferPool;
+import diogomrol.gocd.s3.artifact.plugin.transfer.ChannelDownloadWriter;
+import diogomrol.gocd.s3.artifact.plugin.transfer.ChecksumMismatchException;
+import diogomrol.gocd.s3.artifact.plugin.transfer.HedgedGetter;
+import diogomrol.gocd.s3.artifact.plugin.transfer.ObjectGetter;
+import diogomrol.gocd.s3.artifact.plugin.transfer.S3Transport;
+import diogomrol.gocd.s3.artifact.plugin.transfer.SmallObjectFetcher;
+import diogomrol.gocd.s3.artifact.plugin.transfer.TransferExecutor;
+import diogomrol.gocd.s3.artifact.plugin.transfer.TransferMetrics;
+import diogomrol.gocd.s3.artifact.plugin.utils.S3KeyBuilder;
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 import com.amazonaws.services.s3.AmazonS3;
 import com.google.gson.annotations.Expose;
@@ -31,19 +44,31 @@ import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import java.io.*;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
-import static diogomrol.gocd.s3.artifact.plugin.utils.Util.normalizePath;
 import static java.lang.String.format;
 
 public class FetchArtifactExecutor implements RequestExecutor {
+    private static final int MAX_VERIFY_ATTEMPTS = 3;
+
     private FetchArtifactRequest fetchArtifactRequest;
     private final ConsoleLogger consoleLogger;
     private S3ClientFactory clientFactory;
+    private Long downloadBufferSize;
+    private ChannelDownloadWriter downloadWriter;
+    private ArtifactManifest manifest;
+    private S3Transport transport;
+    private long smallObjectSize = -1;
+    private SmallObjectFetcher smallObjects;
+    private ObjectGetter objectGetter = ObjectGetter.DIRECT;
+    private HedgedGetter hedgedGetter;
 
     public FetchArtifactExecutor(GoPluginApiRequest request, ConsoleLogger consoleLogger) {
         this(request, consoleLogger, S3ClientFactory.instance());
@@ -66,7 +91,7 @@ public class FetchArtifactExecutor implements RequestExecutor {
             final Map<String, Object> artifactMetadata = fetchArtifactRequest.getMetadata();
             validateMetadata(artifactMetadata);
 
-            FetchArtifactConfig fetchConfig = fetchArtifactRequest.getFetchArtifactConfig();
+            FetchArtifactConfig fetchConfig = fetchArtifactRequest.getFetchArtifactConfig().resolve(fetchArtifactRequest.getEnvironmentVariables());
             String fetchSubPath = fetchConfig.getSubPath();
             boolean fetchIsFile = fetchConfig.getIsFile();
 
@@ -78,13 +103,35 @@ public class FetchArtifactExecutor implements RequestExecutor {
             boolean sourceIsFile = (boolean)artifactMetadata.get("IsFile");
 
             AmazonS3 s3 = clientFactory.s3(fetchArtifactRequest.getArtifactStoreConfig());
+            downloadBufferSize = downloadBufferSize(fetchArtifactRequest.getArtifactStoreConfig());
+            downloadWriter = downloadBufferSize == null ? new ChannelDownloadWriter() : new ChannelDownloadWriter(downloadBufferSize);
+            if (fetchArtifactRequest.getArtifactStoreConfig().transportType() == TransportType.ASYNC) {
+                transport = clientFactory.asyncTransport(fetchArtifactRequest.getArtifactStoreConfig());
+            } else {
+                if (!Util.isBlank(fetchArtifactRequest.getArtifactStoreConfig().getHedgePercentile())) {
+                    hedgedGetter = new HedgedGetter(Double.parseDouble(fetchArtifactRequest.getArtifactStoreConfig().getHedgePercentile().trim()));
+                    objectGetter = hedgedGetter;
+                }
+                if (!Util.isBlank(fetchArtifactRequest.getArtifactStoreConfig().getSmallObjectSize())) {
+                    smallObjectSize = Math.min(Long.parseLong(fetchArtifactRequest.getArtifactStoreConfig().getSmallObjectSize().trim()), SmallObjectFetcher.MAX_SMALL_OBJECT_SIZE);
+                    smallObjects = new SmallObjectFetcher(new TransferMetrics(), BufferPool.shared(), objectGetter);
+                }
+            }
             String bucketName = fetchArtifactRequest.getArtifactStoreConfig().getS3bucket();
+            final String manifestKey = (String) artifactMetadata.get("Manifest");
+            manifest = Util.isBlank(manifestKey) ? null : ArtifactManifest.fromJSON(s3.getObjectAsString(bucketName, manifestKey));
+            ArtifactLayout layout = ArtifactLayout.fromValue((String) artifactMetadata.get("Layout"));
+            if(layout != ArtifactLayout.PREFIX) {
+                return fetchFromManifest(s3, bucketName, layout, awsDestinationPath, fetchConfig, workingDir, gocdSourcePatternOrFilePath, sourceIsFile);
+            }
             String s3InbucketPath;
+            String relativePath;
 
             String targetFile;
             if(sourceIsFile) {
-                targetFile = Paths.get(gocdSourcePatternOrFilePath).getFileName().toString();
-                s3InbucketPath = normalizePath(Paths.get(awsDestinationPath, gocdSourcePatternOrFilePath));
+                targetFile = S3KeyBuilder.fileName(gocdSourcePatternOrFilePath);
+                s3InbucketPath = S3KeyBuilder.join(awsDestinationPath, gocdSourcePatternOrFilePath);
+                relativePath = S3KeyBuilder.normalize(gocdSourcePatternOrFilePath);
             }
             else {
                 if(fetchIsFile) {
@@ -94,8 +141,9 @@ public class FetchArtifactExecutor implements RequestExecutor {
                         LOG.error(errMsg);
                         return DefaultGoPluginApiResponse.incompleteRequest(errMsg);
                     }
-                    targetFile = Paths.get(fetchSubPath).getFileName().toString();
-                    s3InbucketPath = normalizePath(Paths.get(awsDestinationPath, fetchSubPath));
+                    targetFile = S3KeyBuilder.fileName(fetchSubPath);
+                    s3InbucketPath = S3KeyBuilder.join(awsDestinationPath, fetchSubPath);
+                    relativePath = S3KeyBuilder.normalize(fetchSubPath);
                 }
                 else {
                     String prefix;
@@ -106,26 +154,50 @@ public class FetchArtifactExecutor implements RequestExecutor {
                     else if(Util.isBlank(fetchSubPath) && !Util.isBlank(awsDestinationPath) )
                         prefix = awsDestinationPath;
                     else
-                        prefix = normalizePath(Paths.get(awsDestinationPath, fetchSubPath));
+                        prefix = S3KeyBuilder.join(awsDestinationPath, fetchSubPath);
 
                     ObjectListing listing = Util.isBlank(prefix) ? s3.listObjects(bucketName) : s3.listObjects(bucketName, prefix);
                     consoleLogger.info(String.format("Retrieving multiple files from S3 bucket `%s` using prefix `%s`", bucketName, prefix));
                     int count = 0;
-                    while(true) {
-                        for(S3ObjectSummary obj : listing.getObjectSummaries()) {
-                            targetFile = obj.getKey().replaceFirst(prefix, "");
-                            File outFile = getTargetFile(fetchConfig, workingDir, targetFile);
-                            s3InbucketPath = obj.getKey();
-                            LOG.info(String.format("Retrieving file `%s` from S3 bucket `%s`.", s3InbucketPath, bucketName));
-                            GetObjectRequest getRequest = new GetObjectRequest(bucketName, s3InbucketPath);
-                            s3.getObject(getRequest, outFile);
-                            count++;
+                    List<CompletableFuture<Void>> pending = new ArrayList<>();
+                    try (TransferExecutor smallObjectTransfers = smallObjects == null ? null : new TransferExecutor()) {
+                        while(true) {
+                            List<Callable<Void>> smallDownloads = new ArrayList<>();
+                            for(S3ObjectSummary obj : listing.getObjectSummaries()) {
+                                if(ArtifactManifest.isManifestKey(obj.getKey()))
+                                    continue;
+                                // a literal prefix, where replaceFirst would read it as a regular expression
+                                targetFile = obj.getKey().startsWith(prefix) ? obj.getKey().substring(prefix.length()) : obj.getKey();
+                                File outFile = getTargetFile(fetchConfig, workingDir, targetFile);
+                                s3InbucketPath = obj.getKey();
+                                LOG.info(String.format("Retrieving file `%s` from S3 bucket `%s`.", s3InbucketPath, bucketName));
+                                String objectPath = relativeTo(awsDestinationPath, s3InbucketPath);
+                                if (transport != null) {
+                                    pending.add(download(bucketName, s3InbucketPath, outFile, objectPath));
+                                } else if (isSmall(obj.getSize())) {
+                                    GetObjectRequest getRequest = new GetObjectRequest(bucketName, s3InbucketPath);
+                                    smallDownloads.add(() -> {
+                                        download(s3, getRequest, outFile, objectPath, true);
+                                        return null;
+                                    });
+                                } else {
+                                    GetObjectRequest getRequest = new GetObjectRequest(bucketName, s3InbucketPath);
+                                    download(s3, getRequest, outFile, objectPath);
+                                }
+                                count++;
+                            }
+                            if (!smallDownloads.isEmpty()) {
+                                smallObjectTransfers.invokeAll(smallDownloads);
+                            }
+                            if(listing.isTruncated())
+                                listing = s3.listNextBatchOfObjects (listing);
+                            else
+                                break;
                         }
-                        if(listing.isTruncated())
-                            listing = s3.listNextBatchOfObjects (listing);
-                        else
-                            break;
                     }
+                    S3Transport.awaitAll(pending);
+                    reportSmallObjects();
+                    reportHedging();
                     if(count > 0) {
                         consoleLogger.info(String.format("Successfully downloaded `%s` files from S3 bucket `%s` using prefix `%s`", count, bucketName, prefix));
                         return DefaultGoPluginApiResponse.success("");
@@ -142,7 +214,7 @@ public class FetchArtifactExecutor implements RequestExecutor {
             consoleLogger.info(String.format("Retrieving file `%s` from S3 bucket `%s`.", s3InbucketPath, bucketName));
             LOG.info(String.format("Retrieving file `%s` from S3 bucket `%s`.", s3InbucketPath, bucketName));
             GetObjectRequest getRequest = new GetObjectRequest(bucketName, s3InbucketPath);
-            s3.getObject(getRequest, outFile);
+            download(s3, getRequest, outFile, relativePath);
 
             consoleLogger.info(String.format("Source `%s` successfully pulled from S3 bucket `%s` to `%s`.", s3InbucketPath, bucketName, outFile));
 
@@ -152,16 +224,207 @@ public class FetchArtifactExecutor implements RequestExecutor {
             consoleLogger.error(message);
             LOG.error(message);
             return DefaultGoPluginApiResponse.error(message);
+        } finally {
+            if (hedgedGetter != null) {
+                hedgedGetter.close();
+            }
+            clientFactory.reportCircuitBreaker(fetchArtifactRequest.getArtifactStoreConfig(), consoleLogger);
+        }
+    }
+
+    /**
+     * Fetches an artifact in a layout whose keys are derived from the manifest's paths rather than listed.
+     */
+    private GoPluginApiResponse fetchFromManifest(AmazonS3 s3, String bucketName, ArtifactLayout layout, String destination, FetchArtifactConfig fetchConfig, String workingDir, String source, boolean sourceIsFile) throws IOException {
+        if (manifest == null) {
+            throw new RuntimeException(format("Cannot fetch the source file from S3: Invalid metadata received from the GoCD server. Artifacts in the `%s` layout must contain the key `Manifest`.", layout.getValue()));
+        }
+        String fetchSubPath = fetchConfig.getSubPath();
+        Map<String, File> files = new LinkedHashMap<>();
+        if (sourceIsFile || fetchConfig.getIsFile()) {
+            if (!sourceIsFile && Util.isBlank(fetchSubPath)) {
+                String errMsg = "Invalid Fetch Configuration: Fetching a single file requires to specify a subpath when multiple artifacts were published";
+                consoleLogger.error(errMsg);
+                LOG.error(errMsg);
+                return DefaultGoPluginApiResponse.incompleteRequest(errMsg);
+            }
+            String path = S3KeyBuilder.normalize(sourceIsFile ? source : fetchSubPath);
+            if (manifest.get(path) == null) {
+                String message = format("File `%s` is not part of the artifact in S3 bucket `%s`", path, bucketName);
+                consoleLogger.error(message);
+                LOG.error(message);
+                return DefaultGoPluginApiResponse.badRequest(message);
+            }
+            files.put(path, getTargetFile(fetchConfig, workingDir, S3KeyBuilder.fileName(path)));
+        } else {
+            String prefix = Util.isBlank(fetchSubPath) ? "" : S3KeyBuilder.normalize(fetchSubPath);
+            for (String path : manifest.getFiles().keySet()) {
+                if (path.startsWith(prefix)) {
+                    files.put(path, getTargetFile(fetchConfig, workingDir, path.substring(prefix.length())));
+                }
+            }
+            if (files.isEmpty()) {
+                String message = format("No files are matching prefix `%s` in the artifact in S3 bucket `%s`", prefix, bucketName);
+                consoleLogger.error(message);
+                LOG.error(message);
+                return DefaultGoPluginApiResponse.badRequest(message);
+            }
+        }
+
+        consoleLogger.info(format("Retrieving %d files from S3 bucket `%s`.", files.size(), bucketName));
+        if (transport != null) {
+            List<CompletableFuture<Void>> pending = new ArrayList<>(files.size());
+            for (Map.Entry<String, File> file : files.entrySet()) {
+                pending.add(download(bucketName, layout.keyOf(destination, file.getKey(), manifest.get(file.getKey()).getSha256()), file.getValue(), file.getKey()));
+            }
+            S3Transport.awaitAll(pending);
+            consoleLogger.info(format("Successfully downloaded `%s` files from S3 bucket `%s`.", files.size(), bucketName));
+            return DefaultGoPluginApiResponse.success("");
+        }
+        List<Callable<Void>> downloads = new ArrayList<>(files.size());
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            ArtifactManifest.Entry entry = manifest.get(file.getKey());
+            String key = layout.keyOf(destination, file.getKey(), entry.getSha256());
+            downloads.add(() -> {
+                LOG.info(format("Retrieving file `%s` from S3 bucket `%s` as `%s`.", file.getKey(), bucketName, key));
+                download(s3, new GetObjectRequest(bucketName, key), file.getValue(), file.getKey(), isSmall(entry.getSize()));
+                return null;
+            });
+        }
+        try (TransferExecutor transfers = new TransferExecutor()) {
+            transfers.invokeAll(downloads);
+        }
+        reportSmallObjects();
+        reportHedging();
+        consoleLogger.info(format("Successfully downloaded `%s` files from S3 bucket `%s`.", files.size(), bucketName));
+        return DefaultGoPluginApiResponse.success("");
+    }
+
+    private void download(AmazonS3 s3, GetObjectRequest getRequest, File outFile, String relativePath) throws IOException {
+        download(s3, getRequest, outFile, relativePath, false);
+    }
+
+    private void download(AmazonS3 s3, GetObjectRequest getRequest, File outFile, String relativePath, boolean small) throws IOException {
+        ArtifactManifest.Entry expected = manifest == null ? null : manifest.get(relativePath);
+        if (expected == null) {
+            if (manifest != null) {
+                LOG.warn(String.format("No checksum recorded for `%s`, fetching it without verification.", getRequest.getKey()));
+            }
+            if (small) {
+                smallObjects.fetch(s3, getRequest, outFile.toPath(), null);
+            } else {
+                // the SDK's file download cannot be hedged, it sends the request itself
+                download(s3, getRequest, outFile, downloadBufferSize == null && hedgedGetter == null ? null : downloadWriter, null);
+            }
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (small) {
+                    smallObjects.fetch(s3, getRequest, outFile.toPath(), expected.getSha256());
+                } else {
+                    download(s3, getRequest, outFile, downloadWriter, expected.getSha256());
+                }
+                return;
+            } catch (ChecksumMismatchException e) {
+                if (attempt >= MAX_VERIFY_ATTEMPTS) {
+                    throw e;
+                }
+                consoleLogger.error(format("%s Fetching `%s` again.", e.getMessage(), getRequest.getKey()));
+                LOG.warn(format("%s Fetching `%s` again.", e.getMessage(), getRequest.getKey()));
+            }
+        }
+    }
+
+    private CompletableFuture<Void> download(String bucketName, String key, File outFile, String relativePath) {
+        ArtifactManifest.Entry expected = manifest == null ? null : manifest.get(relativePath);
+        if (expected == null && manifest != null) {
+            LOG.warn(String.format("No checksum recorded for `%s`, fetching it without verification.", key));
+        }
+        return download(bucketName, key, outFile, expected == null ? null : expected.getSha256(), 1);
+    }
+
+    private CompletableFuture<Void> download(String bucketName, String key, File outFile, String expectedSha256, int attempt) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        transport.download(bucketName, key, outFile, expectedSha256).whenComplete((ignored, failure) -> {
+            Throwable cause = failure == null ? null : S3Transport.unwrap(failure);
+            if (cause == null) {
+                result.complete(null);
+            } else if (cause instanceof ChecksumMismatchException && attempt < MAX_VERIFY_ATTEMPTS) {
+                consoleLogger.error(format("%s Fetching `%s` again.", cause.getMessage(), key));
+                LOG.warn(format("%s Fetching `%s` again.", cause.getMessage(), key));
+                download(bucketName, key, outFile, expectedSha256, attempt + 1).whenComplete((retried, retryFailure) -> {
+                    if (retryFailure == null) {
+                        result.complete(null);
+                    } else {
+                        result.completeExceptionally(retryFailure);
+                    }
+                });
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    private void download(AmazonS3 s3, GetObjectRequest getRequest, File outFile, ChannelDownloadWriter writer, String expectedSha256) throws IOException {
+        if (writer == null) {
+            s3.getObject(getRequest, outFile);
+            return;
+        }
+        S3Object object = objectGetter.getObject(s3, getRequest);
+        S3ObjectInputStream content = object.getObjectContent();
+        try {
+            writer.write(content, object.getObjectMetadata().getContentLength(), outFile, expectedSha256);
+        } catch (IOException | RuntimeException e) {
+            content.abort();
+            throw e;
+        } finally {
+            object.close();
+        }
+    }
+
+    private boolean isSmall(long size) {
+        return smallObjects != null && size <= smallObjectSize;
+    }
+
+    private void reportSmallObjects() {
+        if (smallObjects != null && smallObjects.getMetrics().getRequests() > 0) {
+            String message = format("Fetched small objects: %s.", smallObjects.getMetrics());
+            consoleLogger.info(message);
+            LOG.info(message);
+        }
+    }
+
+    private void reportHedging() {
+        if (hedgedGetter != null && hedgedGetter.getRequests() > 0) {
+            String message = format("Hedged requests: %s.", hedgedGetter);
+            consoleLogger.info(message);
+            LOG.info(message);
+        }
+    }
+
+    private static String relativeTo(String destination, String key) {
+        if (!Util.isBlank(destination) && key.startsWith(destination + "/")) {
+            return key.substring(destination.length() + 1);
+        }
+        return key;
+    }
+
+    private static Long downloadBufferSize(ArtifactStoreConfig storeConfig) {
+        if (Util.isBlank(storeConfig.getDownloadBufferSize())) {
+            return null;
         }
+        return Long.parseLong(storeConfig.getDownloadBufferSize().trim());
     }
 
     private File getTargetFile(FetchArtifactConfig fetchConfig, String workingDir, String targetFile) {
         File outFile;
         if(Util.isBlank(fetchConfig.getDestination())) {
-            outFile = new File(Paths.get(workingDir, targetFile).toString());
+            outFile = new File(workingDir, targetFile);
         }
         else {
-            outFile = new File(Paths.get(workingDir, fetchConfig.getDestination(), targetFile).toString());
+            outFile = new File(new File(workingDir, fetchConfig.getDestination()), targetFile);
         }
         return outFile;
     }
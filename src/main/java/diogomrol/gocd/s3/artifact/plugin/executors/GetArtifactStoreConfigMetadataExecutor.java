@@ -16,19 +16,14 @@
 
 package diogomrol.gocd.s3.artifact.plugin.executors;
 
-import diogomrol.gocd.s3.artifact.plugin.annotation.ConfigMetadata;
-import diogomrol.gocd.s3.artifact.plugin.annotation.MetadataHelper;
+import diogomrol.gocd.s3.artifact.plugin.annotation.MetadataRegistry;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
-import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.List;
-
 public class GetArtifactStoreConfigMetadataExecutor implements RequestExecutor {
 
     public GoPluginApiResponse execute() {
-        final List<ConfigMetadata> storeConfigMetadata = MetadataHelper.getMetadata(ArtifactStoreConfig.class);
-        return DefaultGoPluginApiResponse.success( Util.GSON.toJson(storeConfigMetadata));
+        return DefaultGoPluginApiResponse.success(MetadataRegistry.of(ArtifactStoreConfig.class).toJSON());
     }
 }
@@ -17,19 +17,13 @@
 package diogomrol.gocd.s3.artifact.plugin.executors;
 
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
 public class GetArtifactStoreViewExecutor implements RequestExecutor {
-    private static final Gson GSON = new Gson();
 
     @Override
     public GoPluginApiResponse execute() {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("template", Util.readResource("/artifact-store.template.html"));
-        return DefaultGoPluginApiResponse.success( GSON.toJson(jsonObject));
+        return DefaultGoPluginApiResponse.success(Util.viewResponse("/artifact-store.template.html"));
     }
-
 }
@@ -23,8 +23,10 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import java.util.ArrayList;
 
 public class GetFetchArtifactMetadataExecutor implements RequestExecutor {
+    private static final String METADATA = Util.GSON.toJson(new ArrayList<>());
+
     public GoPluginApiResponse execute() {
-        return DefaultGoPluginApiResponse.success(Util.GSON.toJson(new ArrayList<>()));
+        return DefaultGoPluginApiResponse.success(METADATA);
     }
 }
 
@@ -18,22 +18,14 @@ package diogomrol.gocd.s3.artifact.plugin.executors;
 
 
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
-import java.util.Base64;
-
 public class GetPluginIconExecutor implements RequestExecutor {
-    private static final Gson GSON = new Gson();
 
     @Override
     public GoPluginApiResponse execute() {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("content_type", getContentType());
-        jsonObject.addProperty("data", Base64.getEncoder().encodeToString(Util.readResourceBytes(getIcon())));
-        return DefaultGoPluginApiResponse.success(GSON.toJson(jsonObject));
+        return DefaultGoPluginApiResponse.success(Util.iconResponse(getIcon(), getContentType()));
     }
 
     private String getContentType() {
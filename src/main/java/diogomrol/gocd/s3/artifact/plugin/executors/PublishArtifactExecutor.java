@@ -19,26 +19,54 @@ package diogomrol.gocd.s3.artifact.plugin.executors;
 import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
 import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import diogomrol.gocd.s3.artifact.plugin.model.*;
+import diogomrol.gocd.s3.artifact.plugin.transfer.ArtifactPromoter;
+import diogomrol.gocd.s3.artifact.plugin.transfer.Checksums;
+import diogomrol.gocd.s3.artifact.plugin.transfer.ContentAddressedStore;
+import diogomrol.gocd.s3.artifact.plugin.transfer.FileChecksums;
+import diogomrol.gocd.s3.artifact.plugin.transfer.FileUploader;
+import diogomrol.gocd.s3.artifact.plugin.transfer.MultipartFileUploader;
+import diogomrol.gocd.s3.artifact.plugin.transfer.S3Transport;
+import diogomrol.gocd.s3.artifact.plugin.transfer.ServerSideCopier;
+import diogomrol.gocd.s3.artifact.plugin.transfer.TransferExecutor;
+import diogomrol.gocd.s3.artifact.plugin.transfer.TransferPipeline;
+import diogomrol.gocd.s3.artifact.plugin.utils.S3KeyBuilder;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
-import static diogomrol.gocd.s3.artifact.plugin.utils.Util.normalizePath;
 
 public class PublishArtifactExecutor implements RequestExecutor {
+    private static final int HASH_WORKERS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    private static final int UPLOAD_WORKERS = TransferExecutor.virtualThreadsAvailable()
+            ? TransferExecutor.DEFAULT_VIRTUAL_CONCURRENCY : TransferExecutor.DEFAULT_CONCURRENCY;
+    // large files start first so that their long tail overlaps the small ones, which fill the remaining workers
+    private static final Comparator<FileUpload> LARGEST_FIRST = Comparator.comparingLong((FileUpload upload) -> upload.size).reversed();
+    private static final int SCHEDULING_WINDOW = 1024;
+
     private final PublishArtifactRequest publishArtifactRequest;
     private final PublishArtifactResponse publishArtifactResponse;
     private final ConsoleLogger consoleLogger;
     private final S3ClientFactory clientFactory;
+    private final FileUploader fileUploader = new FileUploader();
+    private final ContentAddressedStore contentAddressedStore = new ContentAddressedStore();
+    private final ServerSideCopier copier = new ServerSideCopier();
+    private final ArtifactPromoter promoter = new ArtifactPromoter();
     private AntDirectoryScanner scanner;
 
     public PublishArtifactExecutor(GoPluginApiRequest request, ConsoleLogger consoleLogger) {
@@ -65,53 +93,189 @@ public class PublishArtifactExecutor implements RequestExecutor {
             destinationFolder = envResolver.resolve(publishArtifactRequest.getEnvironmentVariables());
             final String s3bucket = artifactStoreConfig.getS3bucket();
             final String workingDir = publishArtifactRequest.getAgentWorkingDir();
-            String s3InbucketPath;
-            if(!destinationFolder.isEmpty()) {
-                s3InbucketPath = normalizePath(Paths.get(destinationFolder));
+            final String s3InbucketPath = destinationFolder.isEmpty() ? "" : S3KeyBuilder.normalize(destinationFolder);
+
+            final ArtifactLayout layout = artifactStoreConfig.artifactLayout();
+            if (S3Uri.isS3Uri(sourcePattern)) {
+                return promote(s3, sourcePattern, s3bucket, s3InbucketPath, layout, artifactPlan.getId());
             }
-            else {
-                s3InbucketPath = "";
+            final String baselineSetting = artifactPlan.getArtifactPlanConfig().getBaseline();
+            final ArtifactBaseline baseline = Util.isBlank(baselineSetting) ? null : loadBaseline(s3, s3bucket, baselineSetting, artifactPlan.getId());
+            if (baseline != null && layout == ArtifactLayout.CAS && baseline.getManifest().getLayout() == ArtifactLayout.CAS) {
+                contentAddressedStore.addKnownBlobs(baseline.getManifest().getFiles().values().stream()
+                        .map(ArtifactManifest.Entry::getSha256)
+                        .collect(Collectors.toList()));
             }
+            // fetching a `cas` or `sharded` artifact takes the file paths from the manifest
+            ArtifactManifest manifest = artifactStoreConfig.getVerifyChecksums() || layout != ArtifactLayout.PREFIX || !Util.isBlank(baselineSetting)
+                    ? new ArtifactManifest(layout) : null;
 
-            List<File> matchingFiles = scanner.getFilesMatchingPattern(new File(workingDir), sourcePattern);
-            if(matchingFiles.size() == 0) {
+            final boolean prehash = layout == ArtifactLayout.CAS || baseline != null;
+            final S3Transport transport = artifactStoreConfig.transportType() == TransportType.ASYNC && !prehash
+                    ? clientFactory.asyncTransport(artifactStoreConfig) : null;
+            final AtomicReference<File> lastRecorded = new AtomicReference<>();
+            TransferPipeline<File, FileUpload, FileUpload> pipeline = new TransferPipeline<File, FileUpload, FileUpload>(prehash ? HASH_WORKERS : 1, UPLOAD_WORKERS)
+                    .withTransferOrder(LARGEST_FIRST, SCHEDULING_WINDOW);
+            long uploadedCount = pipeline.run(
+                    emit -> scanner.scan(new File(workingDir), sourcePattern, emit),
+                    sourceFile -> {
+                        FileUpload upload = new FileUpload(sourceFile, new File(workingDir, sourceFile.getPath()),
+                                layout.keyOf(s3InbucketPath, sourceFile.getPath(), null), S3KeyBuilder.normalize(sourceFile.getPath()));
+                        upload.size = upload.file.length();
+                        if (prehash) {
+                            upload.checksums = Checksums.digest(upload.file);
+                        }
+                        return upload;
+                    },
+                    upload -> upload(s3, s3bucket, upload, layout, baseline, manifest != null, transport),
+                    upload -> {
+                        FileChecksums checksums = S3Transport.await(upload.uploaded);
+                        if (manifest != null) {
+                            manifest.add(upload.relativePath, checksums.getSize(), checksums.getSha256());
+                        }
+                        lastRecorded.set(upload.sourceFile);
+                        consoleLogger.info(String.format("Source file `%s` successfully pushed to S3 bucket `%s`.", upload.sourceFile, s3bucket));
+                    });
+            if(uploadedCount == 0) {
                 String noFilesMsg = String.format("No files are matching pattern: %s", sourcePattern);
                 consoleLogger.error(noFilesMsg);
                 LOG.warn(noFilesMsg);
                 //TODO: tomzo consider handling no artifacts failure in GoCD core
                 return DefaultGoPluginApiResponse.badRequest(noFilesMsg);
             }
-            else if(matchingFiles.size() == 1) {
-                File sourceFile = matchingFiles.get(0);
-                String s3Key = normalizePath(Paths.get(s3InbucketPath, sourceFile.toPath().toString()));
-                PutObjectRequest request = new PutObjectRequest(s3bucket, s3Key, new File(Paths.get(workingDir, sourceFile.toString()).toString()));
-                ObjectMetadata metadata = new ObjectMetadata();
-                request.setMetadata(metadata);
-                s3.putObject(request);
-                publishArtifactResponse.addMetadata("Source", sourceFile.toString());
+            else if(uploadedCount == 1) {
+                publishArtifactResponse.addMetadata("Source", lastRecorded.get().toString());
                 publishArtifactResponse.addMetadata("IsFile", true);
-                consoleLogger.info(String.format("Source file `%s` successfully pushed to S3 bucket `%s`.", sourceFile, artifactStoreConfig.getS3bucket()));
             }
             else {
-                // upload many files
-                for(File sourceFile : matchingFiles) {
-                    String s3Key = normalizePath(Paths.get(s3InbucketPath, sourceFile.getPath()));
-                    PutObjectRequest request = new PutObjectRequest(s3bucket, s3Key, new File(Paths.get(workingDir, sourceFile.toString()).toString()));
-                    ObjectMetadata metadata = new ObjectMetadata();
-                    request.setMetadata(metadata);
-                    s3.putObject(request);
-                    consoleLogger.info(String.format("Source file `%s` successfully pushed to S3 bucket `%s`.", sourceFile, artifactStoreConfig.getS3bucket()));
-                }
                 publishArtifactResponse.addMetadata("Source", sourcePattern);
                 publishArtifactResponse.addMetadata("IsFile", false);
             }
             publishArtifactResponse.addMetadata("Destination", s3InbucketPath);
+            if (layout != ArtifactLayout.PREFIX) {
+                publishArtifactResponse.addMetadata("Layout", layout.getValue());
+            }
+            if (manifest != null) {
+                String manifestKey = ArtifactManifest.keyOf(s3InbucketPath, artifactPlan.getId());
+                putManifest(s3, s3bucket, manifestKey, manifest);
+                publishArtifactResponse.addMetadata("Manifest", manifestKey);
+            }
 
             return DefaultGoPluginApiResponse.success(publishArtifactResponse.toJSON());
         } catch (Exception e) {
             consoleLogger.error(String.format("Failed to publish %s: %s", artifactPlan, e));
             LOG.error(String.format("Failed to publish %s: %s", artifactPlan, e.getMessage()), e);
             return DefaultGoPluginApiResponse.error(String.format("Failed to publish %s: %s", artifactPlan, e.getMessage()));
+        } finally {
+            clientFactory.reportCircuitBreaker(artifactStoreConfig, consoleLogger);
+        }
+    }
+
+    private GoPluginApiResponse promote(AmazonS3 s3, String sourceUri, String bucket, String s3InbucketPath, ArtifactLayout layout, String artifactId) throws IOException, UnresolvedPropertyException {
+        S3Uri source = S3Uri.parse(new EnvironmentVariableResolver(sourceUri, "Source").resolve(publishArtifactRequest.getEnvironmentVariables()));
+        consoleLogger.info(String.format("Promoting `%s` to S3 bucket `%s` with server-side copies.", source, bucket));
+        ArtifactPromoter.Result result;
+        try (TransferExecutor transfers = new TransferExecutor()) {
+            result = promoter.promote(s3, source, artifactId, bucket, s3InbucketPath, layout, transfers);
+        }
+        if (result.getFileCount() == 0) {
+            String message = String.format("No objects are matching `%s`", source);
+            consoleLogger.error(message);
+            LOG.warn(message);
+            return DefaultGoPluginApiResponse.badRequest(message);
+        }
+        publishArtifactResponse.addMetadata("Source", source.toString());
+        publishArtifactResponse.addMetadata("IsFile", false);
+        publishArtifactResponse.addMetadata("Destination", s3InbucketPath);
+        if (layout != ArtifactLayout.PREFIX) {
+            publishArtifactResponse.addMetadata("Layout", layout.getValue());
+        }
+        if (result.getManifest() != null) {
+            String manifestKey = ArtifactManifest.keyOf(s3InbucketPath, artifactId);
+            putManifest(s3, bucket, manifestKey, result.getManifest());
+            publishArtifactResponse.addMetadata("Manifest", manifestKey);
+        }
+        consoleLogger.info(String.format("Promoted %d files from `%s` to S3 bucket `%s`.", result.getFileCount(), source, bucket));
+        return DefaultGoPluginApiResponse.success(publishArtifactResponse.toJSON());
+    }
+
+    private FileUpload upload(AmazonS3 s3, String bucket, FileUpload upload, ArtifactLayout layout, ArtifactBaseline baseline, boolean withChecksums, S3Transport transport) throws IOException {
+        if (transport != null && !MultipartFileUploader.isMultipart(upload.file)) {
+            upload.uploaded = transport.upload(bucket, upload.key, upload.file, withChecksums);
+        } else {
+            upload.uploaded = CompletableFuture.completedFuture(uploadFile(s3, bucket, upload, layout, baseline, withChecksums));
+        }
+        return upload;
+    }
+
+    private FileChecksums uploadFile(AmazonS3 s3, String bucket, FileUpload upload, ArtifactLayout layout, ArtifactBaseline baseline, boolean withChecksums) throws IOException {
+        FileChecksums checksums = upload.checksums;
+        if (layout == ArtifactLayout.CAS) {
+            String copySourceKey = baseline == null ? null : baseline.keyOf(checksums.getSha256(), checksums.getSize());
+            if (!contentAddressedStore.store(s3, bucket, upload.file, checksums, copySourceKey)) {
+                consoleLogger.info(String.format("Source file `%s` is already stored as `%s`, skipping upload.", upload.relativePath, ContentAddressedStore.blobKey(checksums.getSha256())));
+            }
+            return checksums;
+        }
+        if (baseline != null) {
+            String copySourceKey = baseline.keyOf(checksums.getSha256(), checksums.getSize());
+            if (copySourceKey != null) {
+                copier.copy(s3, bucket, copySourceKey, bucket, upload.key, checksums.getSize());
+                consoleLogger.info(String.format("Source file `%s` is unchanged since baseline, copied from `%s`.", upload.relativePath, copySourceKey));
+            } else {
+                fileUploader.upload(s3, bucket, upload.key, upload.file, true);
+            }
+            return checksums;
+        }
+        return fileUploader.upload(s3, bucket, upload.key, upload.file, withChecksums);
+    }
+
+    private ArtifactBaseline loadBaseline(AmazonS3 s3, String bucket, String baselineSetting, String artifactId) {
+        String baselinePrefix;
+        try {
+            baselinePrefix = new EnvironmentVariableResolver(baselineSetting, "Baseline").resolve(publishArtifactRequest.getEnvironmentVariables());
+        } catch (UnresolvedPropertyException e) {
+            consoleLogger.info(String.format("%s Uploading all files.", e.getMessage()));
+            return null;
+        }
+        String prefix = baselinePrefix.isEmpty() ? "" : S3KeyBuilder.normalize(baselinePrefix);
+        String manifestKey = ArtifactManifest.keyOf(prefix, artifactId);
+        try {
+            return new ArtifactBaseline(prefix, ArtifactManifest.fromJSON(s3.getObjectAsString(bucket, manifestKey)));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            consoleLogger.info(String.format("No artifact manifest found at baseline `%s`, uploading all files.", prefix));
+            return null;
+        }
+    }
+
+    private void putManifest(AmazonS3 s3, String bucket, String key, ArtifactManifest manifest) {
+        byte[] json = manifest.toJSON().getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/json");
+        metadata.setContentLength(json.length);
+        s3.putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(json), metadata));
+    }
+
+    /**
+     * A matched file on its way through the publish pipeline.
+     */
+    private static class FileUpload {
+        private final File sourceFile;
+        private final File file;
+        private final String key;
+        private final String relativePath;
+        private long size;
+        private FileChecksums checksums;
+        private CompletableFuture<FileChecksums> uploaded;
+
+        private FileUpload(File sourceFile, File file, String key, String relativePath) {
+            this.sourceFile = sourceFile;
+            this.file = file;
+            this.key = key;
+            this.relativePath = relativePath;
         }
     }
 }
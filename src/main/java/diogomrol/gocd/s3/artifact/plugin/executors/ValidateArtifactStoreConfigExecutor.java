@@ -16,22 +16,53 @@
 
 package diogomrol.gocd.s3.artifact.plugin.executors;
 
+import diogomrol.gocd.s3.artifact.plugin.AccelerationProbe;
+import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
 import diogomrol.gocd.s3.artifact.plugin.annotation.ValidationResult;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
+
 public class ValidateArtifactStoreConfigExecutor implements RequestExecutor {
+    private static final AccelerationProbe ACCELERATION_PROBE = new AccelerationProbe(S3ClientFactory.instance());
+
     private final ArtifactStoreConfig artifactStoreConfig;
+    private final AccelerationProbe accelerationProbe;
 
     public ValidateArtifactStoreConfigExecutor(GoPluginApiRequest request) {
-        artifactStoreConfig = ArtifactStoreConfig.fromJSON(request.requestBody());
+        this(request, ACCELERATION_PROBE);
+    }
+
+    ValidateArtifactStoreConfigExecutor(GoPluginApiRequest request, AccelerationProbe accelerationProbe) {
+        this.artifactStoreConfig = ArtifactStoreConfig.fromJSON(request.requestBody());
+        this.accelerationProbe = accelerationProbe;
     }
 
     @Override
     public GoPluginApiResponse execute() {
         final ValidationResult validationResult = artifactStoreConfig.validate();
+        boolean probing = artifactStoreConfig.getProbeTransferAcceleration();
+        if (!validationResult.hasErrors() && (artifactStoreConfig.getTransferAcceleration() || probing)) {
+            AccelerationProbe.Result probe = accelerationProbe.probe(artifactStoreConfig);
+            String message = String.format("Transfer Acceleration probe of bucket %s from the GoCD server: %s", artifactStoreConfig.getS3bucket(), probe);
+            if (probe.isInconclusive()) {
+                LOG.warn(message);
+            } else {
+                LOG.info(message);
+            }
+            // validation can only answer errors, so the probe result keeps the store from being saved until the
+            // operator has read it and cleared the setting
+            if (probing) {
+                validationResult.addError("ProbeTransferAcceleration", String.format("Transfer Acceleration probe of bucket `%s` from the GoCD server: %s. Clear ProbeTransferAcceleration to save the store.",
+                        artifactStoreConfig.getS3bucket(), probe));
+            }
+            if (artifactStoreConfig.getTransferAcceleration() && !probe.isAccelerationEnabled()) {
+                validationResult.addError("TransferAcceleration", String.format("Transfer Acceleration is not enabled on bucket `%s`: %s", artifactStoreConfig.getS3bucket(), probe.getError()));
+            }
+        }
         return DefaultGoPluginApiResponse.success(validationResult.toJSON());
     }
 }
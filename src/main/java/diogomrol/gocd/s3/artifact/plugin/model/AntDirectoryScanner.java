@@ -3,36 +3,57 @@ package diogomrol.gocd.s3.artifact.plugin.model;
 import org.apache.tools.ant.DirectoryScanner;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class AntDirectoryScanner {
 
     public List<File> getFilesMatchingPattern(File baseDir, String pattern) {
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir(baseDir);
-        scanner.setIncludes(pattern.trim().split(" *, *"));
-        scanner.scan();
-
-        String[] allPaths = scanner.getIncludedFiles();
         List<File> allFiles = new ArrayList<>();
-        String[] directories = scanner.getIncludedDirectories();
-        for (String directory : directories) {
-            File[] files = new File(baseDir, directory).listFiles();
-            if(files != null) {
-                for(File f : files) {
-                    allFiles.add(new File(directory, f.getName()));
+        scan(baseDir, pattern, allFiles::add);
+        return allFiles;
+    }
+
+    /**
+     * Walks {@code baseDir} and hands each matching file, relative to {@code baseDir}, to {@code matches} as soon as
+     * it is found. A matching directory contributes the files directly inside it. Each file is reported once, even
+     * when it matches several patterns. Exceptions thrown by {@code matches} abort the scan.
+     */
+    public void scan(File baseDir, String pattern, Consumer<File> matches) {
+        // the scanner selects a directory before it descends into it, so a file inside a selected directory has
+        // already been reported when the file is selected itself
+        Set<String> selectedDirectories = new HashSet<>();
+        DirectoryScanner scanner = new DirectoryScanner() {
+            @Override
+            protected boolean isSelected(String name, File file) {
+                if (!super.isSelected(name, file)) {
+                    return false;
                 }
+                if (file.isDirectory()) {
+                    selectedDirectories.add(name);
+                    File[] files = file.listFiles();
+                    if (files != null) {
+                        for (File f : files) {
+                            if (f.isFile()) {
+                                matches.accept(name.isEmpty() ? new File(f.getName()) : new File(name, f.getName()));
+                            }
+                        }
+                    }
+                } else if (!selectedDirectories.contains(parentOf(name))) {
+                    matches.accept(new File(name));
+                }
+                return true;
             }
-        }
+        };
+        scanner.setBasedir(baseDir);
+        scanner.setIncludes(pattern.trim().split(" *, *"));
+        scanner.scan();
+    }
 
-        for (int i = 0; i < allPaths.length; i++) {
-            File file = new File(allPaths[i]);
-            if (!allFiles.contains(file)) {
-                allFiles.add(new File(allPaths[i]));
-            }
-        }
-        return allFiles;
+    private static String parentOf(String name) {
+        String parent = new File(name).getParent();
+        return parent == null ? "" : parent;
     }
 }
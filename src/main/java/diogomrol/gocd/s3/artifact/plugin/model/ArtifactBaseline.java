@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A previously published artifact whose files can be copied server-side instead of uploaded again.
+ * Files are matched by content, so a file that was renamed since the baseline is still copied.
+ */
+public class ArtifactBaseline {
+    private final String prefix;
+    private final ArtifactManifest manifest;
+    private final Map<String, String> pathsBySha256 = new HashMap<>();
+
+    public ArtifactBaseline(String prefix, ArtifactManifest manifest) {
+        this.prefix = prefix;
+        this.manifest = manifest;
+        manifest.getFiles().forEach((path, entry) -> pathsBySha256.putIfAbsent(entry.getSha256(), path));
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public ArtifactManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return the key of a baseline object with the given content, or {@code null} when the baseline has none
+     */
+    public String keyOf(String sha256, long size) {
+        String path = pathsBySha256.get(sha256);
+        if (path == null || manifest.get(path).getSize() != size) {
+            return null;
+        }
+        return manifest.getLayout().keyOf(prefix, path, sha256);
+    }
+}
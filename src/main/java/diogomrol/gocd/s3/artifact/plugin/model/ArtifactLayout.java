@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import diogomrol.gocd.s3.artifact.plugin.transfer.ContentAddressedStore;
+import diogomrol.gocd.s3.artifact.plugin.utils.S3KeyBuilder;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+
+public enum ArtifactLayout {
+    PREFIX("prefix"),
+    CAS("cas"),
+    SHARDED("sharded");
+
+    private final String value;
+
+    ArtifactLayout(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the key of the file at {@code path} of an artifact published under {@code prefix} in this layout
+     */
+    public String keyOf(String prefix, String path, String sha256) {
+        switch (this) {
+            case CAS:
+                return ContentAddressedStore.blobKey(sha256);
+            case SHARDED:
+                return S3KeyBuilder.sharded(prefix, path);
+            default:
+                return S3KeyBuilder.join(prefix, path);
+        }
+    }
+
+    public static ArtifactLayout fromValue(String value) {
+        if (Util.isBlank(value)) {
+            return PREFIX;
+        }
+        for (ArtifactLayout layout : values()) {
+            if (layout.value.equalsIgnoreCase(value.trim())) {
+                return layout;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown artifact layout `%s`.", value));
+    }
+}
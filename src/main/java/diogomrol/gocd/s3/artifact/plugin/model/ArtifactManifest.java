@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+import diogomrol.gocd.s3.artifact.plugin.utils.S3KeyBuilder;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lists every file of a published artifact with its size and SHA-256, keyed by the path relative to the
+ * artifact destination. Stored next to the artifact so that fetch can verify what it downloads.
+ */
+public class ArtifactManifest {
+    private static final String FILE_NAME_PREFIX = ".gocd-artifact-manifest";
+    private static final String FILE_NAME_SUFFIX = ".json";
+
+    @Expose
+    @SerializedName("layout")
+    private String layout;
+
+    @Expose
+    @SerializedName("files")
+    private Map<String, Entry> files = new LinkedHashMap<>();
+
+    public ArtifactManifest() {
+    }
+
+    public ArtifactManifest(ArtifactLayout layout) {
+        this.layout = layout.getValue();
+    }
+
+    public ArtifactLayout getLayout() {
+        return ArtifactLayout.fromValue(layout);
+    }
+
+    public void add(String path, long size, String sha256) {
+        files.put(path, new Entry(size, sha256));
+    }
+
+    public Entry get(String path) {
+        return files.get(path);
+    }
+
+    public Map<String, Entry> getFiles() {
+        return files;
+    }
+
+    public String toJSON() {
+        return Util.GSON.toJson(this);
+    }
+
+    public static ArtifactManifest fromJSON(String json) {
+        return Util.GSON.fromJson(json, ArtifactManifest.class);
+    }
+
+    /**
+     * Several artifacts of a job may be published to the same destination, so each one has its own manifest,
+     * named after the id of its artifact plan.
+     *
+     * @return the key of the manifest of the artifact {@code artifactId} published to {@code destination}
+     */
+    public static String keyOf(String destination, String artifactId) {
+        String fileName = Util.isBlank(artifactId)
+                ? FILE_NAME_PREFIX + FILE_NAME_SUFFIX
+                : FILE_NAME_PREFIX + "-" + artifactId + FILE_NAME_SUFFIX;
+        return S3KeyBuilder.join(destination, fileName);
+    }
+
+    /**
+     * @return whether {@code key} names the manifest of any artifact, so that listings of a destination can skip it
+     */
+    public static boolean isManifestKey(String key) {
+        String fileName = S3KeyBuilder.fileName(key);
+        return fileName.startsWith(FILE_NAME_PREFIX) && fileName.endsWith(FILE_NAME_SUFFIX);
+    }
+
+    public static class Entry {
+        @Expose
+        @SerializedName("size")
+        private long size;
+
+        @Expose
+        @SerializedName("sha256")
+        private String sha256;
+
+        public Entry() {
+        }
+
+        public Entry(long size, String sha256) {
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+}
@@ -37,9 +37,19 @@ public class ArtifactPlan {
     }
 
     public ArtifactPlan(String id, String storeId, String sourcePattern, Optional<String> destination) {
+        this(id, storeId, sourcePattern, destination, Optional.empty());
+    }
+
+    public ArtifactPlan(String id, String storeId, String sourcePattern, Optional<String> destination, Optional<String> baseline) {
+        this.id = id;
+        this.storeId = storeId;
+        this.artifactPlanConfig = new S3FileArtifactPlanConfig(sourcePattern, destination, baseline);
+    }
+
+    ArtifactPlan(String id, String storeId, ArtifactPlanConfig artifactPlanConfig) {
         this.id = id;
         this.storeId = storeId;
-        this.artifactPlanConfig = new S3FileArtifactPlanConfig(sourcePattern, destination);
+        this.artifactPlanConfig = artifactPlanConfig;
     }
 
     public String getId() {
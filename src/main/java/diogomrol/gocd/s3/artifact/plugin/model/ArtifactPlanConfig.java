@@ -23,6 +23,7 @@ public abstract class ArtifactPlanConfig implements Validatable {
 
     abstract public String getSource();
     abstract public String getDestination();
+    abstract public String getBaseline();
 
     @Override
     public String toString() {
@@ -1,53 +1,71 @@
 package diogomrol.gocd.s3.artifact.plugin.model;
 
-import com.google.gson.*;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.Optional;
 
-public class ArtifactPlanConfigTypeAdapter implements JsonDeserializer<ArtifactPlanConfig>, JsonSerializer<ArtifactPlanConfig> {
+/**
+ * Reads the artifact plan configuration straight from the stream, without building a {@code JsonObject} of it
+ * first. Blank optional properties are read as absent.
+ */
+public class ArtifactPlanConfigTypeAdapter extends TypeAdapter<ArtifactPlanConfig> {
 
     @Override
-    public ArtifactPlanConfig deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject jsonObject = json.getAsJsonObject();
-        if (isBuildFileConfig(jsonObject)) {
-            return new S3FileArtifactPlanConfig(jsonObject.get("Source").getAsString(), parseDestination(jsonObject));
-        } else {
-            throw new JsonParseException("Ambiguous or unknown json. `Source` property must be specified.");
+    public ArtifactPlanConfig read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
         }
-    }
-
-    private Optional<String> parseDestination(JsonObject jsonObject) {
-        JsonElement destination = jsonObject.get("Destination");
-        if (destination != null && StringUtils.isNotBlank(destination.getAsString())) {
-            return Optional.of(destination.getAsString());
+        String source = null;
+        String destination = null;
+        String baseline = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "Source":
+                    source = JsonStreams.readString(in);
+                    break;
+                case "Destination":
+                    destination = JsonStreams.readString(in);
+                    break;
+                case "Baseline":
+                    baseline = JsonStreams.readString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
         }
-        return Optional.empty();
+        in.endObject();
+        if (StringUtils.isBlank(source)) {
+            throw new JsonParseException("Ambiguous or unknown json. `Source` property must be specified.");
+        }
+        return new S3FileArtifactPlanConfig(source, parseOptional(destination), parseOptional(baseline));
     }
 
     @Override
-    public JsonElement serialize(ArtifactPlanConfig src, Type typeOfSrc, JsonSerializationContext context) {
-        if (src instanceof S3FileArtifactPlanConfig) {
-            return context.serialize(src, S3FileArtifactPlanConfig.class);
+    public void write(JsonWriter out, ArtifactPlanConfig src) throws IOException {
+        if (src == null) {
+            out.nullValue();
+            return;
         }
-        throw new JsonIOException("Unknown type of ArtifactPlanConfig");
-    }
-
-    private boolean isBuildFileConfig(JsonObject jsonObject) {
-        return containsSourceFileProperty(jsonObject);
-    }
-
-    private boolean containsSourceFileProperty(JsonObject jsonObject) {
-        return jsonObject.has("Source") && isPropertyNotBlank(jsonObject);
+        if (!(src instanceof S3FileArtifactPlanConfig)) {
+            throw new JsonIOException("Unknown type of ArtifactPlanConfig");
+        }
+        out.beginObject();
+        out.name("Source").value(src.getSource());
+        out.name("Destination").value(src.getDestination());
+        out.name("Baseline").value(src.getBaseline());
+        out.endObject();
     }
 
-    private boolean isPropertyNotBlank(JsonObject jsonObject) {
-        try {
-            JsonElement jsonElement = jsonObject.get("Source");
-            return StringUtils.isNotBlank(jsonElement.getAsString());
-        } catch (UnsupportedOperationException e) {
-            return false;
-        }
+    private static Optional<String> parseOptional(String value) {
+        return StringUtils.isNotBlank(value) ? Optional.of(value) : Optional.empty();
     }
 }
@@ -21,16 +21,22 @@ import com.google.common.collect.Lists;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import diogomrol.gocd.s3.artifact.plugin.annotation.FieldMetadata;
+import diogomrol.gocd.s3.artifact.plugin.annotation.FieldType;
 import diogomrol.gocd.s3.artifact.plugin.annotation.Validatable;
 import diogomrol.gocd.s3.artifact.plugin.annotation.ValidationError;
 import diogomrol.gocd.s3.artifact.plugin.annotation.ValidationResult;
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+import org.apache.commons.lang3.StringUtils;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.List;
+import java.util.regex.Pattern;
 
 public class ArtifactStoreConfig implements Validatable {
 
-    private static final ImmutableSet<String> OPTIONAL_PROPERTIES = ImmutableSet.of("Region", "AWSAccessKey", "AWSSecretAccessKey");
+    private static final ImmutableSet<String> OPTIONAL_PROPERTIES = ImmutableSet.of("Region", "AWSAccessKey", "AWSSecretAccessKey", "DownloadBufferSize", "VerifyChecksums", "Layout", "Transport", "SmallObjectSize", "Endpoint", "PathStyleAccess", "SigningRegion", "TransferAcceleration", "ProbeTransferAcceleration", "DualStack", "HedgePercentile", "RoleArn", "ExternalId", "CircuitBreakerErrorRate");
+    private static final Pattern ROLE_ARN = Pattern.compile("arn:aws[a-z-]*:iam::\\d{12}:role/.+");
     private static final ImmutableSet<String> AWS_ACCESS_PROPERTIES = ImmutableSet.of("AWSAccessKey", "AWSSecretAccessKey");
 
     @Expose
@@ -53,6 +59,80 @@ public class ArtifactStoreConfig implements Validatable {
     @FieldMetadata(key = "AWSSecretAccessKey", required = false, secure = true)
     private String awssecretaccesskey;
 
+    @Expose
+    @SerializedName("DownloadBufferSize")
+    @FieldMetadata(key = "DownloadBufferSize", required = false, type = FieldType.POSITIVE_DECIMAL)
+    private String downloadBufferSize;
+
+    @Expose
+    @SerializedName("VerifyChecksums")
+    @FieldMetadata(key = "VerifyChecksums", required = false)
+    private boolean verifyChecksums;
+
+    @Expose
+    @SerializedName("Layout")
+    @FieldMetadata(key = "Layout", required = false)
+    private String layout;
+
+    @Expose
+    @SerializedName("Transport")
+    @FieldMetadata(key = "Transport", required = false)
+    private String transport;
+
+    @Expose
+    @SerializedName("SmallObjectSize")
+    @FieldMetadata(key = "SmallObjectSize", required = false, type = FieldType.POSITIVE_DECIMAL)
+    private String smallObjectSize;
+
+    @Expose
+    @SerializedName("Endpoint")
+    @FieldMetadata(key = "Endpoint", required = false)
+    private String endpoint;
+
+    @Expose
+    @SerializedName("PathStyleAccess")
+    @FieldMetadata(key = "PathStyleAccess", required = false)
+    private boolean pathStyleAccess;
+
+    @Expose
+    @SerializedName("SigningRegion")
+    @FieldMetadata(key = "SigningRegion", required = false)
+    private String signingRegion;
+
+    @Expose
+    @SerializedName("TransferAcceleration")
+    @FieldMetadata(key = "TransferAcceleration", required = false)
+    private boolean transferAcceleration;
+
+    @Expose
+    @SerializedName("ProbeTransferAcceleration")
+    @FieldMetadata(key = "ProbeTransferAcceleration", required = false)
+    private boolean probeTransferAcceleration;
+
+    @Expose
+    @SerializedName("DualStack")
+    @FieldMetadata(key = "DualStack", required = false)
+    private boolean dualStack;
+
+    @Expose
+    @SerializedName("HedgePercentile")
+    @FieldMetadata(key = "HedgePercentile", required = false, type = FieldType.NUMBER)
+    private String hedgePercentile;
+
+    @Expose
+    @SerializedName("RoleArn")
+    @FieldMetadata(key = "RoleArn", required = false)
+    private String roleArn;
+
+    @Expose
+    @SerializedName("ExternalId")
+    @FieldMetadata(key = "ExternalId", required = false)
+    private String externalId;
+
+    @Expose
+    @SerializedName("CircuitBreakerErrorRate")
+    @FieldMetadata(key = "CircuitBreakerErrorRate", required = false, type = FieldType.NUMBER)
+    private String circuitBreakerErrorRate;
 
     public ArtifactStoreConfig() {
     }
@@ -78,6 +158,141 @@ public class ArtifactStoreConfig implements Validatable {
         return awssecretaccesskey;
     }
 
+    public String getDownloadBufferSize() {
+        return downloadBufferSize;
+    }
+
+    public void setDownloadBufferSize(String downloadBufferSize) {
+        this.downloadBufferSize = downloadBufferSize;
+    }
+
+    public boolean getVerifyChecksums() {
+        return verifyChecksums;
+    }
+
+    public void setVerifyChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    public String getLayout() {
+        return layout;
+    }
+
+    public void setLayout(String layout) {
+        this.layout = layout;
+    }
+
+    public ArtifactLayout artifactLayout() {
+        return ArtifactLayout.fromValue(layout);
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public TransportType transportType() {
+        return TransportType.fromValue(transport);
+    }
+
+    public String getSmallObjectSize() {
+        return smallObjectSize;
+    }
+
+    public void setSmallObjectSize(String smallObjectSize) {
+        this.smallObjectSize = smallObjectSize;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public boolean getPathStyleAccess() {
+        return pathStyleAccess;
+    }
+
+    public void setPathStyleAccess(boolean pathStyleAccess) {
+        this.pathStyleAccess = pathStyleAccess;
+    }
+
+    public String getSigningRegion() {
+        return signingRegion;
+    }
+
+    public void setSigningRegion(String signingRegion) {
+        this.signingRegion = signingRegion;
+    }
+
+    public boolean getTransferAcceleration() {
+        return transferAcceleration;
+    }
+
+    public void setTransferAcceleration(boolean transferAcceleration) {
+        this.transferAcceleration = transferAcceleration;
+    }
+
+    public boolean getProbeTransferAcceleration() {
+        return probeTransferAcceleration;
+    }
+
+    public void setProbeTransferAcceleration(boolean probeTransferAcceleration) {
+        this.probeTransferAcceleration = probeTransferAcceleration;
+    }
+
+    public boolean getDualStack() {
+        return dualStack;
+    }
+
+    public void setDualStack(boolean dualStack) {
+        this.dualStack = dualStack;
+    }
+
+    public String getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(String hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public String getRoleArn() {
+        return roleArn;
+    }
+
+    public void setRoleArn(String roleArn) {
+        this.roleArn = roleArn;
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    public void setExternalId(String externalId) {
+        this.externalId = externalId;
+    }
+
+    public String getCircuitBreakerErrorRate() {
+        return circuitBreakerErrorRate;
+    }
+
+    public void setCircuitBreakerErrorRate(String circuitBreakerErrorRate) {
+        this.circuitBreakerErrorRate = circuitBreakerErrorRate;
+    }
+
+    /**
+     * @return the region requests to a custom endpoint are signed for: the signing region if set, otherwise the region
+     */
+    public String endpointSigningRegion() {
+        return StringUtils.isNotBlank(signingRegion) ? signingRegion : region;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -88,7 +303,22 @@ public class ArtifactStoreConfig implements Validatable {
         if (s3bucket != null ? !s3bucket.equals(that.s3bucket) : that.s3bucket != null) return false;
         if (region != null ? !region.equals(that.region) : that.region != null) return false;
         if (awsaccesskey != null ? !awsaccesskey.equals(that.awsaccesskey) : that.awsaccesskey != null) return false;
-        return awssecretaccesskey != null ? awssecretaccesskey.equals(that.awssecretaccesskey) : that.awssecretaccesskey == null;
+        if (awssecretaccesskey != null ? !awssecretaccesskey.equals(that.awssecretaccesskey) : that.awssecretaccesskey != null) return false;
+        if (verifyChecksums != that.verifyChecksums) return false;
+        if (layout != null ? !layout.equals(that.layout) : that.layout != null) return false;
+        if (transport != null ? !transport.equals(that.transport) : that.transport != null) return false;
+        if (smallObjectSize != null ? !smallObjectSize.equals(that.smallObjectSize) : that.smallObjectSize != null) return false;
+        if (endpoint != null ? !endpoint.equals(that.endpoint) : that.endpoint != null) return false;
+        if (pathStyleAccess != that.pathStyleAccess) return false;
+        if (signingRegion != null ? !signingRegion.equals(that.signingRegion) : that.signingRegion != null) return false;
+        if (transferAcceleration != that.transferAcceleration) return false;
+        if (probeTransferAcceleration != that.probeTransferAcceleration) return false;
+        if (dualStack != that.dualStack) return false;
+        if (hedgePercentile != null ? !hedgePercentile.equals(that.hedgePercentile) : that.hedgePercentile != null) return false;
+        if (roleArn != null ? !roleArn.equals(that.roleArn) : that.roleArn != null) return false;
+        if (externalId != null ? !externalId.equals(that.externalId) : that.externalId != null) return false;
+        if (circuitBreakerErrorRate != null ? !circuitBreakerErrorRate.equals(that.circuitBreakerErrorRate) : that.circuitBreakerErrorRate != null) return false;
+        return downloadBufferSize != null ? downloadBufferSize.equals(that.downloadBufferSize) : that.downloadBufferSize == null;
     }
 
     @Override
@@ -97,6 +327,21 @@ public class ArtifactStoreConfig implements Validatable {
         result = 31 * result + (region != null ? region.hashCode() : 0);
         result = 31 * result + (awsaccesskey != null ? awsaccesskey.hashCode() : 0);
         result = 31 * result + (awssecretaccesskey != null ? awssecretaccesskey.hashCode() : 0);
+        result = 31 * result + (downloadBufferSize != null ? downloadBufferSize.hashCode() : 0);
+        result = 31 * result + (verifyChecksums ? 1 : 0);
+        result = 31 * result + (layout != null ? layout.hashCode() : 0);
+        result = 31 * result + (transport != null ? transport.hashCode() : 0);
+        result = 31 * result + (smallObjectSize != null ? smallObjectSize.hashCode() : 0);
+        result = 31 * result + (endpoint != null ? endpoint.hashCode() : 0);
+        result = 31 * result + (pathStyleAccess ? 1 : 0);
+        result = 31 * result + (signingRegion != null ? signingRegion.hashCode() : 0);
+        result = 31 * result + (transferAcceleration ? 1 : 0);
+        result = 31 * result + (probeTransferAcceleration ? 1 : 0);
+        result = 31 * result + (dualStack ? 1 : 0);
+        result = 31 * result + (hedgePercentile != null ? hedgePercentile.hashCode() : 0);
+        result = 31 * result + (roleArn != null ? roleArn.hashCode() : 0);
+        result = 31 * result + (externalId != null ? externalId.hashCode() : 0);
+        result = 31 * result + (circuitBreakerErrorRate != null ? circuitBreakerErrorRate.hashCode() : 0);
         return result;
     }
 
@@ -109,8 +354,75 @@ public class ArtifactStoreConfig implements Validatable {
         List<ValidationError> validationErrors = Lists.newArrayList();
         validationErrors.addAll(validateAllFieldsAsRequired(OPTIONAL_PROPERTIES));
         validationErrors.addAll(validateAllOrNoneRequired(AWS_ACCESS_PROPERTIES));
+        validationErrors.addAll(validateFieldTypes());
+        try {
+            ArtifactLayout.fromValue(layout);
+        } catch (IllegalArgumentException e) {
+            validationErrors.add(new ValidationError("Layout", "Layout must be one of `prefix`, `cas` or `sharded`."));
+        }
+        try {
+            TransportType.fromValue(transport);
+        } catch (IllegalArgumentException e) {
+            validationErrors.add(new ValidationError("Transport", "Transport must be one of `blocking` or `async`."));
+        }
+        if (StringUtils.isNotBlank(endpoint) && !isHttpUrl(endpoint.trim())) {
+            validationErrors.add(new ValidationError("Endpoint", "Endpoint must be an `http` or `https` URL."));
+        }
+        if (StringUtils.isNotBlank(signingRegion) && StringUtils.isBlank(endpoint)) {
+            validationErrors.add(new ValidationError("SigningRegion", "SigningRegion can only be set together with Endpoint."));
+        }
+        if (transferAcceleration) {
+            validateAcceleration("TransferAcceleration", validationErrors);
+        }
+        if (probeTransferAcceleration) {
+            validateAcceleration("ProbeTransferAcceleration", validationErrors);
+        }
+        if (dualStack && StringUtils.isNotBlank(endpoint)) {
+            validationErrors.add(new ValidationError("DualStack", "DualStack cannot be used together with Endpoint."));
+        }
+        if (StringUtils.isNotBlank(hedgePercentile) && isOutOfRange(hedgePercentile.trim(), 50, 99.9)) {
+            validationErrors.add(new ValidationError("HedgePercentile", "HedgePercentile must be between 50 and 99.9."));
+        }
+        if (StringUtils.isNotBlank(roleArn) && !ROLE_ARN.matcher(roleArn.trim()).matches()) {
+            validationErrors.add(new ValidationError("RoleArn", "RoleArn must be the ARN of an IAM role, e.g. `arn:aws:iam::123456789012:role/gocd-artifacts`."));
+        }
+        if (StringUtils.isNotBlank(externalId) && StringUtils.isBlank(roleArn)) {
+            validationErrors.add(new ValidationError("ExternalId", "ExternalId can only be set together with RoleArn."));
+        }
+        if (StringUtils.isNotBlank(circuitBreakerErrorRate) && isOutOfRange(circuitBreakerErrorRate.trim(), 1, 100)) {
+            validationErrors.add(new ValidationError("CircuitBreakerErrorRate", "CircuitBreakerErrorRate must be between 1 and 100."));
+        }
 
         return new ValidationResult(validationErrors);
 
     }
+
+    private void validateAcceleration(String key, List<ValidationError> validationErrors) {
+        if (StringUtils.isNotBlank(endpoint)) {
+            validationErrors.add(new ValidationError(key, key + " cannot be used together with Endpoint."));
+        } else if (pathStyleAccess) {
+            validationErrors.add(new ValidationError(key, key + " cannot be used together with PathStyleAccess."));
+        } else if (StringUtils.contains(s3bucket, '.')) {
+            validationErrors.add(new ValidationError(key, key + " requires an S3Bucket name without dots."));
+        }
+    }
+
+    private static boolean isHttpUrl(String url) {
+        try {
+            URI uri = new URI(url);
+            return ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme())) && StringUtils.isNotBlank(uri.getHost());
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private static boolean isOutOfRange(String number, double min, double max) {
+        try {
+            double value = Double.parseDouble(number);
+            return value < min || value > max;
+        } catch (NumberFormatException e) {
+            // reported by the field type validation
+            return false;
+        }
+    }
 }
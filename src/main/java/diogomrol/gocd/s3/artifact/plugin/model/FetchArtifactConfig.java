@@ -7,6 +7,8 @@ import diogomrol.gocd.s3.artifact.plugin.annotation.Validatable;
 import diogomrol.gocd.s3.artifact.plugin.annotation.ValidationResult;
 import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 
+import java.util.Map;
+
 public class FetchArtifactConfig implements Validatable {
     @Expose
     @SerializedName("SubPath")
@@ -36,6 +38,28 @@ public class FetchArtifactConfig implements Validatable {
         return Util.GSON.fromJson(json, FetchArtifactConfig.class);
     }
 
+    /**
+     * @return this config with the variables of its {@code SubPath} and {@code Destination} resolved, or this config
+     * itself when neither has variables or the request carries no environment variables, as before variables were
+     * supported on fetch
+     */
+    public FetchArtifactConfig resolve(Map<String, String> environmentVariables) throws UnresolvedPropertyException {
+        if (environmentVariables == null || environmentVariables.isEmpty()) {
+            return this;
+        }
+        PropertyTemplate subPathTemplate = subPath == null ? null : PropertyTemplate.compile(subPath);
+        PropertyTemplate destinationTemplate = destination == null ? null : PropertyTemplate.compile(destination);
+        boolean subPathHasVariables = subPathTemplate != null && subPathTemplate.hasVariables();
+        boolean destinationHasVariables = destinationTemplate != null && destinationTemplate.hasVariables();
+        if (!subPathHasVariables && !destinationHasVariables) {
+            return this;
+        }
+        return new FetchArtifactConfig(
+                subPathHasVariables ? subPathTemplate.render(environmentVariables, "SubPath") : subPath,
+                destinationHasVariables ? destinationTemplate.render(environmentVariables, "Destination") : destination,
+                isFile);
+    }
+
     public String getSubPath() {
         return subPath;
     }
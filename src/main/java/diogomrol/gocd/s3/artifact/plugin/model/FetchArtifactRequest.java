@@ -21,6 +21,10 @@ public class FetchArtifactRequest {
     @SerializedName("agent_working_directory")
     private String agentWorkingDir;
 
+    @Expose
+    @SerializedName("environment_variables")
+    private Map<String, String> environmentVariables;
+
     public FetchArtifactRequest() {
     }
 
@@ -39,6 +43,17 @@ public class FetchArtifactRequest {
         return agentWorkingDir;
     }
 
+    /**
+     * @return the environment variables of the job, or null when the GoCD server does not send them
+     */
+    public Map<String, String> getEnvironmentVariables() {
+        return environmentVariables;
+    }
+
+    public void setEnvironmentVariables(Map<String, String> environmentVariables) {
+        this.environmentVariables = environmentVariables;
+    }
+
     public Map<String, Object> getMetadata() {
         return metadata;
     }
@@ -47,6 +62,10 @@ public class FetchArtifactRequest {
         return Util.GSON.fromJson(json, FetchArtifactRequest.class);
     }
 
+    public String toJSON() {
+        return Util.GSON.toJson(this);
+    }
+
     public FetchArtifactConfig getFetchArtifactConfig() {
         return fetchArtifactConfig;
     }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Streams the fetch request. The artifact metadata is read as {@link Gson} reads any {@code Object}, numbers as
+ * doubles, and the store and fetch configurations by the adapters of the given {@link Gson}.
+ */
+public class FetchArtifactRequestTypeAdapter extends TypeAdapter<FetchArtifactRequest> {
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return type.getRawType() == FetchArtifactRequest.class ? (TypeAdapter<T>) new FetchArtifactRequestTypeAdapter(gson) : null;
+        }
+    };
+
+    private final TypeAdapter<FetchArtifactConfig> fetchConfigAdapter;
+    private final TypeAdapter<ArtifactStoreConfig> storeConfigAdapter;
+    private final TypeAdapter<Object> metadataValueAdapter;
+
+    FetchArtifactRequestTypeAdapter(Gson gson) {
+        this.fetchConfigAdapter = gson.getAdapter(FetchArtifactConfig.class);
+        this.storeConfigAdapter = gson.getAdapter(ArtifactStoreConfig.class);
+        this.metadataValueAdapter = gson.getAdapter(Object.class);
+    }
+
+    @Override
+    public FetchArtifactRequest read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        FetchArtifactConfig fetchArtifactConfig = null;
+        ArtifactStoreConfig artifactStoreConfig = null;
+        Map<String, Object> metadata = null;
+        String agentWorkingDir = null;
+        Map<String, String> environmentVariables = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "fetch_artifact_configuration":
+                    fetchArtifactConfig = fetchConfigAdapter.read(in);
+                    break;
+                case "store_configuration":
+                    artifactStoreConfig = storeConfigAdapter.read(in);
+                    break;
+                case "artifact_metadata":
+                    metadata = JsonStreams.readMap(in, metadataValueAdapter);
+                    break;
+                case "agent_working_directory":
+                    agentWorkingDir = JsonStreams.readString(in);
+                    break;
+                case "environment_variables":
+                    environmentVariables = JsonStreams.readMap(in, JsonStreams.STRING);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        FetchArtifactRequest request = new FetchArtifactRequest(artifactStoreConfig, metadata, fetchArtifactConfig, agentWorkingDir);
+        request.setEnvironmentVariables(environmentVariables);
+        return request;
+    }
+
+    @Override
+    public void write(JsonWriter out, FetchArtifactRequest request) throws IOException {
+        if (request == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("fetch_artifact_configuration");
+        fetchConfigAdapter.write(out, request.getFetchArtifactConfig());
+        out.name("store_configuration");
+        storeConfigAdapter.write(out, request.getArtifactStoreConfig());
+        out.name("artifact_metadata");
+        JsonStreams.writeMap(out, request.getMetadata(), metadataValueAdapter);
+        out.name("agent_working_directory").value(request.getAgentWorkingDir());
+        out.name("environment_variables");
+        JsonStreams.writeMap(out, request.getEnvironmentVariables(), JsonStreams.STRING);
+        out.endObject();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the values the hand-written type adapters of the requests share.
+ */
+final class JsonStreams {
+    static final TypeAdapter<String> STRING = new TypeAdapter<String>() {
+        @Override
+        public String read(JsonReader in) throws IOException {
+            return readString(in);
+        }
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+    };
+
+    private JsonStreams() {
+    }
+
+    /**
+     * @return the value of a string, number or boolean property, null for any other value
+     */
+    static String readString(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            case BOOLEAN:
+                return Boolean.toString(in.nextBoolean());
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+
+    static <V> Map<String, V> readMap(JsonReader in, TypeAdapter<V> valueAdapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, V> map = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            map.put(in.nextName(), valueAdapter.read(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    static <V> void writeMap(JsonWriter out, Map<String, V> map, TypeAdapter<V> valueAdapter) throws IOException {
+        if (map == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+            out.name(entry.getKey());
+            valueAdapter.write(out, entry.getValue());
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A property value such as a publish {@code Destination}, parsed once into literal text and {@code ${NAME}}
+ * variables and rendered against the environment variables in a single pass. As with {@code StrSubstitutor},
+ * {@code ${NAME:-default}} falls back to {@code default}, {@code $${NAME}} is the literal text {@code ${NAME}}, and
+ * variables in the value of a variable are resolved in turn. A variable whose value refers back to itself is
+ * unresolved.
+ * {@code ${GO_ARTIFACT_LOCATOR}} stands for the variables locating the artifact of the job, and the default of
+ * {@code ${GO_ARTIFACT_LOCATOR:-default}} applies to each of them.
+ * <p>
+ * Values without variables render to themselves without reading the environment. The templates of the most
+ * recently used values are kept, up to {@link #MAX_CACHED}.
+ */
+public class PropertyTemplate {
+    static final String ARTIFACT_LOCATOR = "GO_ARTIFACT_LOCATOR";
+    static final String ARTIFACT_LOCATOR_VALUE = "${GO_PIPELINE_NAME}/${GO_PIPELINE_COUNTER}/${GO_STAGE_NAME}/${GO_STAGE_COUNTER}/${GO_JOB_NAME}";
+    static final int MAX_CACHED = 256;
+
+    private static final Map<String, PropertyTemplate> CACHE = Collections.synchronizedMap(new LinkedHashMap<String, PropertyTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PropertyTemplate> eldest) {
+            return size() > MAX_CACHED;
+        }
+    });
+
+    private final String source;
+    private final List<Segment> segments;
+    private final int literalLength;
+
+    private PropertyTemplate(String source, List<Segment> segments) {
+        this.source = source;
+        this.segments = segments;
+        int literalLength = 0;
+        for (Segment segment : segments) {
+            literalLength += segment.isLiteral() ? segment.text.length() : 0;
+        }
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * @return the template of {@code source}, parsed on the first use of the value
+     */
+    public static PropertyTemplate compile(String source) {
+        PropertyTemplate template = CACHE.get(source);
+        if (template == null) {
+            template = new PropertyTemplate(source, Collections.unmodifiableList(parse(source, true)));
+            CACHE.put(source, template);
+        }
+        return template;
+    }
+
+    private static List<Segment> parse(String source, boolean expandLocator) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            if (source.startsWith("$${", i)) {
+                literal.append("${");
+                i += 3;
+                continue;
+            }
+            int end = source.startsWith("${", i) ? source.indexOf('}', i + 2) : -1;
+            if (end < 0) {
+                literal.append(source.charAt(i++));
+                continue;
+            }
+            String expression = source.substring(i + 2, end);
+            int defaultAt = expression.indexOf(":-");
+            String name = defaultAt < 0 ? expression : expression.substring(0, defaultAt);
+            String defaultValue = defaultAt < 0 ? null : expression.substring(defaultAt + 2);
+            if (expandLocator && ARTIFACT_LOCATOR.equals(name)) {
+                for (Segment segment : parse(ARTIFACT_LOCATOR_VALUE, false)) {
+                    if (segment.isLiteral()) {
+                        literal.append(segment.text);
+                    } else {
+                        addLiteral(segments, literal);
+                        segments.add(new Segment(segment.text, segment.name, defaultValue));
+                    }
+                }
+            } else {
+                addLiteral(segments, literal);
+                segments.add(new Segment(source.substring(i, end + 1), name, defaultValue));
+            }
+            i = end + 1;
+        }
+        addLiteral(segments, literal);
+        return segments;
+    }
+
+    private static void addLiteral(List<Segment> segments, StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new Segment(literal.toString(), null, null));
+            literal.setLength(0);
+        }
+    }
+
+    public boolean hasVariables() {
+        return segments.size() > 1 || (segments.size() == 1 && !segments.get(0).isLiteral());
+    }
+
+    /**
+     * @throws UnresolvedPropertyException naming each variable which is neither set nor has a default, with the
+     *                                     value rendered so far
+     */
+    public String render(Map<String, String> environmentVariables, String propertyName) throws UnresolvedPropertyException {
+        if (segments.isEmpty()) {
+            return "";
+        }
+        if (segments.size() == 1 && segments.get(0).isLiteral()) {
+            return segments.get(0).text;
+        }
+        StringBuilder rendered = new StringBuilder(literalLength + 16 * segments.size());
+        List<String> unresolved = new ArrayList<>(0);
+        renderTo(rendered, environmentVariables, new HashSet<>(), unresolved);
+        if (!unresolved.isEmpty()) {
+            throw new UnresolvedPropertyException(rendered.toString(), propertyName, unresolved);
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * @param resolving the variables whose values are being rendered, to stop at a value which refers back to them
+     */
+    private void renderTo(StringBuilder rendered, Map<String, String> environmentVariables, Set<String> resolving, List<String> unresolved) {
+        for (Segment segment : segments) {
+            if (segment.isLiteral()) {
+                rendered.append(segment.text);
+                continue;
+            }
+            String value = environmentVariables == null ? null : environmentVariables.get(segment.name);
+            if (value == null) {
+                value = segment.defaultValue;
+            }
+            if (value == null || (value.contains("${") && resolving.contains(segment.name))) {
+                unresolved.add(segment.name);
+                rendered.append(segment.text);
+            } else if (value.contains("${")) {
+                resolving.add(segment.name);
+                compile(value).renderTo(rendered, environmentVariables, resolving, unresolved);
+                resolving.remove(segment.name);
+            } else {
+                rendered.append(value);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static class Segment {
+        private final String text;
+        private final String name;
+        private final String defaultValue;
+
+        Segment(String text, String name, String defaultValue) {
+            this.text = text;
+            this.name = name;
+            this.defaultValue = defaultValue;
+        }
+
+        boolean isLiteral() {
+            return name == null;
+        }
+    }
+}
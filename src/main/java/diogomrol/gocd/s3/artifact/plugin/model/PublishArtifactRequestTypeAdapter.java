@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Streams the publish request, its artifact store and its artifact plan, so that a large map of environment
+ * variables is read straight into the request. The store configuration is read by the adapter of the given
+ * {@link Gson}.
+ */
+public class PublishArtifactRequestTypeAdapter extends TypeAdapter<PublishArtifactRequest> {
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return type.getRawType() == PublishArtifactRequest.class ? (TypeAdapter<T>) new PublishArtifactRequestTypeAdapter(gson) : null;
+        }
+    };
+
+    private final TypeAdapter<ArtifactStoreConfig> storeConfigAdapter;
+    private final TypeAdapter<ArtifactPlanConfig> planConfigAdapter;
+
+    PublishArtifactRequestTypeAdapter(Gson gson) {
+        this.storeConfigAdapter = gson.getAdapter(ArtifactStoreConfig.class);
+        this.planConfigAdapter = gson.getAdapter(ArtifactPlanConfig.class);
+    }
+
+    @Override
+    public PublishArtifactRequest read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String agentWorkingDir = null;
+        ArtifactStore artifactStore = null;
+        ArtifactPlan artifactPlan = null;
+        Map<String, String> environmentVariables = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "agent_working_directory":
+                    agentWorkingDir = JsonStreams.readString(in);
+                    break;
+                case "artifact_store":
+                    artifactStore = readArtifactStore(in);
+                    break;
+                case "artifact_plan":
+                    artifactPlan = readArtifactPlan(in);
+                    break;
+                case "environment_variables":
+                    environmentVariables = JsonStreams.readMap(in, JsonStreams.STRING);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        PublishArtifactRequest request = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir);
+        request.setEnvironmentVariables(environmentVariables);
+        return request;
+    }
+
+    private ArtifactStore readArtifactStore(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String id = null;
+        ArtifactStoreConfig artifactStoreConfig = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonStreams.readString(in);
+                    break;
+                case "configuration":
+                    artifactStoreConfig = storeConfigAdapter.read(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new ArtifactStore(id, artifactStoreConfig);
+    }
+
+    private ArtifactPlan readArtifactPlan(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String id = null;
+        String storeId = null;
+        ArtifactPlanConfig artifactPlanConfig = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonStreams.readString(in);
+                    break;
+                case "storeId":
+                    storeId = JsonStreams.readString(in);
+                    break;
+                case "configuration":
+                    artifactPlanConfig = planConfigAdapter.read(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new ArtifactPlan(id, storeId, artifactPlanConfig);
+    }
+
+    @Override
+    public void write(JsonWriter out, PublishArtifactRequest request) throws IOException {
+        if (request == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("agent_working_directory").value(request.getAgentWorkingDir());
+        out.name("artifact_store");
+        writeArtifactStore(out, request.getArtifactStore());
+        out.name("artifact_plan");
+        writeArtifactPlan(out, request.getArtifactPlan());
+        out.name("environment_variables");
+        JsonStreams.writeMap(out, request.getEnvironmentVariables(), JsonStreams.STRING);
+        out.endObject();
+    }
+
+    private void writeArtifactStore(JsonWriter out, ArtifactStore artifactStore) throws IOException {
+        if (artifactStore == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(artifactStore.getId());
+        out.name("configuration");
+        storeConfigAdapter.write(out, artifactStore.getArtifactStoreConfig());
+        out.endObject();
+    }
+
+    private void writeArtifactPlan(JsonWriter out, ArtifactPlan artifactPlan) throws IOException {
+        if (artifactPlan == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(artifactPlan.getId());
+        out.name("storeId").value(artifactPlan.getStoreId());
+        out.name("configuration");
+        planConfigAdapter.write(out, artifactPlan.getArtifactPlanConfig());
+        out.endObject();
+    }
+}
@@ -17,15 +17,19 @@
 package diogomrol.gocd.s3.artifact.plugin.model;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 
 public class PublishArtifactResponse {
-    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().serializeNulls().create();
+    private static final TypeAdapter<Object> METADATA_VALUE = new Gson().getAdapter(Object.class);
 
     public PublishArtifactResponse() {
     }
@@ -43,6 +47,18 @@ public class PublishArtifactResponse {
     }
 
     public String toJSON() {
-        return GSON.toJson(this);
+        StringWriter json = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(json);
+            out.setHtmlSafe(true);
+            out.setSerializeNulls(true);
+            out.beginObject();
+            out.name("metadata");
+            JsonStreams.writeMap(out, metadata, METADATA_VALUE);
+            out.endObject();
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return json.toString();
     }
 }
@@ -11,7 +11,7 @@ import java.util.Optional;
 
 public class S3FileArtifactPlanConfig extends ArtifactPlanConfig {
 
-    private static final ImmutableSet<String> OPTIONAL_PROPERTIES = ImmutableSet.of("Destination");
+    private static final ImmutableSet<String> OPTIONAL_PROPERTIES = ImmutableSet.of("Destination", "Baseline");
 
     @Expose
     @SerializedName("Source")
@@ -23,9 +23,19 @@ public class S3FileArtifactPlanConfig extends ArtifactPlanConfig {
     @FieldMetadata(key = "Destination")
     private String destination;
 
+    @Expose
+    @SerializedName("Baseline")
+    @FieldMetadata(key = "Baseline", required = false)
+    private String baseline;
+
     public S3FileArtifactPlanConfig(String source, Optional<String> destination) {
+        this(source, destination, Optional.empty());
+    }
+
+    public S3FileArtifactPlanConfig(String source, Optional<String> destination, Optional<String> baseline) {
         this.source = source;
         this.destination = destination.orElse("");
+        this.baseline = baseline.orElse(null);
     }
 
     @Override
@@ -36,17 +46,22 @@ public class S3FileArtifactPlanConfig extends ArtifactPlanConfig {
         return destination;
     }
 
+    @Override
+    public String getBaseline() {
+        return baseline;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         S3FileArtifactPlanConfig that = (S3FileArtifactPlanConfig) o;
-        return Objects.equals(source, that.source) && Objects.equals(destination, that.destination);
+        return Objects.equals(source, that.source) && Objects.equals(destination, that.destination) && Objects.equals(baseline, that.baseline);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(source, destination);
+        return Objects.hash(source, destination, baseline);
     }
 
     @Override
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+
+/**
+ * A bucket and key prefix given as {@code s3://bucket/prefix}.
+ */
+public class S3Uri {
+    public static final String SCHEME = "s3://";
+
+    private final String bucket;
+    private final String prefix;
+
+    public S3Uri(String bucket, String prefix) {
+        this.bucket = bucket;
+        this.prefix = prefix;
+    }
+
+    public static boolean isS3Uri(String value) {
+        return value != null && value.trim().startsWith(SCHEME);
+    }
+
+    public static S3Uri parse(String uri) {
+        String location = uri.trim().substring(SCHEME.length());
+        int slash = location.indexOf('/');
+        String bucket = slash < 0 ? location : location.substring(0, slash);
+        String prefix = slash < 0 ? "" : location.substring(slash + 1);
+        while (prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        if (Util.isBlank(bucket)) {
+            throw new IllegalArgumentException(String.format("`%s` does not name an S3 bucket.", uri));
+        }
+        return new S3Uri(bucket, prefix);
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+        return SCHEME + bucket + "/" + prefix;
+    }
+}
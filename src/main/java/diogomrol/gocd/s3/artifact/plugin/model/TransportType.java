@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+
+public enum TransportType {
+    BLOCKING("blocking"),
+    ASYNC("async");
+
+    private final String value;
+
+    TransportType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static TransportType fromValue(String value) {
+        if (Util.isBlank(value)) {
+            return BLOCKING;
+        }
+        for (TransportType transport : values()) {
+            if (transport.value.equalsIgnoreCase(value.trim())) {
+                return transport;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown transport `%s`.", value));
+    }
+}
@@ -1,15 +1,25 @@
 package diogomrol.gocd.s3.artifact.plugin.model;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class UnresolvedPropertyException extends Exception {
 
     private final String partiallyResolvedTag;
+    private final List<String> unresolvedVariables;
 
-    public UnresolvedPropertyException(String partiallyResolvedTag, String propertyName) {
-        super(String.format("Failed to resolve one or more variables in %s: %s", propertyName, partiallyResolvedTag));
+    public UnresolvedPropertyException(String partiallyResolvedTag, String propertyName, List<String> unresolvedVariables) {
+        super(String.format("Failed to resolve %s in %s: %s", unresolvedVariables.stream().map(name -> "${" + name + "}").collect(Collectors.joining(", ")), propertyName, partiallyResolvedTag));
         this.partiallyResolvedTag = partiallyResolvedTag;
+        this.unresolvedVariables = Collections.unmodifiableList(unresolvedVariables);
     }
 
     public String getPartiallyResolvedTag() {
         return partiallyResolvedTag;
     }
+
+    public List<String> getUnresolvedVariables() {
+        return unresolvedVariables;
+    }
 }
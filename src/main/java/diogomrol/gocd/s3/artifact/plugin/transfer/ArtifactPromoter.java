@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactLayout;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactManifest;
+import diogomrol.gocd.s3.artifact.plugin.model.S3Uri;
+import diogomrol.gocd.s3.artifact.plugin.utils.S3KeyBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
+
+/**
+ * Promotes an already published artifact to another bucket or prefix with server-side copies, so that
+ * no object content passes through the agent. Files are taken from the manifest of the artifact with the same
+ * id when there is one, otherwise from a listing of the source prefix.
+ */
+public class ArtifactPromoter {
+    private final ServerSideCopier copier;
+    private final ContentAddressedStore contentAddressedStore;
+
+    public ArtifactPromoter() {
+        this(new ServerSideCopier(), new ContentAddressedStore());
+    }
+
+    ArtifactPromoter(ServerSideCopier copier, ContentAddressedStore contentAddressedStore) {
+        this.copier = copier;
+        this.contentAddressedStore = contentAddressedStore;
+    }
+
+    public Result promote(AmazonS3 s3, S3Uri source, String artifactId, String bucket, String destination, ArtifactLayout layout, TransferExecutor transfers) throws IOException {
+        ArtifactManifest sourceManifest = readManifest(s3, source, artifactId);
+        List<SourceFile> files = sourceManifest != null ? filesOf(source, sourceManifest) : list(s3, source);
+        if (layout != ArtifactLayout.PREFIX && sourceManifest == null && !files.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Promoting `%s` to the `%s` layout requires the source artifact to have a manifest.", source, layout.getValue()));
+        }
+
+        List<Callable<Void>> copies = new ArrayList<>(files.size());
+        for (SourceFile file : files) {
+            copies.add(() -> {
+                if (layout == ArtifactLayout.CAS) {
+                    contentAddressedStore.copy(s3, source.getBucket(), file.key, bucket, file.sha256, file.size);
+                } else {
+                    String key = layout.keyOf(destination, file.path, file.sha256);
+                    LOG.info(String.format("Copying `%s` from S3 bucket `%s` to `%s` in S3 bucket `%s`.", file.key, source.getBucket(), key, bucket));
+                    copier.copy(s3, source.getBucket(), file.key, bucket, key, file.size);
+                }
+                return null;
+            });
+        }
+        transfers.invokeAll(copies);
+
+        ArtifactManifest manifest = null;
+        if (sourceManifest != null) {
+            manifest = new ArtifactManifest(layout);
+            for (SourceFile file : files) {
+                manifest.add(file.path, file.size, file.sha256);
+            }
+        }
+        return new Result(files.size(), manifest);
+    }
+
+    private static ArtifactManifest readManifest(AmazonS3 s3, S3Uri source, String artifactId) {
+        try {
+            return ArtifactManifest.fromJSON(s3.getObjectAsString(source.getBucket(), ArtifactManifest.keyOf(source.getPrefix(), artifactId)));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    private static List<SourceFile> filesOf(S3Uri source, ArtifactManifest manifest) {
+        List<SourceFile> files = new ArrayList<>();
+        for (Map.Entry<String, ArtifactManifest.Entry> entry : manifest.getFiles().entrySet()) {
+            String sha256 = entry.getValue().getSha256();
+            String key = manifest.getLayout().keyOf(source.getPrefix(), entry.getKey(), sha256);
+            files.add(new SourceFile(entry.getKey(), key, entry.getValue().getSize(), sha256));
+        }
+        return files;
+    }
+
+    private static List<SourceFile> list(AmazonS3 s3, S3Uri source) {
+        String prefix = source.getPrefix();
+        List<SourceFile> files = new ArrayList<>();
+        ObjectListing listing = prefix.isEmpty() ? s3.listObjects(source.getBucket()) : s3.listObjects(source.getBucket(), prefix);
+        while (true) {
+            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                String key = summary.getKey();
+                String path;
+                if (prefix.isEmpty()) {
+                    path = key;
+                } else if (key.equals(prefix)) {
+                    path = S3KeyBuilder.fileName(key);
+                } else if (key.startsWith(prefix + "/")) {
+                    path = key.substring(prefix.length() + 1);
+                } else {
+                    continue;
+                }
+                if (!ArtifactManifest.isManifestKey(key)) {
+                    files.add(new SourceFile(path, key, summary.getSize(), null));
+                }
+            }
+            if (!listing.isTruncated()) {
+                return files;
+            }
+            listing = s3.listNextBatchOfObjects(listing);
+        }
+    }
+
+    public static class Result {
+        private final int fileCount;
+        private final ArtifactManifest manifest;
+
+        Result(int fileCount, ArtifactManifest manifest) {
+            this.fileCount = fileCount;
+            this.manifest = manifest;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * @return the manifest of the promoted artifact, or {@code null} when the source had none
+         */
+        public ArtifactManifest getManifest() {
+            return manifest;
+        }
+    }
+
+    private static class SourceFile {
+        private final String path;
+        private final String key;
+        private final long size;
+        private final String sha256;
+
+        SourceFile(String path, String key, long size, String sha256) {
+            this.path = path;
+            this.key = key;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * {@link S3Transport} on the AWS SDK v2 {@link S3AsyncClient}, whose non-blocking HTTP client multiplexes all
+ * requests over a few event loop threads. The number of requests in flight is capped so that publishing or
+ * fetching thousands of files does not exhaust the client's connection acquisition queue; callers block in
+ * {@link #download} or {@link #upload} only while that cap is reached.
+ */
+public class AsyncS3Transport implements S3Transport {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final S3AsyncClient s3;
+    private final Semaphore inFlight;
+    private final CircuitBreaker circuitBreaker;
+
+    public AsyncS3Transport(S3AsyncClient s3) {
+        this(s3, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public AsyncS3Transport(S3AsyncClient s3, int maxInFlight) {
+        this(s3, maxInFlight, null);
+    }
+
+    /**
+     * @param circuitBreaker the breaker requests pass through, or {@code null}
+     */
+    public AsyncS3Transport(S3AsyncClient s3, int maxInFlight, CircuitBreaker circuitBreaker) {
+        this.s3 = s3;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public CompletableFuture<Void> download(String bucket, String key, File target, String expectedSha256) {
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path partFile;
+        try {
+            Files.createDirectories(targetPath.getParent());
+            partFile = Files.createFile(ChannelDownloadWriter.partFileOf(targetPath));
+        } catch (IOException e) {
+            return failed(e);
+        }
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(key).build();
+        // the transformer digests the body as it writes it, so verifying does not read the part file again
+        return issue(() -> s3.getObject(request, new ChecksummingFileTransformer(partFile)))
+                .thenAccept(checksums -> {
+                    try {
+                        if (expectedSha256 != null && !checksums.getSha256().equalsIgnoreCase(expectedSha256)) {
+                            throw new ChecksumMismatchException(target.toString(), expectedSha256, checksums.getSha256());
+                        }
+                        ChannelDownloadWriter.moveIntoPlace(partFile, targetPath);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .whenComplete((ignored, failure) -> {
+                    if (failure != null) {
+                        try {
+                            Files.deleteIfExists(partFile);
+                        } catch (IOException e) {
+                            failure.addSuppressed(e);
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<FileChecksums> upload(String bucket, String key, File file, boolean withChecksums) {
+        PutObjectRequest request = PutObjectRequest.builder().bucket(bucket).key(key).contentLength(file.length()).build();
+        if (!withChecksums) {
+            return issue(() -> s3.putObject(request, AsyncRequestBody.fromFile(file.toPath()))).thenApply(response -> null);
+        }
+        // the body is digested while the client streams it; the client already checks the streamed MD5 against
+        // the returned ETag, so no Content-MD5 is computed up front and the file is read once
+        ChecksummingRequestBody body = ChecksummingRequestBody.fromFile(file.toPath());
+        return issue(() -> s3.putObject(request, body)).thenApply(response -> body.checksums());
+    }
+
+    @Override
+    public void close() {
+        s3.close();
+    }
+
+    private <T> CompletableFuture<T> issue(Supplier<CompletableFuture<T>> request) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(new IOException("Interrupted while waiting to issue a transfer.", e));
+        }
+        if (circuitBreaker != null) {
+            try {
+                circuitBreaker.acquire();
+            } catch (CircuitBreakerOpenException e) {
+                inFlight.release();
+                return failed(e);
+            }
+        }
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            report(e);
+            return failed(e);
+        }
+        return response.whenComplete((result, failure) -> {
+            inFlight.release();
+            report(failure);
+        });
+    }
+
+    private void report(Throwable failure) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        Throwable cause = failure == null ? null : S3Transport.unwrap(failure);
+        if (cause instanceof SdkServiceException) {
+            int statusCode = ((SdkServiceException) cause).statusCode();
+            if (statusCode >= 500 || statusCode == 429) {
+                circuitBreaker.onFailure();
+                return;
+            }
+        } else if (cause instanceof SdkClientException) {
+            circuitBreaker.onFailure();
+            return;
+        }
+        circuitBreaker.onSuccess();
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out transfer buffers and takes them back for reuse, so that transferring many files does not allocate
+ * a buffer per file. Buffer sizes are rounded up to a power of two and pooled per size. Released buffers are
+ * kept until the pool holds {@code maxPooledBytes}, further ones are left to the garbage collector.
+ * <p>
+ * Buffers are either heap or direct buffers. Direct buffers live outside the Java heap and are written to
+ * channels without an extra copy, but count against {@code -XX:MaxDirectMemorySize}.
+ */
+public class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 8 * 1024;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_POOLED_BYTES, true);
+
+    private final long maxPooledBytes;
+    private final boolean direct;
+    private final ConcurrentLinkedDeque<ByteBuffer>[] sizeClasses;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private final AtomicLong peakInUseBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxPooledBytes, boolean direct) {
+        this.maxPooledBytes = maxPooledBytes;
+        this.direct = direct;
+        this.sizeClasses = new ConcurrentLinkedDeque[sizeClass(MAX_BUFFER_SIZE) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * The pool shared by uploads and downloads, holding up to 64 MB of direct buffers.
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return a cleared buffer of at least {@code minSize} bytes, to be given back with {@link #release}
+     */
+    public ByteBuffer acquire(int minSize) {
+        if (minSize > MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException(String.format("Buffers are limited to %d bytes, %d requested.", MAX_BUFFER_SIZE, minSize));
+        }
+        int size = sizeFor(minSize);
+        ByteBuffer buffer = sizeClasses[sizeClass(size)].pollFirst();
+        if (buffer != null) {
+            pooledBytes.addAndGet(-size);
+            hits.increment();
+            buffer.clear();
+        } else {
+            misses.increment();
+            buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        long inUse = inUseBytes.addAndGet(size);
+        peakInUseBytes.accumulateAndGet(inUse, Math::max);
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer acquired from this pool. The buffer must not be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        int size = buffer.capacity();
+        inUseBytes.addAndGet(-size);
+        if (pooledBytes.addAndGet(size) > maxPooledBytes) {
+            pooledBytes.addAndGet(-size);
+            return;
+        }
+        // most recently used first, its memory is the most likely to still be cached
+        sizeClasses[sizeClass(size)].offerFirst(buffer);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of acquired buffers which were taken from the pool, or 0 before any was acquired
+     */
+    public double hitRate() {
+        long hits = getHits();
+        long acquired = hits + getMisses();
+        return acquired == 0 ? 0 : (double) hits / acquired;
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getInUseBytes() {
+        return inUseBytes.get();
+    }
+
+    public long getPeakInUseBytes() {
+        return peakInUseBytes.get();
+    }
+
+    static int sizeFor(int minSize) {
+        int size = Math.max(minSize, MIN_BUFFER_SIZE);
+        return Integer.bitCount(size) == 1 ? size : Integer.highestOneBit(size) << 1;
+    }
+
+    private static int sizeClass(int size) {
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s buffer pool: hit rate %.0f%%, %d bytes in use, peak %d bytes, %d bytes pooled",
+                direct ? "direct" : "heap", hitRate() * 100, getInUseBytes(), getPeakInUseBytes(), getPooledBytes());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes downloaded object content to a temporary file next to the target through a {@link FileChannel}
+ * and a buffer from a {@link BufferPool}, then moves it into place so that a partially written file is never visible.
+ * When an expected SHA-256 is given, the digest is updated as the content streams through and a
+ * mismatching file is discarded before it reaches the target.
+ */
+public class ChannelDownloadWriter {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+
+    private final int bufferSize;
+    private final BufferPool bufferPool;
+
+    public ChannelDownloadWriter() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelDownloadWriter(long bufferSize) {
+        this(bufferSize, BufferPool.shared());
+    }
+
+    public ChannelDownloadWriter(long bufferSize, BufferPool bufferPool) {
+        this.bufferSize = (int) Math.min(Math.max(bufferSize, MIN_BUFFER_SIZE), MAX_BUFFER_SIZE);
+        this.bufferPool = bufferPool;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long write(InputStream content, long contentLength, File target) throws IOException {
+        return write(content, contentLength, target, null);
+    }
+
+    public long write(InputStream content, long contentLength, File target, String expectedSha256) throws IOException {
+        MessageDigest digest = expectedSha256 == null ? null : Checksums.sha256();
+        if (digest != null) {
+            content = new DigestInputStream(content, digest);
+        }
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path directory = targetPath.getParent();
+        Files.createDirectories(directory);
+        Path partFile = Files.createFile(partFileOf(targetPath));
+        try {
+            long written = copy(content, contentLength, partFile);
+            if (contentLength >= 0 && written != contentLength) {
+                throw new IOException(String.format("Expected %d bytes for `%s` but received %d.", contentLength, target, written));
+            }
+            if (digest != null) {
+                String actualSha256 = Checksums.toHex(digest.digest());
+                if (!actualSha256.equalsIgnoreCase(expectedSha256)) {
+                    throw new ChecksumMismatchException(target.toString(), expectedSha256, actualSha256);
+                }
+            }
+            moveIntoPlace(partFile, targetPath);
+            return written;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+    }
+
+    private long copy(InputStream content, long contentLength, Path partFile) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(bufferSize);
+        long written = 0;
+        try (ReadableByteChannel source = Channels.newChannel(content);
+             FileChannel out = FileChannel.open(partFile, WRITE)) {
+            preallocate(out, contentLength);
+            buffer.limit(bufferSize);
+            // fill the whole buffer before writing, so each write syscall moves bufferSize bytes
+            while (source.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    written += drain(buffer, out);
+                }
+            }
+            written += drain(buffer, out);
+            out.truncate(written);
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return written;
+    }
+
+    private long drain(ByteBuffer buffer, FileChannel out) throws IOException {
+        buffer.flip();
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += out.write(buffer);
+        }
+        buffer.clear().limit(bufferSize);
+        return written;
+    }
+
+    private static void preallocate(FileChannel out, long contentLength) throws IOException {
+        if (contentLength > 0) {
+            out.write(ByteBuffer.allocate(1), contentLength - 1);
+        }
+    }
+
+    /**
+     * @return a part file next to {@code target}, unique to one download. Unlike a temp file, it gets the default
+     * permissions of new files, which the fetched file keeps once moved into place.
+     */
+    static Path partFileOf(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".part");
+    }
+
+    static void moveIntoPlace(Path partFile, Path target) throws IOException {
+        try {
+            Files.move(partFile, target, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partFile, target, REPLACE_EXISTING);
+        }
+    }
+}
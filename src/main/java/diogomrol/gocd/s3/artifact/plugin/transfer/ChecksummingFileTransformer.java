@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes a response body into an existing part file and digests each buffer on its way to the disk, so that
+ * verifying a download does not read the file a second time. Each attempt of the client truncates the file and
+ * starts a fresh digest.
+ */
+class ChecksummingFileTransformer implements AsyncResponseTransformer<GetObjectResponse, FileChecksums> {
+    private final Path partFile;
+    private volatile CompletableFuture<FileChecksums> result;
+
+    ChecksummingFileTransformer(Path partFile) {
+        this.partFile = partFile;
+    }
+
+    @Override
+    public CompletableFuture<FileChecksums> prepare() {
+        result = new CompletableFuture<>();
+        return result;
+    }
+
+    @Override
+    public void onResponse(GetObjectResponse response) {
+    }
+
+    @Override
+    public void onStream(SdkPublisher<ByteBuffer> publisher) {
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(partFile, WRITE, TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        publisher.subscribe(new FileWriter(channel, result));
+    }
+
+    @Override
+    public void exceptionOccurred(Throwable failure) {
+        result.completeExceptionally(failure);
+    }
+
+    private static class FileWriter implements Subscriber<ByteBuffer> {
+        private final AsynchronousFileChannel channel;
+        private final CompletableFuture<FileChecksums> result;
+        private final MessageDigest sha256 = Checksums.sha256();
+        private Subscription subscription;
+        private long position;
+        private boolean writing;
+        private boolean complete;
+
+        FileWriter(AsynchronousFileChannel channel, CompletableFuture<FileChecksums> result) {
+            this.channel = channel;
+            this.result = result;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            sha256.update(buffer.duplicate());
+            synchronized (this) {
+                writing = true;
+            }
+            write(buffer);
+        }
+
+        private void write(ByteBuffer buffer) {
+            channel.write(buffer, position, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer written, Void attachment) {
+                    position += written;
+                    if (buffer.hasRemaining()) {
+                        write(buffer);
+                        return;
+                    }
+                    boolean finish;
+                    synchronized (FileWriter.this) {
+                        writing = false;
+                        finish = complete;
+                    }
+                    if (finish) {
+                        finish();
+                    } else {
+                        subscription.request(1);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable failure, Void attachment) {
+                    subscription.cancel();
+                    fail(failure);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            fail(failure);
+        }
+
+        @Override
+        public void onComplete() {
+            boolean finish;
+            synchronized (this) {
+                complete = true;
+                finish = !writing;
+            }
+            if (finish) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.complete(new FileChecksums(position, Checksums.toHex(sha256.digest())));
+        }
+
+        private void fail(Throwable failure) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+            result.completeExceptionally(failure);
+        }
+    }
+}
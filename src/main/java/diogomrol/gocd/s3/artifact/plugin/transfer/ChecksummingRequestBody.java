@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Optional;
+
+/**
+ * Request body which digests the file while the client publishes it, so that uploading with checksums reads the
+ * file once. Every subscription, including the client's retries, starts a fresh digest.
+ */
+class ChecksummingRequestBody implements AsyncRequestBody {
+    private final AsyncRequestBody body;
+    private volatile FileChecksums checksums;
+
+    ChecksummingRequestBody(AsyncRequestBody body) {
+        this.body = body;
+    }
+
+    static ChecksummingRequestBody fromFile(Path file) {
+        return new ChecksummingRequestBody(AsyncRequestBody.fromFile(file));
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return body.contentLength();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        MessageDigest sha256 = Checksums.sha256();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            private long size;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                size += buffer.remaining();
+                sha256.update(buffer.duplicate());
+                subscriber.onNext(buffer);
+            }
+
+            @Override
+            public void onError(Throwable failure) {
+                subscriber.onError(failure);
+            }
+
+            @Override
+            public void onComplete() {
+                checksums = new FileChecksums(size, Checksums.toHex(sha256.digest()));
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * @return the checksums of the last completely published body, or {@code null} when none was
+     */
+    FileChecksums checksums() {
+        return checksums;
+    }
+}
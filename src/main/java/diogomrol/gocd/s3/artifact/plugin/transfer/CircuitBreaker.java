@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
+
+/**
+ * Fails requests to a bucket fast while the bucket is unhealthy, instead of letting each of them wait out the SDK's
+ * timeouts and retries. The breaker opens when at least the error rate of the last {@link #WINDOW} requests failed,
+ * and rejects requests for {@link #OPEN_MILLIS}. It then lets up to {@link #HALF_OPEN_PROBES} requests through:
+ * the first to succeed closes it, the first to fail opens it again.
+ * <p>
+ * Only failures of S3 itself count: server errors, throttling and failed connections. Answers such as 404 show a
+ * healthy bucket and count as successes.
+ */
+public class CircuitBreaker {
+    static final int WINDOW = 20;
+    static final int MIN_REQUESTS = 10;
+    static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final int HALF_OPEN_PROBES = 2;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String bucket;
+    private final double errorRate;
+    private final LongSupplier clock;
+    private final boolean[] failed = new boolean[WINDOW];
+    private int requests;
+    private int failures;
+    private int next;
+    private State state = State.CLOSED;
+    private long stateSince;
+    private int probes;
+    private long rejected;
+    private long opened;
+    private State reportedState = State.CLOSED;
+    private long reportedOpened;
+
+    /**
+     * @param errorRate the share of failed requests, between 0 and 1, which opens the breaker
+     */
+    public CircuitBreaker(String bucket, double errorRate) {
+        this(bucket, errorRate, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String bucket, double errorRate, LongSupplier clock) {
+        this.bucket = bucket;
+        this.errorRate = errorRate;
+        this.clock = clock;
+    }
+
+    /**
+     * Admits a request, which must then be reported to {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @throws CircuitBreakerOpenException when the breaker is open, or half-open with all its probes in flight
+     */
+    public synchronized void acquire() {
+        long now = clock.getAsLong();
+        if (state == State.OPEN) {
+            if (now - stateSince < OPEN_MILLIS) {
+                throw reject(OPEN_MILLIS - (now - stateSince));
+            }
+            transition(State.HALF_OPEN, now);
+        }
+        if (state == State.HALF_OPEN) {
+            // probes which never reported, e.g. requests the SDK refused to send, do not hold the breaker half-open
+            if (probes >= HALF_OPEN_PROBES && now - stateSince < OPEN_MILLIS) {
+                throw reject(0);
+            }
+            if (probes >= HALF_OPEN_PROBES) {
+                stateSince = now;
+                probes = 0;
+            }
+            probes++;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            transition(State.CLOSED, clock.getAsLong());
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN, clock.getAsLong());
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (requests >= MIN_REQUESTS && failures >= errorRate * requests) {
+                transition(State.OPEN, clock.getAsLong());
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of requests reported since the breaker last closed, up to the last {@link #WINDOW}
+     */
+    public synchronized int getWindowRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the number of failures among {@link #getWindowRequests()}
+     */
+    public synchronized int getWindowFailures() {
+        return failures;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getOpened() {
+        return opened;
+    }
+
+    /**
+     * @return whether the breaker is not closed, or opened or changed state since the last call, so that a closed
+     * breaker of a healthy bucket is not reported after every request
+     */
+    public synchronized boolean needsReport() {
+        boolean needsReport = state != State.CLOSED || state != reportedState || opened != reportedOpened;
+        reportedState = state;
+        reportedOpened = opened;
+        return needsReport;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s, %d of the last %d requests failed, opened %d times, %d requests rejected",
+                state.name().toLowerCase().replace('_', '-'), failures, requests, opened, rejected);
+    }
+
+    private void record(boolean failure) {
+        if (requests == WINDOW) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            requests++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % WINDOW;
+    }
+
+    private void transition(State to, long now) {
+        State from = state;
+        state = to;
+        stateSince = now;
+        probes = 0;
+        if (to == State.OPEN) {
+            opened++;
+            LOG.warn(String.format("Circuit breaker of S3 bucket `%s` opened after %d of the last %d requests failed, failing requests fast for %d s.",
+                    bucket, failures, requests, TimeUnit.MILLISECONDS.toSeconds(OPEN_MILLIS)));
+        } else if (to == State.HALF_OPEN) {
+            LOG.info(String.format("Circuit breaker of S3 bucket `%s` is half-open, letting %d requests through.", bucket, HALF_OPEN_PROBES));
+        } else if (from == State.HALF_OPEN) {
+            LOG.info(String.format("Circuit breaker of S3 bucket `%s` closed, %d requests were rejected while it was open.", bucket, rejected));
+        }
+        if (to == State.CLOSED) {
+            requests = 0;
+            failures = 0;
+            next = 0;
+        }
+    }
+
+    private CircuitBreakerOpenException reject(long remainingMillis) {
+        rejected++;
+        return new CircuitBreakerOpenException(bucket, failures, requests, remainingMillis);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.SdkClientException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown instead of sending a request to a bucket whose {@link CircuitBreaker} is open. Not retried by the SDK.
+ */
+public class CircuitBreakerOpenException extends SdkClientException {
+    public CircuitBreakerOpenException(String bucket, int failures, int requests, long remainingMillis) {
+        super(remainingMillis > 0
+                ? String.format("S3 bucket `%s` is failing, %d of the last %d requests failed. Failing fast for another %d s.", bucket, failures, requests, TimeUnit.MILLISECONDS.toSeconds(remainingMillis))
+                : String.format("S3 bucket `%s` is failing, waiting for probe requests to succeed.", bucket));
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return false;
+    }
+}
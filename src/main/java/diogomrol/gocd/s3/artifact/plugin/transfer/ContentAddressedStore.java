@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores file bodies once under {@code cas/<sha256>}. A blob is only uploaded when neither this store
+ * nor a HEAD request has seen it before, so identical files across publishes are transferred once.
+ */
+public class ContentAddressedStore {
+    public static final String BLOB_PREFIX = "cas/";
+
+    private final FileUploader uploader;
+    private final ServerSideCopier copier;
+    private final Set<String> knownBlobs = ConcurrentHashMap.newKeySet();
+
+    public ContentAddressedStore() {
+        this(new FileUploader(), new ServerSideCopier());
+    }
+
+    ContentAddressedStore(FileUploader uploader, ServerSideCopier copier) {
+        this.uploader = uploader;
+        this.copier = copier;
+    }
+
+    /**
+     * Records blobs known to exist, e.g. from the manifest of an earlier publish, so they are not checked again.
+     */
+    public void addKnownBlobs(Collection<String> sha256s) {
+        for (String sha256 : sha256s) {
+            knownBlobs.add(blobKey(sha256));
+        }
+    }
+
+    /**
+     * Copies a blob from another object, typically in another bucket, unless it is already stored.
+     *
+     * @return {@code true} when the blob was copied, {@code false} when it was already stored
+     */
+    public boolean copy(AmazonS3 s3, String sourceBucket, String sourceKey, String bucket, String sha256, long size) {
+        String key = blobKey(sha256);
+        if (knownBlobs.contains(key) || s3.doesObjectExist(bucket, key)) {
+            knownBlobs.add(key);
+            return false;
+        }
+        copier.copy(s3, sourceBucket, sourceKey, bucket, key, size);
+        knownBlobs.add(key);
+        return true;
+    }
+
+    public static String blobKey(String sha256) {
+        return BLOB_PREFIX + sha256;
+    }
+
+    /**
+     * @return {@code true} when the blob was uploaded, {@code false} when it was already stored
+     */
+    public boolean store(AmazonS3 s3, String bucket, File file, FileChecksums checksums) throws IOException {
+        return store(s3, bucket, file, checksums, null);
+    }
+
+    /**
+     * @param copySourceKey an object in the same bucket with identical content, copied instead of uploading when the blob is missing
+     * @return {@code true} when the blob was uploaded or copied, {@code false} when it was already stored
+     */
+    public boolean store(AmazonS3 s3, String bucket, File file, FileChecksums checksums, String copySourceKey) throws IOException {
+        String key = blobKey(checksums.getSha256());
+        if (knownBlobs.contains(key) || s3.doesObjectExist(bucket, key)) {
+            knownBlobs.add(key);
+            return false;
+        }
+        if (copySourceKey != null) {
+            copier.copy(s3, bucket, copySourceKey, bucket, key, checksums.getSize());
+        } else {
+            uploader.upload(s3, bucket, key, file, true);
+        }
+        knownBlobs.add(key);
+        return true;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Maps a file part by part. The Content-MD5 of each part and the SHA-256 of the whole file are computed
+ * while the part is produced, so the upload reads the part back from the page cache instead of the disk.
+ * Both digests read each chunk of the mapped part in turn, while it is still in the CPU cache.
+ */
+public class FileUploadSource implements Closeable {
+    private static final int DIGEST_CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long partSize;
+    private final MessageDigest sha256 = Checksums.sha256();
+    private long position;
+    private int partNumber;
+
+    public FileUploadSource(File file, long partSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), READ);
+        this.size = channel.size();
+        this.partSize = partSize;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean hasNextPart() {
+        return position < size || (size == 0 && partNumber == 0);
+    }
+
+    public Part nextPart() throws IOException {
+        long length = Math.min(partSize, size - position);
+        ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        MessageDigest md5 = Checksums.md5();
+        for (int offset = 0; offset < length; offset += DIGEST_CHUNK_SIZE) {
+            ByteBuffer window = body.duplicate();
+            window.position(offset).limit((int) Math.min(length, offset + (long) DIGEST_CHUNK_SIZE));
+            md5.update(window.duplicate());
+            sha256.update(window);
+        }
+        position += length;
+        partNumber++;
+        return new Part(partNumber, body, Base64.getEncoder().encodeToString(md5.digest()), !hasNextPart());
+    }
+
+    public FileChecksums checksums() {
+        if (hasNextPart()) {
+            throw new IllegalStateException("Checksums are only known after all parts were produced.");
+        }
+        return new FileChecksums(size, Checksums.toHex(sha256.digest()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static class Part {
+        private final int partNumber;
+        private final ByteBuffer body;
+        private final String md5;
+        private final boolean lastPart;
+
+        Part(int partNumber, ByteBuffer body, String md5, boolean lastPart) {
+            this.partNumber = partNumber;
+            this.body = body;
+            this.md5 = md5;
+            this.lastPart = lastPart;
+        }
+
+        public int getPartNumber() {
+            return partNumber;
+        }
+
+        public long getLength() {
+            return body.remaining();
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public boolean isLastPart() {
+            return lastPart;
+        }
+
+        public InputStream openStream() {
+            return new ByteBufferInputStream(body);
+        }
+    }
+}
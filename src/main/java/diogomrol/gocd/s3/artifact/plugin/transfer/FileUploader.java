@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+import java.io.File;
+import java.io.IOException;
+
+import static diogomrol.gocd.s3.artifact.plugin.S3ArtifactPlugin.LOG;
+
+/**
+ * Uploads a single file, in parts when it is large. With checksums requested, small files are put from a
+ * mapped buffer with their Content-MD5 and SHA-256 taken in one pass; the SHA-256 is also stored as object metadata.
+ */
+public class FileUploader {
+    public static final String SHA256_METADATA_KEY = "sha256";
+
+    private final MultipartFileUploader multipartUploader;
+
+    public FileUploader() {
+        this(new MultipartFileUploader());
+    }
+
+    FileUploader(MultipartFileUploader multipartUploader) {
+        this.multipartUploader = multipartUploader;
+    }
+
+    /**
+     * @return the checksums of the uploaded file, or {@code null} when they were neither requested nor computed
+     */
+    public FileChecksums upload(AmazonS3 s3, String bucket, String key, File file, boolean withChecksums) throws IOException {
+        if (MultipartFileUploader.isMultipart(file)) {
+            FileChecksums checksums = multipartUploader.upload(s3, bucket, key, file);
+            LOG.info(String.format("Uploaded `%s` (%d bytes, sha256 %s) in parts to `%s`.", file, checksums.getSize(), checksums.getSha256(), key));
+            return checksums;
+        }
+        if (withChecksums) {
+            return putWithChecksums(s3, bucket, key, file);
+        }
+        PutObjectRequest request = new PutObjectRequest(bucket, key, file);
+        ObjectMetadata metadata = new ObjectMetadata();
+        request.setMetadata(metadata);
+        s3.putObject(request);
+        return null;
+    }
+
+    private FileChecksums putWithChecksums(AmazonS3 s3, String bucket, String key, File file) throws IOException {
+        try (FileUploadSource source = new FileUploadSource(file, Math.max(file.length(), 1))) {
+            FileUploadSource.Part part = source.nextPart();
+            FileChecksums checksums = source.checksums();
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(part.getLength());
+            metadata.setContentMD5(part.getMd5());
+            metadata.addUserMetadata(SHA256_METADATA_KEY, checksums.getSha256());
+            s3.putObject(new PutObjectRequest(bucket, key, part.openStream(), metadata));
+            return checksums;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Hedges GetObject requests to cut the tail latency of fetching many objects. When S3 has not answered a request
+ * within the threshold, the same request is sent again and the first answer is used, the other one is aborted.
+ * The threshold is a percentile of the recent times to first byte, so only the slowest requests are hedged, and
+ * none are until {@link #MIN_SAMPLES} requests have answered.
+ * <p>
+ * Hedges are capped to {@link #MAX_HEDGED_SHARE} of the requests, so that a general slowdown, which takes every
+ * request over the threshold, does not double the load on S3.
+ */
+public class HedgedGetter implements ObjectGetter, Closeable {
+    public static final double MAX_HEDGED_SHARE = 0.05;
+    static final int MIN_SAMPLES = 20;
+    static final int WINDOW = 256;
+
+    private final double percentile;
+    private final ExecutorService requests;
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount;
+    private volatile long thresholdNanos = Long.MAX_VALUE;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * @param percentile the percentile of the times to first byte after which a request is hedged, e.g. 95
+     */
+    public HedgedGetter(double percentile) {
+        this.percentile = percentile;
+        ThreadFactory threads = TransferExecutor.virtualThreadFactory("s3-hedged-get-");
+        if (threads == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            threads = runnable -> {
+                Thread thread = new Thread(runnable, "s3-hedged-get-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        this.requests = Executors.newCachedThreadPool(threads);
+    }
+
+    @Override
+    public S3Object getObject(AmazonS3 s3, GetObjectRequest getRequest) {
+        requestCount.incrementAndGet();
+        CompletableFuture<S3Object> primary = send(s3, getRequest);
+        long threshold = thresholdNanos;
+        if (threshold == Long.MAX_VALUE) {
+            return await(primary);
+        }
+        try {
+            return primary.get(threshold, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // hedged below, unless over the cap
+        } catch (InterruptedException e) {
+            throw interrupted(primary);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+        if (!tryHedge()) {
+            return await(primary);
+        }
+        CompletableFuture<S3Object> hedge = send(s3, (GetObjectRequest) getRequest.clone());
+        S3Object object = await(firstAnswer(primary, hedge));
+        if (hedge.getNow(null) == object) {
+            hedgeWins.incrementAndGet();
+        }
+        return object;
+    }
+
+    public long getRequests() {
+        return requestCount.get();
+    }
+
+    public long getHedges() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return the number of hedged requests the duplicate answered first
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return the current threshold in milliseconds, or -1 while there are too few samples
+     */
+    public long getThresholdMillis() {
+        long threshold = thresholdNanos;
+        return threshold == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    @Override
+    public void close() {
+        // requests still in flight complete on their own, and are aborted as losers
+        requests.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d hedged after p%s of %d ms, %d hedges answered first",
+                getRequests(), getHedges(), percentile, getThresholdMillis(), getHedgeWins());
+    }
+
+    private CompletableFuture<S3Object> send(AmazonS3 s3, GetObjectRequest getRequest) {
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            S3Object object = s3.getObject(getRequest);
+            record(System.nanoTime() - start);
+            return object;
+        }, requests);
+    }
+
+    private boolean tryHedge() {
+        long hedges;
+        do {
+            hedges = hedgeCount.get();
+            if (hedges + 1 > requestCount.get() * MAX_HEDGED_SHARE) {
+                return false;
+            }
+        } while (!hedgeCount.compareAndSet(hedges, hedges + 1));
+        return true;
+    }
+
+    private synchronized void record(long nanos) {
+        samples[sampleCount % WINDOW] = nanos;
+        sampleCount++;
+        if (sampleCount >= MIN_SAMPLES) {
+            long[] sorted = Arrays.copyOf(samples, Math.min(sampleCount, WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            thresholdNanos = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+    private static CompletableFuture<S3Object> firstAnswer(CompletableFuture<S3Object> primary, CompletableFuture<S3Object> hedge) {
+        CompletableFuture<S3Object> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<S3Object, Throwable> settle = (object, failure) -> {
+            if (failure != null) {
+                if (failures.incrementAndGet() == 2) {
+                    first.completeExceptionally(failure);
+                }
+            } else if (!first.complete(object)) {
+                discard(object);
+            }
+        };
+        primary.whenComplete(settle);
+        hedge.whenComplete(settle);
+        return first;
+    }
+
+    private static S3Object await(CompletableFuture<S3Object> answer) {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            throw interrupted(answer);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static AbortedException interrupted(CompletableFuture<S3Object> answer) {
+        Thread.currentThread().interrupt();
+        answer.thenAccept(HedgedGetter::discard);
+        return new AbortedException();
+    }
+
+    private static RuntimeException unwrap(Throwable failure) {
+        Throwable cause = S3Transport.unwrap(failure);
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new SdkClientException(cause);
+    }
+
+    private static void discard(S3Object object) {
+        object.getObjectContent().abort();
+        try {
+            object.close();
+        } catch (IOException e) {
+            // the connection was aborted already
+        }
+    }
+}
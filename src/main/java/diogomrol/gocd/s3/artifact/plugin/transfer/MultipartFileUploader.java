@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Uploads a file in parts. Parts are mapped and hashed in order on the calling thread, and with a part
+ * concurrency above one, up to that many of them are sent at the same time on the shared {@link TransferExecutor},
+ * so that the parts of all large files draw from the same threads.
+ */
+public class MultipartFileUploader {
+    public static final long MULTIPART_THRESHOLD = 64L * 1024 * 1024;
+    public static final int DEFAULT_PART_CONCURRENCY = 4;
+    private static final long MIN_PART_SIZE = 16L * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+
+    private final long minPartSize;
+    private final int partConcurrency;
+    private final TransferExecutor partUploads;
+
+    public MultipartFileUploader() {
+        this(MIN_PART_SIZE, DEFAULT_PART_CONCURRENCY);
+    }
+
+    MultipartFileUploader(long minPartSize) {
+        this(minPartSize, 1);
+    }
+
+    MultipartFileUploader(long minPartSize, int partConcurrency) {
+        this(minPartSize, partConcurrency, TransferExecutor.shared());
+    }
+
+    MultipartFileUploader(long minPartSize, int partConcurrency, TransferExecutor partUploads) {
+        this.minPartSize = minPartSize;
+        this.partConcurrency = partConcurrency;
+        this.partUploads = partUploads;
+    }
+
+    public static boolean isMultipart(File file) {
+        return file.length() >= MULTIPART_THRESHOLD;
+    }
+
+    long partSize(long size) {
+        return Math.max(minPartSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    public FileChecksums upload(AmazonS3 s3, String bucket, String key, File file) throws IOException {
+        String uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, new ObjectMetadata())).getUploadId();
+        List<Future<PartETag>> pendingParts = new ArrayList<>();
+        try (FileUploadSource source = new FileUploadSource(file, partSize(file.length()))) {
+            List<PartETag> partETags = new ArrayList<>();
+            Semaphore inFlight = new Semaphore(partConcurrency);
+            while (source.hasNextPart()) {
+                FileUploadSource.Part part = source.nextPart();
+                UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(part.getPartNumber())
+                        .withPartSize(part.getLength())
+                        .withMD5Digest(part.getMd5())
+                        .withInputStream(part.openStream())
+                        .withLastPart(part.isLastPart());
+                if (partConcurrency <= 1) {
+                    partETags.add(s3.uploadPart(request).getPartETag());
+                    continue;
+                }
+                // bounds the mapped parts held in memory, not only the requests in flight
+                acquire(inFlight, pendingParts);
+                pendingParts.add(partUploads.submit(() -> {
+                    try {
+                        return s3.uploadPart(request).getPartETag();
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<PartETag> pendingPart : pendingParts) {
+                partETags.add(get(pendingPart));
+            }
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+            return source.checksums();
+        } catch (IOException | RuntimeException e) {
+            for (Future<PartETag> pendingPart : pendingParts) {
+                pendingPart.cancel(true);
+            }
+            abort(s3, bucket, key, uploadId, e);
+            throw e;
+        }
+    }
+
+    private static void acquire(Semaphore inFlight, List<Future<PartETag>> pendingParts) throws IOException {
+        try {
+            while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                // surface a failed part instead of waiting for the others
+                for (Future<PartETag> pendingPart : pendingParts) {
+                    if (pendingPart.isDone()) {
+                        get(pendingPart);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading parts.");
+        }
+    }
+
+    private static PartETag get(Future<PartETag> pendingPart) throws IOException {
+        try {
+            return pendingPart.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading parts.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void abort(AmazonS3 s3, String bucket, String key, String uploadId, Exception cause) {
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
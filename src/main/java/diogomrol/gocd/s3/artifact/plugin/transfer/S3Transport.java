@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Non-blocking object transfers. Each call returns as soon as the request is issued, so a single thread can keep
+ * many small transfers in flight; failures surface through the returned future.
+ */
+public interface S3Transport extends Closeable {
+
+    /**
+     * Downloads an object to {@code target}, replacing it only once the content is complete. When
+     * {@code expectedSha256} is given, the future fails with {@link ChecksumMismatchException} on a mismatch.
+     */
+    CompletableFuture<Void> download(String bucket, String key, File target, String expectedSha256);
+
+    /**
+     * @return a future of the checksums of the uploaded file, or of {@code null} when they were not requested
+     */
+    CompletableFuture<FileChecksums> upload(String bucket, String key, File file, boolean withChecksums);
+
+    /**
+     * Waits for all transfers, rethrowing the failure of the first one that failed.
+     */
+    static void awaitAll(Collection<? extends CompletableFuture<?>> transfers) throws IOException {
+        try {
+            CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            transfers.forEach(transfer -> transfer.cancel(true));
+            throw new IOException("Interrupted while waiting for transfers.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Waits for a single transfer, rethrowing its failure.
+     */
+    static <T> T await(CompletableFuture<T> transfer) throws IOException {
+        awaitAll(Collections.singletonList(transfer));
+        return transfer.join();
+    }
+
+    static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof UncheckedIOException) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies objects within S3, so that unchanged content never travels through the agent. Objects above
+ * the 5 GB limit of CopyObject are copied in byte ranges with UploadPartCopy.
+ */
+public class ServerSideCopier {
+    public static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final long MIN_COPY_PART_SIZE = 512L * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+
+    private final long maxCopyObjectSize;
+
+    public ServerSideCopier() {
+        this(MAX_COPY_OBJECT_SIZE);
+    }
+
+    ServerSideCopier(long maxCopyObjectSize) {
+        this.maxCopyObjectSize = maxCopyObjectSize;
+    }
+
+    public void copy(AmazonS3 s3, String sourceBucket, String sourceKey, String bucket, String key, long size) {
+        if (size <= maxCopyObjectSize) {
+            s3.copyObject(new CopyObjectRequest(sourceBucket, sourceKey, bucket, key));
+            return;
+        }
+        ObjectMetadata sourceMetadata = s3.getObjectMetadata(sourceBucket, sourceKey);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setUserMetadata(sourceMetadata.getUserMetadata());
+        if (sourceMetadata.getContentType() != null) {
+            metadata.setContentType(sourceMetadata.getContentType());
+        }
+        String uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+        try {
+            long partSize = partSize(size);
+            List<PartETag> partETags = new ArrayList<>();
+            int partNumber = 1;
+            for (long position = 0; position < size; position += partSize, partNumber++) {
+                CopyPartRequest request = new CopyPartRequest()
+                        .withSourceBucketName(sourceBucket)
+                        .withSourceKey(sourceKey)
+                        .withDestinationBucketName(bucket)
+                        .withDestinationKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withFirstByte(position)
+                        .withLastByte(Math.min(position + partSize, size) - 1);
+                partETags.add(s3.copyPart(request).getPartETag());
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+        } catch (RuntimeException e) {
+            try {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+            } catch (RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    long partSize(long size) {
+        return Math.max(Math.min(MIN_COPY_PART_SIZE, maxCopyObjectSize), (size + MAX_PARTS - 1) / MAX_PARTS);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Fetches objects small enough to be held in memory. The whole object is read into a pooled buffer, verified if
+ * a checksum is expected, and written with a single write to a part file moved into place, skipping the SDK's
+ * per-object file download setup.
+ * Reading each object to its end before closing it returns the connection to the SDK's pool, so the next request
+ * reuses it. Not for objects larger than {@link #MAX_SMALL_OBJECT_SIZE}.
+ */
+public class SmallObjectFetcher {
+    public static final int MAX_SMALL_OBJECT_SIZE = 1024 * 1024;
+
+    private final TransferMetrics metrics;
+    private final BufferPool bufferPool;
+    private final ObjectGetter objectGetter;
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+
+    public SmallObjectFetcher(TransferMetrics metrics) {
+        this(metrics, BufferPool.shared());
+    }
+
+    public SmallObjectFetcher(TransferMetrics metrics, BufferPool bufferPool) {
+        this(metrics, bufferPool, ObjectGetter.DIRECT);
+    }
+
+    public SmallObjectFetcher(TransferMetrics metrics, BufferPool bufferPool, ObjectGetter objectGetter) {
+        this.metrics = metrics;
+        this.bufferPool = bufferPool;
+        this.objectGetter = objectGetter;
+    }
+
+    public TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long fetch(AmazonS3 s3, GetObjectRequest getRequest, Path target, String expectedSha256) throws IOException {
+        getRequest.setRequestMetricCollector(metrics.collector());
+        ByteBuffer buffer = null;
+        try {
+            S3Object object = objectGetter.getObject(s3, getRequest);
+            try (S3ObjectInputStream content = object.getObjectContent()) {
+                long contentLength = object.getObjectMetadata().getContentLength();
+                if (contentLength > MAX_SMALL_OBJECT_SIZE) {
+                    content.abort();
+                    throw new IOException(String.format("Object `%s` of %d bytes is too large to be fetched as a small object.", getRequest.getKey(), contentLength));
+                }
+                buffer = bufferPool.acquire((int) contentLength);
+                ReadableByteChannel source = Channels.newChannel(content);
+                while (source.read(buffer) != -1) {
+                    if (!buffer.hasRemaining()) {
+                        // a full buffer may hold the whole object, only grow it when there is more
+                        int next = content.read();
+                        if (next == -1) {
+                            break;
+                        }
+                        if (buffer.capacity() >= MAX_SMALL_OBJECT_SIZE) {
+                            content.abort();
+                            throw new IOException(String.format("Object `%s` is too large to be fetched as a small object.", getRequest.getKey()));
+                        }
+                        buffer = grow(buffer);
+                        buffer.put((byte) next);
+                    }
+                }
+            } finally {
+                object.close();
+            }
+            buffer.flip();
+            if (expectedSha256 != null) {
+                MessageDigest sha256 = Checksums.sha256();
+                sha256.update(buffer.duplicate());
+                String actualSha256 = Checksums.toHex(sha256.digest());
+                if (!actualSha256.equalsIgnoreCase(expectedSha256)) {
+                    throw new ChecksumMismatchException(target.toString(), expectedSha256, actualSha256);
+                }
+            }
+            long length = buffer.remaining();
+            write(buffer, target);
+            metrics.record(length);
+            return length;
+        } finally {
+            if (buffer != null) {
+                bufferPool.release(buffer);
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer, Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        if (createdDirectories.add(directory)) {
+            Files.createDirectories(directory);
+        }
+        Path partFile = Files.createFile(ChannelDownloadWriter.partFileOf(target.toAbsolutePath()));
+        try {
+            try (FileChannel out = FileChannel.open(partFile, WRITE)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            ChannelDownloadWriter.moveIntoPlace(partFile, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+    }
+
+    private ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer grown = bufferPool.acquire(buffer.capacity() * 2);
+        buffer.flip();
+        grown.put(buffer);
+        bufferPool.release(buffer);
+        return grown;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.ClientConfiguration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent object transfers concurrently. The first failure cancels the transfers still pending.
+ * <p>
+ * On a JVM with virtual threads (Java 21 or later) every transfer gets its own virtual thread and a semaphore
+ * bounds how many run at once, so blocking SDK calls cost no platform thread while they wait on the network.
+ * Otherwise the transfers run on a fixed pool of platform threads.
+ */
+public class TransferExecutor implements Closeable {
+    public static final int DEFAULT_CONCURRENCY = 8;
+    /**
+     * Matches the SDK's default connection pool, beyond which further transfers would only wait for a connection.
+     */
+    public static final int DEFAULT_VIRTUAL_CONCURRENCY = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory("s3-transfer-");
+    private static final TransferExecutor SHARED = new TransferExecutor();
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public TransferExecutor() {
+        this(VIRTUAL_THREADS == null ? DEFAULT_CONCURRENCY : DEFAULT_VIRTUAL_CONCURRENCY);
+    }
+
+    public TransferExecutor(int concurrency) {
+        this(concurrency, VIRTUAL_THREADS);
+    }
+
+    /**
+     * @param virtualThreads the factory of a thread per transfer, or {@code null} for a fixed pool
+     */
+    TransferExecutor(int concurrency, ThreadFactory virtualThreads) {
+        if (virtualThreads != null) {
+            this.executor = Executors.newCachedThreadPool(virtualThreads);
+            this.permits = new Semaphore(concurrency);
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "s3-transfer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.permits = null;
+        }
+    }
+
+    /**
+     * @return the executor shared by transfers of every task of the plugin, which must not be closed
+     */
+    public static TransferExecutor shared() {
+        return SHARED;
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    /**
+     * @return the results in the order of the given tasks
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(completionService.submit(bounded(task)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                completionService.take().get();
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for transfers to complete.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Starts a single transfer, which waits for a free slot like those started by {@link #invokeAll}.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(bounded(task));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> Callable<T> bounded(Callable<T> task) {
+        if (permits == null) {
+            return task;
+        }
+        return () -> {
+            permits.acquire();
+            try {
+                return task.call();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    /**
+     * Looks up {@code Thread.ofVirtual().name(prefix, 1).factory()} reflectively, since the plugin is built for Java 8.
+     *
+     * @return {@code null} when the JVM has no virtual threads, or only as a disabled preview
+     */
+    static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            // a preview JVM without --enable-preview only fails once a thread is created
+            factory.newThread(() -> { });
+            return factory;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+}
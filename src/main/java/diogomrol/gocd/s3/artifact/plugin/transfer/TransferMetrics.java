@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts requests and bytes of a batch of transfers, and how many requests found an idle connection in the SDK's
+ * pool. The pool statistics are taken by the SDK right before a connection is leased, so a request which saw an
+ * idle connection reused a kept-alive one instead of opening a new one.
+ */
+public class TransferMetrics {
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder pooledRequests = new LongAdder();
+    private final LongAdder reusedConnections = new LongAdder();
+    private final RequestMetricCollector collector = new RequestMetricCollector() {
+        @Override
+        public void collectMetrics(Request<?> request, Response<?> response) {
+            TimingInfo timing = request.getAWSRequestMetrics().getTimingInfo();
+            Number available = timing.getCounter(AWSRequestMetrics.Field.HttpClientPoolAvailableCount.name());
+            if (available != null) {
+                pooledRequests.increment();
+                if (available.longValue() > 0) {
+                    reusedConnections.increment();
+                }
+            }
+        }
+    };
+
+    /**
+     * Set on a request to have the SDK report its connection pool statistics here.
+     */
+    public RequestMetricCollector collector() {
+        return collector;
+    }
+
+    public void record(long transferredBytes) {
+        requests.increment();
+        bytes.add(transferredBytes);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the share of requests which reused a pooled connection, or -1 when the SDK reported no pool statistics
+     */
+    public double connectionReuseRatio() {
+        long pooled = pooledRequests.sum();
+        return pooled == 0 ? -1 : (double) reusedConnections.sum() / pooled;
+    }
+
+    public double requestsPerSecond() {
+        long elapsedNanos = Math.max(System.nanoTime() - startNanos, 1);
+        return getRequests() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        double reuseRatio = connectionReuseRatio();
+        return String.format("%d requests, %d bytes, %.0f requests/s, connection reuse %s",
+                getRequests(), getBytes(), requestsPerSecond(), reuseRatio < 0 ? "unknown" : String.format("%.0f%%", reuseRatio * 100));
+    }
+}
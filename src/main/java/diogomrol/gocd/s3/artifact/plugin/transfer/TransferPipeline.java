@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs items through the stages source, prepare, transfer and record, connected by bounded queues. Each stage
+ * starts on an item as soon as the previous one hands it over, and a full queue blocks the stage feeding it, so
+ * at most a few queues' worth of items are held regardless of how many the source produces.
+ * <p>
+ * The source runs on the calling thread, prepare and transfer on their own workers, and record on a single thread
+ * in the order items complete. The first failure in any stage stops all of them and is rethrown.
+ * <p>
+ * Prepared items are transferred in the order they were prepared, unless a {@link #withTransferOrder transfer order}
+ * is given. Transfers then only start once the window of waiting items has filled or every item is prepared, and
+ * workers always pick the first of the waiting items in that order, so that even the first transfers follow it
+ * instead of the order of the source.
+ *
+ * @param <S> the items produced by the source
+ * @param <P> the prepared items
+ * @param <T> the transferred items
+ */
+public class TransferPipeline<S, P, T> {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final Object END = new Object();
+    private static final long OFFER_POLL_MILLIS = 50;
+
+    public interface Source<S> {
+        /**
+         * Hands each item to {@code emit}, which blocks while the pipeline is full and throws
+         * {@link CancellationException} once the pipeline has failed.
+         */
+        void produce(Consumer<S> emit) throws IOException;
+    }
+
+    public interface Stage<I, O> {
+        O process(I item) throws IOException;
+    }
+
+    public interface Sink<T> {
+        void accept(T item) throws IOException;
+    }
+
+    private final int prepareWorkers;
+    private final int transferWorkers;
+    private final int queueCapacity;
+    private final ThreadFactory transferThreads;
+    private Comparator<? super P> transferOrder;
+    private int transferWindow;
+
+    public TransferPipeline(int prepareWorkers, int transferWorkers) {
+        this(prepareWorkers, transferWorkers, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public TransferPipeline(int prepareWorkers, int transferWorkers, int queueCapacity) {
+        this(prepareWorkers, transferWorkers, queueCapacity, TransferExecutor.virtualThreadsAvailable()
+                ? TransferExecutor.virtualThreadFactory("s3-publish-transfer-") : platformThreads("s3-publish-transfer-"));
+    }
+
+    TransferPipeline(int prepareWorkers, int transferWorkers, int queueCapacity, ThreadFactory transferThreads) {
+        this.prepareWorkers = prepareWorkers;
+        this.transferWorkers = transferWorkers;
+        this.queueCapacity = queueCapacity;
+        this.transferThreads = transferThreads;
+    }
+
+    /**
+     * Transfers waiting items in the given order, holding up to {@code window} prepared items to choose from. No item
+     * is transferred before the window has filled or the last item is prepared.
+     */
+    public TransferPipeline<S, P, T> withTransferOrder(Comparator<? super P> order, int window) {
+        this.transferOrder = order;
+        this.transferWindow = window;
+        return this;
+    }
+
+    /**
+     * @return the number of items recorded
+     */
+    public long run(Source<S> source, Stage<S, P> prepare, Stage<P, T> transfer, Sink<T> record) throws IOException {
+        Channel produced = new FifoChannel(queueCapacity);
+        Channel prepared = transferOrder == null ? new FifoChannel(queueCapacity) : new PriorityChannel(transferWindow, transferOrder);
+        Channel transferred = new FifoChannel(queueCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger recorded = new AtomicInteger();
+
+        ExecutorService preparers = Executors.newFixedThreadPool(prepareWorkers, platformThreads("s3-publish-prepare-"));
+        ExecutorService transferrers = Executors.newFixedThreadPool(transferWorkers, transferThreads);
+        ExecutorService recorder = Executors.newSingleThreadExecutor(platformThreads("s3-publish-record-"));
+        Runnable abort = () -> {
+            preparers.shutdownNow();
+            transferrers.shutdownNow();
+            recorder.shutdownNow();
+            done.countDown();
+        };
+        try {
+            AtomicInteger remainingPreparers = new AtomicInteger(prepareWorkers);
+            for (int i = 0; i < prepareWorkers; i++) {
+                preparers.execute(guarded(failure, abort, () -> work(produced, prepared, prepare, remainingPreparers)));
+            }
+            AtomicInteger remainingTransferrers = new AtomicInteger(transferWorkers);
+            for (int i = 0; i < transferWorkers; i++) {
+                transferrers.execute(guarded(failure, abort, () -> work(prepared, transferred, transfer, remainingTransferrers)));
+            }
+            recorder.execute(guarded(failure, abort, () -> {
+                for (Object item = transferred.take(); item != END; item = transferred.take()) {
+                    @SuppressWarnings("unchecked") T transferredItem = (T) item;
+                    record.accept(transferredItem);
+                    recorded.incrementAndGet();
+                }
+                done.countDown();
+            }));
+
+            try {
+                source.produce(item -> offer(produced, item, failure));
+                offer(produced, END, failure);
+            } catch (CancellationException e) {
+                // a stage failed, its failure is rethrown below
+            } catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                abort.run();
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for transfers to complete."));
+        } finally {
+            abort.run();
+        }
+        rethrow(failure.get());
+        return recorded.get();
+    }
+
+    private static <I, O> void work(Channel in, Channel out, Stage<I, O> stage, AtomicInteger remainingWorkers) throws IOException, InterruptedException {
+        for (Object item = in.take(); ; item = in.take()) {
+            if (item == END) {
+                // leave the marker for the other workers of this stage, the last one passes it on
+                in.put(END);
+                if (remainingWorkers.decrementAndGet() == 0) {
+                    out.put(END);
+                }
+                return;
+            }
+            @SuppressWarnings("unchecked") I input = (I) item;
+            out.put(stage.process(input));
+        }
+    }
+
+    private static void offer(Channel queue, Object item, AtomicReference<Throwable> failure) {
+        try {
+            while (!queue.offer(item, OFFER_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+        if (failure.get() != null) {
+            throw new CancellationException();
+        }
+    }
+
+    private static Runnable guarded(AtomicReference<Throwable> failure, Runnable abort, Task task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                // stopped because another stage failed
+            } catch (Exception | Error e) {
+                if (failure.compareAndSet(null, e)) {
+                    abort.run();
+                }
+            }
+        };
+    }
+
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure == null) {
+            return;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IOException(failure);
+    }
+
+    private static ThreadFactory platformThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private interface Channel {
+        void put(Object item) throws InterruptedException;
+
+        boolean offer(Object item, long timeout, TimeUnit unit) throws InterruptedException;
+
+        Object take() throws InterruptedException;
+    }
+
+    private static class FifoChannel implements Channel {
+        private final BlockingQueue<Object> queue;
+
+        FifoChannel(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void put(Object item) throws InterruptedException {
+            queue.put(item);
+        }
+
+        @Override
+        public boolean offer(Object item, long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.offer(item, timeout, unit);
+        }
+
+        @Override
+        public Object take() throws InterruptedException {
+            return queue.take();
+        }
+    }
+
+    /**
+     * A bounded channel handing out the first waiting item in order. The end marker sorts after every item, and
+     * takes no space so that workers can always pass it on. Nothing is handed out until the channel has been full
+     * or has received the end marker once.
+     */
+    private static class PriorityChannel implements Channel {
+        private final PriorityBlockingQueue<Object> queue;
+        private final Semaphore space;
+        private final int capacity;
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @SuppressWarnings("unchecked")
+        PriorityChannel(int capacity, Comparator<?> order) {
+            Comparator<Object> itemOrder = (Comparator<Object>) order;
+            this.queue = new PriorityBlockingQueue<>(capacity, (a, b) -> {
+                if (a == END || b == END) {
+                    return a == b ? 0 : a == END ? 1 : -1;
+                }
+                return itemOrder.compare(a, b);
+            });
+            this.space = new Semaphore(capacity);
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void put(Object item) throws InterruptedException {
+            if (item != END) {
+                space.acquire();
+            }
+            add(item);
+        }
+
+        @Override
+        public boolean offer(Object item, long timeout, TimeUnit unit) throws InterruptedException {
+            if (item != END && !space.tryAcquire(timeout, unit)) {
+                return false;
+            }
+            add(item);
+            return true;
+        }
+
+        @Override
+        public Object take() throws InterruptedException {
+            released.await();
+            Object item = queue.take();
+            if (item != END) {
+                space.release();
+            }
+            return item;
+        }
+
+        private void add(Object item) {
+            queue.put(item);
+            if (item == END || queue.size() >= capacity) {
+                released.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.utils;
+
+/**
+ * Builds S3 keys from a prefix and relative paths in a reused {@link StringBuilder}, without going through
+ * {@link java.nio.file.Path}. Both {@code /} and {@code \} separate segments, whatever the platform. Runs of
+ * separators are collapsed to one {@code /} and trailing separators dropped, as {@code Paths.get} does; a
+ * leading separator of the first non-empty path is kept.
+ * <p>
+ * An instance is not thread-safe. The static helpers use one instance per thread.
+ */
+public class S3KeyBuilder {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<S3KeyBuilder> BUILDERS = ThreadLocal.withInitial(S3KeyBuilder::new);
+
+    private final StringBuilder key = new StringBuilder(128);
+
+    public S3KeyBuilder reset() {
+        key.setLength(0);
+        return this;
+    }
+
+    /**
+     * Appends the segments of {@code path}, separated from what was appended before by a single {@code /}.
+     */
+    public S3KeyBuilder append(String path) {
+        if (path == null) {
+            return this;
+        }
+        boolean separator = key.length() > 0 && key.charAt(key.length() - 1) != '/';
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/' || c == '\\') {
+                if (key.length() == 0) {
+                    key.append('/');
+                } else {
+                    separator = key.charAt(key.length() - 1) != '/';
+                }
+                continue;
+            }
+            if (separator) {
+                key.append('/');
+                separator = false;
+            }
+            key.append(c);
+        }
+        return this;
+    }
+
+    public String build() {
+        return key.toString();
+    }
+
+    public static String join(String prefix, String path) {
+        return BUILDERS.get().reset().append(prefix).append(path).build();
+    }
+
+    public static String join(String prefix, String path, String name) {
+        return BUILDERS.get().reset().append(prefix).append(path).append(name).build();
+    }
+
+    /**
+     * Joins {@code prefix} and {@code path} under a shard segment of two hex digits derived from the joined key,
+     * e.g. {@code 3f/pipe/12/out/build.json}. Keys of one artifact are spread over 256 prefixes, which S3
+     * partitions separately, instead of all sharing the artifact's prefix. The shard depends on the key only, so
+     * it can be derived again on fetch.
+     */
+    public static String sharded(String prefix, String path) {
+        String key = join(prefix, path);
+        return BUILDERS.get().reset().append(shard(key)).append(key).build();
+    }
+
+    static String shard(String key) {
+        // String.hashCode is specified, the finalizer of MurmurHash3 spreads keys which differ in their last characters
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        int shard = hash & 0xff;
+        return new String(new char[]{HEX_DIGITS[shard >>> 4], HEX_DIGITS[shard & 0xf]});
+    }
+
+    public static String normalize(String path) {
+        return BUILDERS.get().reset().append(path).build();
+    }
+
+    /**
+     * @return the last segment of {@code path}, or an empty string when it has none
+     */
+    public static String fileName(String path) {
+        int end = path.length();
+        while (end > 0 && isSeparator(path.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && !isSeparator(path.charAt(start - 1))) {
+            start--;
+        }
+        return path.substring(start, end);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '\\';
+    }
+}
@@ -20,8 +20,11 @@ import diogomrol.gocd.s3.artifact.plugin.annotation.FieldMetadata;
 import diogomrol.gocd.s3.artifact.plugin.annotation.FieldMetadataTypeAdapter;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactPlanConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactPlanConfigTypeAdapter;
+import diogomrol.gocd.s3.artifact.plugin.model.FetchArtifactRequestTypeAdapter;
+import diogomrol.gocd.s3.artifact.plugin.model.PublishArtifactRequestTypeAdapter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -29,19 +32,26 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Util {
     public static  String normalizePath(Path path) {
-        return path.toString().replace("\\", "/");
+        return S3KeyBuilder.normalize(path.toString());
     }
 
     public static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
             .serializeNulls()
             .registerTypeAdapter(ArtifactPlanConfig.class, new ArtifactPlanConfigTypeAdapter())
             .registerTypeAdapter(FieldMetadata.class, new FieldMetadataTypeAdapter())
+            .registerTypeAdapterFactory(PublishArtifactRequestTypeAdapter.FACTORY)
+            .registerTypeAdapterFactory(FetchArtifactRequestTypeAdapter.FACTORY)
             .create();
 
+    private static final Map<String, String> RESOURCE_RESPONSES = new ConcurrentHashMap<>();
+
     public static String readResource(String resourceFile) {
         return new String(readResourceBytes(resourceFile), StandardCharsets.UTF_8);
     }
@@ -64,18 +74,56 @@ public class Util {
         return output.toByteArray();
     }
 
+    /**
+     * @return the response of a view request for the template {@code templateResource}, rendered on first use and
+     * kept for the lifetime of the plugin
+     */
+    public static String viewResponse(String templateResource) {
+        return RESOURCE_RESPONSES.computeIfAbsent(templateResource, resource -> {
+            JsonObject jsonObject = new JsonObject();
+            jsonObject.addProperty("template", readResource(resource));
+            return GSON.toJson(jsonObject);
+        });
+    }
+
+    /**
+     * @return the response of an icon request for the image {@code iconResource}, encoded on first use and kept for
+     * the lifetime of the plugin
+     */
+    public static String iconResponse(String iconResource, String contentType) {
+        return RESOURCE_RESPONSES.computeIfAbsent(iconResource, resource -> {
+            JsonObject jsonObject = new JsonObject();
+            jsonObject.addProperty("content_type", contentType);
+            jsonObject.addProperty("data", Base64.getEncoder().encodeToString(readResourceBytes(resource)));
+            return GSON.toJson(jsonObject);
+        });
+    }
+
     public static String pluginId() {
-        return getPluginProperties().getProperty("pluginId");
+        return PluginProperties.INSTANCE.getProperty("pluginId");
     }
 
+    /**
+     * @return a copy of the plugin properties, which are read once on first use
+     */
     public static Properties getPluginProperties() {
-        String propertiesAsAString = readResource("/plugin.properties");
-        try {
-            Properties properties = new Properties();
-            properties.load(new StringReader(propertiesAsAString));
-            return properties;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        Properties properties = new Properties();
+        properties.putAll(PluginProperties.INSTANCE);
+        return properties;
+    }
+
+    private static class PluginProperties {
+        private static final Properties INSTANCE = load();
+
+        private static Properties load() {
+            String propertiesAsAString = readResource("/plugin.properties");
+            try {
+                Properties properties = new Properties();
+                properties.load(new StringReader(propertiesAsAString));
+                return properties;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AccelerationProbeTest {
+    @Mock
+    private S3ClientFactory clientFactory;
+    @Mock
+    private AmazonS3 accelerated;
+    @Mock
+    private AmazonS3 standard;
+
+    private ArtifactStoreConfig storeConfig;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        storeConfig = new ArtifactStoreConfig("bucket", "eu-west-1", "key", "secret");
+        storeConfig.setTransferAcceleration(true);
+        when(clientFactory.probeClient(storeConfig, true)).thenReturn(accelerated);
+        when(clientFactory.probeClient(storeConfig, false)).thenReturn(standard);
+    }
+
+    @Test
+    public void shouldTimeBothEndpointsWhenTheyAnswer() {
+        when(accelerated.getObject(any(GetObjectRequest.class))).thenThrow(error(404, "NoSuchKey"));
+        when(standard.getObject(any(GetObjectRequest.class))).thenThrow(error(403, "AccessDenied"));
+
+        AccelerationProbe.Result result = new AccelerationProbe(clientFactory).probe(storeConfig);
+
+        assertThat(result.isAccelerationEnabled()).isTrue();
+        assertThat(result.getError()).isNull();
+        assertThat(result.getAcceleratedMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(result.getStandardMillis()).isGreaterThanOrEqualTo(0);
+        verify(accelerated, times(AccelerationProbe.ROUNDS + 1)).getObject(any(GetObjectRequest.class));
+        verify(standard, times(AccelerationProbe.ROUNDS + 1)).getObject(any(GetObjectRequest.class));
+        verify(accelerated).shutdown();
+        verify(standard).shutdown();
+    }
+
+    @Test
+    public void shouldReportAccelerationNotEnabledWhenTheAcceleratedEndpointRejectsRequests() {
+        when(accelerated.getObject(any(GetObjectRequest.class))).thenThrow(error(400, "InvalidRequest"));
+
+        AccelerationProbe.Result result = new AccelerationProbe(clientFactory).probe(storeConfig);
+
+        assertThat(result.isAccelerationEnabled()).isFalse();
+        assertThat(result.getError()).isEqualTo("S3 Transfer Acceleration is not configured on this bucket");
+        verify(accelerated).shutdown();
+        verify(standard).shutdown();
+    }
+
+    @Test
+    public void shouldReportFailureWithoutRejectingAccelerationWhenTheBucketCannotBeReached() {
+        when(accelerated.getObject(any(GetObjectRequest.class))).thenThrow(new SdkClientException("Unable to execute HTTP request"));
+
+        AccelerationProbe.Result result = new AccelerationProbe(clientFactory).probe(storeConfig);
+
+        assertThat(result.isAccelerationEnabled()).isTrue();
+        assertThat(result.getError()).isEqualTo("Unable to execute HTTP request");
+        assertThat(result.toString()).isEqualTo("bucket could not be reached: Unable to execute HTTP request");
+    }
+
+    @Test
+    public void shouldLeaveProbeInconclusiveWhenTheAcceleratedEndpointAnswersAnotherBadRequest() {
+        AmazonS3Exception badRequest = new AmazonS3Exception("The authorization header is malformed");
+        badRequest.setStatusCode(400);
+        badRequest.setErrorCode("AuthorizationHeaderMalformed");
+        when(accelerated.getObject(any(GetObjectRequest.class))).thenThrow(badRequest);
+
+        AccelerationProbe.Result result = new AccelerationProbe(clientFactory).probe(storeConfig);
+
+        assertThat(result.isAccelerationEnabled()).isTrue();
+        assertThat(result.isInconclusive()).isTrue();
+        assertThat(result.getError()).contains("The authorization header is malformed");
+    }
+
+    @Test
+    public void shouldReuseResultOfEqualStoreConfigUntilItExpires() {
+        when(accelerated.getObject(any(GetObjectRequest.class))).thenThrow(error(404, "NoSuchKey"));
+        when(standard.getObject(any(GetObjectRequest.class))).thenThrow(error(404, "NoSuchKey"));
+        AtomicLong now = new AtomicLong(1000);
+        AccelerationProbe probe = new AccelerationProbe(clientFactory, now::get);
+        ArtifactStoreConfig sameStore = new ArtifactStoreConfig("bucket", "eu-west-1", "key", "secret");
+        sameStore.setTransferAcceleration(true);
+        when(clientFactory.probeClient(sameStore, true)).thenReturn(accelerated);
+        when(clientFactory.probeClient(sameStore, false)).thenReturn(standard);
+
+        AccelerationProbe.Result first = probe.probe(storeConfig);
+        now.addAndGet(AccelerationProbe.CACHE_TTL_MILLIS - 1);
+        AccelerationProbe.Result cached = probe.probe(sameStore);
+
+        assertThat(cached).isSameAs(first);
+        verify(accelerated, times(AccelerationProbe.ROUNDS + 1)).getObject(any(GetObjectRequest.class));
+
+        now.incrementAndGet();
+        assertThat(probe.probe(sameStore)).isNotSameAs(first);
+        verify(accelerated, times(2 * (AccelerationProbe.ROUNDS + 1))).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void shouldKeepAtMostMaxCachedResults() {
+        when(accelerated.getObject(any(GetObjectRequest.class))).thenThrow(error(404, "NoSuchKey"));
+        when(standard.getObject(any(GetObjectRequest.class))).thenThrow(error(404, "NoSuchKey"));
+        when(clientFactory.probeClient(any(ArtifactStoreConfig.class), eq(true))).thenReturn(accelerated);
+        when(clientFactory.probeClient(any(ArtifactStoreConfig.class), eq(false))).thenReturn(standard);
+        AccelerationProbe probe = new AccelerationProbe(clientFactory);
+
+        AccelerationProbe.Result first = probe.probe(storeConfig);
+        for (int i = 0; i < AccelerationProbe.MAX_CACHED; i++) {
+            probe.probe(new ArtifactStoreConfig("bucket-" + i, "eu-west-1", "key", "secret"));
+        }
+
+        assertThat(probe.probe(storeConfig)).isNotSameAs(first);
+    }
+
+    private static AmazonS3Exception error(int statusCode, String errorCode) {
+        AmazonS3Exception e = new AmazonS3Exception(statusCode == 400 ? "S3 Transfer Acceleration is not configured on this bucket" : errorCode);
+        e.setStatusCode(statusCode);
+        e.setErrorCode(errorCode);
+        return e;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.model.AssumeRoleRequest;
+import com.amazonaws.services.securitytoken.model.AssumeRoleResult;
+import com.amazonaws.services.securitytoken.model.Credentials;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AssumedRoleCredentialsProviderTest {
+    private static final String ROLE_ARN = "arn:aws:iam::123456789012:role/gocd-artifacts";
+
+    private AWSSecurityTokenService sts;
+    private ScheduledExecutorService refresher;
+    private AssumedRoleCredentialsProvider provider;
+
+    @Before
+    public void setUp() {
+        sts = mock(AWSSecurityTokenService.class);
+        refresher = mock(ScheduledExecutorService.class);
+        provider = new AssumedRoleCredentialsProvider(sts, ROLE_ARN, "external", refresher);
+    }
+
+    @Test
+    public void shouldAssumeRoleOnceAndReuseItsCredentials() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class))).thenReturn(assumed("first", TimeUnit.HOURS.toMillis(1)));
+
+        AWSCredentials credentials = provider.getCredentials();
+        provider.getCredentials();
+
+        ArgumentCaptor<AssumeRoleRequest> requestCaptor = ArgumentCaptor.forClass(AssumeRoleRequest.class);
+        verify(sts, times(1)).assumeRole(requestCaptor.capture());
+        assertThat(requestCaptor.getValue().getRoleArn()).isEqualTo(ROLE_ARN);
+        assertThat(requestCaptor.getValue().getExternalId()).isEqualTo("external");
+        assertThat(credentials.getAWSAccessKeyId()).isEqualTo("first");
+        assertThat(((AWSSessionCredentials) credentials).getSessionToken()).isEqualTo("first-token");
+    }
+
+    @Test
+    public void shouldScheduleRefreshAheadOfExpiry() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class))).thenReturn(assumed("first", TimeUnit.HOURS.toMillis(1)), assumed("second", TimeUnit.HOURS.toMillis(1)));
+
+        provider.getCredentials();
+        provider.getCredentials();
+
+        ArgumentCaptor<Runnable> refreshCaptor = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+        verify(refresher).schedule(refreshCaptor.capture(), delayCaptor.capture(), eq(TimeUnit.MILLISECONDS));
+        assertThat(delayCaptor.getValue()).isBetween(TimeUnit.MINUTES.toMillis(49), TimeUnit.MINUTES.toMillis(50));
+
+        refreshCaptor.getValue().run();
+
+        assertThat(provider.getCredentials().getAWSAccessKeyId()).isEqualTo("second");
+        verify(sts, times(2)).assumeRole(any(AssumeRoleRequest.class));
+    }
+
+    @Test
+    public void shouldKeepCredentialsAndRetryWhenBackgroundRefreshFails() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class)))
+                .thenReturn(assumed("first", TimeUnit.HOURS.toMillis(1)))
+                .thenThrow(new SdkClientException("STS unreachable"));
+        provider.getCredentials();
+        provider.getCredentials();
+        ArgumentCaptor<Runnable> refreshCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(refresher).schedule(refreshCaptor.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        refreshCaptor.getValue().run();
+
+        assertThat(provider.getCredentials().getAWSAccessKeyId()).isEqualTo("first");
+        verify(refresher).schedule(any(Runnable.class), eq(AssumedRoleCredentialsProvider.RETRY_DELAY_MILLIS), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldNotRefreshInBackgroundWhenCredentialsWereNotUsedSinceAssumed() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class))).thenReturn(assumed("first", TimeUnit.HOURS.toMillis(1)), assumed("second", TimeUnit.HOURS.toMillis(1)));
+        provider.getCredentials();
+        ArgumentCaptor<Runnable> refreshCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(refresher).schedule(refreshCaptor.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        refreshCaptor.getValue().run();
+
+        verify(sts, times(1)).assumeRole(any(AssumeRoleRequest.class));
+        verify(refresher, times(1)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        assertThat(provider.getCredentials().getAWSAccessKeyId()).isEqualTo("first");
+    }
+
+    @Test
+    public void shouldCancelScheduledRefreshWhenClosed() {
+        ScheduledFuture<?> scheduledRefresh = mock(ScheduledFuture.class);
+        doReturn(scheduledRefresh).when(refresher).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        when(sts.assumeRole(any(AssumeRoleRequest.class))).thenReturn(assumed("first", TimeUnit.SECONDS.toMillis(30)), assumed("second", TimeUnit.SECONDS.toMillis(30)));
+        provider.getCredentials();
+
+        provider.close();
+        provider.getCredentials();
+
+        verify(scheduledRefresh).cancel(false);
+        verify(refresher, times(1)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        verify(sts, times(2)).assumeRole(any(AssumeRoleRequest.class));
+    }
+
+    @Test
+    public void shouldAssumeRoleAgainWhenCredentialsAreAboutToExpire() {
+        when(sts.assumeRole(any(AssumeRoleRequest.class))).thenReturn(assumed("first", TimeUnit.SECONDS.toMillis(30)), assumed("second", TimeUnit.HOURS.toMillis(1)));
+
+        provider.getCredentials();
+
+        assertThat(provider.getCredentials().getAWSAccessKeyId()).isEqualTo("second");
+    }
+
+    private static AssumeRoleResult assumed(String accessKeyId, long validForMillis) {
+        return new AssumeRoleResult().withCredentials(new Credentials(accessKeyId, "secret", accessKeyId + "-token",
+                new Date(System.currentTimeMillis() + validForMillis)));
+    }
+}
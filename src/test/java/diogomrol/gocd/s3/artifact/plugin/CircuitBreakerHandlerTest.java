@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import diogomrol.gocd.s3.artifact.plugin.transfer.CircuitBreaker;
+import diogomrol.gocd.s3.artifact.plugin.transfer.CircuitBreakerOpenException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerHandlerTest {
+    private CircuitBreaker circuitBreaker;
+    private CircuitBreakerHandler handler;
+
+    @Before
+    public void setUp() {
+        circuitBreaker = new CircuitBreaker("artifacts", 0.5);
+        handler = new CircuitBreakerHandler(circuitBreaker);
+    }
+
+    @Test
+    public void shouldCountServerErrorsThrottlingAndConnectionFailuresAsFailures() {
+        handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+        handler.afterError(null, null, error(503, "SlowDown"));
+        handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+        handler.afterError(null, null, error(400, "Throttling"));
+        handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+        handler.afterError(null, null, new SdkClientException("connection reset"));
+
+        assertThat(circuitBreaker.getWindowRequests()).isEqualTo(3);
+        assertThat(circuitBreaker.getWindowFailures()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldCountAnswersOfHealthyBucketAsSuccesses() {
+        handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+        handler.afterResponse(null, null);
+        handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+        handler.afterError(null, null, error(404, "NoSuchKey"));
+        handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+        handler.afterError(null, null, new AbortedException());
+
+        assertThat(circuitBreaker.getWindowRequests()).isEqualTo(3);
+        assertThat(circuitBreaker.getWindowFailures()).isZero();
+    }
+
+    @Test
+    public void shouldRejectRequestsWhileOpen() {
+        for (int i = 0; i < 10; i++) {
+            handler.beforeExecution(new GetObjectRequest("artifacts", "a.json"));
+            handler.afterError(null, null, error(500, "InternalError"));
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> handler.beforeExecution(new GetObjectRequest("artifacts", "a.json")))
+                .isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(circuitBreaker.getRejected()).isEqualTo(1);
+        assertThat(circuitBreaker.getOpened()).isEqualTo(1);
+    }
+
+    private static AmazonS3Exception error(int statusCode, String errorCode) {
+        AmazonS3Exception e = new AmazonS3Exception(errorCode);
+        e.setStatusCode(statusCode);
+        e.setErrorCode(errorCode);
+        return e;
+    }
+}
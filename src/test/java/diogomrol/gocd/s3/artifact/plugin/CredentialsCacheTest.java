@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class CredentialsCacheTest {
+    private AtomicInteger stsClients;
+    private CredentialsCache cache;
+
+    @Before
+    public void setUp() {
+        stsClients = new AtomicInteger();
+        cache = new CredentialsCache(config -> {
+            stsClients.incrementAndGet();
+            return mock(AWSSecurityTokenService.class);
+        }, mock(ScheduledExecutorService.class));
+    }
+
+    @Test
+    public void shouldShareProviderOfStoresWithSameRole() {
+        ArtifactStoreConfig first = new ArtifactStoreConfig("first-bucket", "eu-west-1", null, null);
+        first.setRoleArn("arn:aws:iam::123456789012:role/gocd-artifacts");
+        ArtifactStoreConfig second = new ArtifactStoreConfig("second-bucket", "eu-west-1", null, null);
+        second.setRoleArn("arn:aws:iam::123456789012:role/gocd-artifacts");
+
+        AWSCredentialsProvider provider = cache.provider(first);
+
+        assertThat(provider).isInstanceOf(AssumedRoleCredentialsProvider.class);
+        assertThat(cache.provider(second)).isSameAs(provider);
+        assertThat(stsClients.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotShareProviderOfDifferentExternalIds() {
+        ArtifactStoreConfig first = new ArtifactStoreConfig("bucket", "eu-west-1", null, null);
+        first.setRoleArn("arn:aws:iam::123456789012:role/gocd-artifacts");
+        first.setExternalId("first");
+        ArtifactStoreConfig second = new ArtifactStoreConfig("bucket", "eu-west-1", null, null);
+        second.setRoleArn("arn:aws:iam::123456789012:role/gocd-artifacts");
+        second.setExternalId("second");
+
+        assertThat(cache.provider(first)).isNotSameAs(cache.provider(second));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyResolvedProviderBeyondLimit() {
+        ArtifactStoreConfig first = new ArtifactStoreConfig("bucket", "eu-west-1", null, null);
+        first.setRoleArn("arn:aws:iam::123456789012:role/first");
+        AWSCredentialsProvider provider = cache.provider(first);
+
+        for (int i = 0; i < CredentialsCache.MAX_CACHED; i++) {
+            ArtifactStoreConfig other = new ArtifactStoreConfig("bucket", "eu-west-1", null, null);
+            other.setRoleArn("arn:aws:iam::123456789012:role/other-" + i);
+            cache.provider(other);
+        }
+
+        assertThat(cache.provider(first)).isNotSameAs(provider);
+        assertThat(stsClients.get()).isEqualTo(CredentialsCache.MAX_CACHED + 2);
+    }
+
+    @Test
+    public void shouldUseAccessKeysOrDefaultChainWithoutRole() {
+        ArtifactStoreConfig withKeys = new ArtifactStoreConfig("bucket", "eu-west-1", "access", "secret");
+        ArtifactStoreConfig withoutKeys = new ArtifactStoreConfig("bucket", "eu-west-1", null, null);
+
+        assertThat(cache.provider(withKeys)).isInstanceOf(AWSStaticCredentialsProvider.class);
+        assertThat(cache.provider(withKeys).getCredentials().getAWSAccessKeyId()).isEqualTo("access");
+        assertThat(cache.provider(withoutKeys)).isSameAs(DefaultAWSCredentialsProviderChain.getInstance());
+        assertThat(stsClients.get()).isZero();
+    }
+}
@@ -0,0 +1,859 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for S3, serving path-style requests ({@code <endpoint>/<bucket>/<key>}) on a local port,
+ * so that publish and fetch can be tested end to end without network access or an AWS account.
+ * <p>
+ * Supports PutObject, GetObject with ranges, HeadObject, DeleteObject, CopyObject, multipart uploads including
+ * UploadPartCopy, ListObjects and ListObjectsV2. Requests are not authenticated, and {@code aws-chunked} bodies
+ * sent by the AWS SDK over plain http are decoded. ETags are computed as S3 does, so the SDKs' MD5 checks pass.
+ * <p>
+ * Each request can be delayed by a fixed latency, request and response bodies can be capped to a bandwidth shared
+ * by all connections, and requests can be failed with {@code 503 SlowDown}, either at random or the next few.
+ */
+public class FakeS3Server implements Closeable {
+    public static final String REGION = "us-east-1";
+    public static final String LATENCY_MILLIS_PROPERTY = "fakeS3.latencyMillis";
+    public static final String BYTES_PER_SECOND_PROPERTY = "fakeS3.bytesPerSecond";
+    public static final String ERROR_RATE_PROPERTY = "fakeS3.errorRate";
+
+    private static final int IO_CHUNK_SIZE = 16 * 1024;
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    private static final String XMLNS = " xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"";
+    private static final DateTimeFormatter ISO_MILLIS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>\\s*(\\d+)\\s*</PartNumber>");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+    private final Random random = new Random(42);
+    private final AtomicInteger failNext = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile Throttle uploadThrottle;
+    private volatile Throttle downloadThrottle;
+
+    private FakeS3Server(HttpServer server) {
+        this.server = server;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-s3-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     */
+    public static FakeS3Server start() throws IOException {
+        return new FakeS3Server(HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+    }
+
+    /**
+     * Starts a server with the latency, bandwidth and error rate given by the {@code fakeS3.*} system properties,
+     * which the {@code integrationTest} task passes on from the Gradle properties of the same name.
+     */
+    public static FakeS3Server startFromSystemProperties() throws IOException {
+        FakeS3Server server = start();
+        server.setLatencyMillis(Long.getLong(LATENCY_MILLIS_PROPERTY, 0));
+        server.setBytesPerSecond(Long.getLong(BYTES_PER_SECOND_PROPERTY, 0));
+        server.setErrorRate(Double.parseDouble(System.getProperty(ERROR_RATE_PROPERTY, "0")));
+        return server;
+    }
+
+    public String endpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public FakeS3Server createBucket(String bucket) {
+        buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<>());
+        return this;
+    }
+
+    /**
+     * @return a store config pointing at {@code bucket} on this server, with path-style access and dummy credentials
+     */
+    public ArtifactStoreConfig storeConfig(String bucket) {
+        createBucket(bucket);
+        ArtifactStoreConfig storeConfig = new ArtifactStoreConfig(bucket, REGION, "fake-access-key", "fake-secret-key");
+        storeConfig.setEndpoint(endpoint());
+        storeConfig.setPathStyleAccess(true);
+        return storeConfig;
+    }
+
+    /**
+     * Delays every request by {@code latencyMillis} before it is handled.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Caps request bodies and response bodies each to {@code bytesPerSecond}, shared by all connections. 0 removes
+     * the caps.
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.uploadThrottle = bytesPerSecond > 0 ? new Throttle(bytesPerSecond) : null;
+        this.downloadThrottle = bytesPerSecond > 0 ? new Throttle(bytesPerSecond) : null;
+    }
+
+    /**
+     * Fails each request with {@code 503 SlowDown} with probability {@code errorRate}. The random sequence is
+     * seeded, so a test sees the same failures on every run as long as its requests arrive in the same order.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Fails the next {@code count} requests with {@code 503 SlowDown}.
+     */
+    public void failNextRequests(int count) {
+        failNext.set(count);
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return the content of the object, or null when it does not exist
+     */
+    public byte[] getObject(String bucket, String key) {
+        NavigableMap<String, StoredObject> objects = buckets.get(bucket);
+        StoredObject object = objects == null ? null : objects.get(key);
+        return object == null ? null : object.data.clone();
+    }
+
+    /**
+     * @return the keys of all objects in the bucket, in order
+     */
+    public List<String> keys(String bucket) {
+        NavigableMap<String, StoredObject> objects = buckets.get(bucket);
+        return objects == null ? new ArrayList<>() : new ArrayList<>(objects.keySet());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (shouldFail()) {
+                injectedErrors.increment();
+                readBody(exchange);
+                sendError(exchange, 503, "SlowDown", "Please reduce your request rate.");
+                return;
+            }
+            route(exchange);
+        } catch (S3Error e) {
+            sendError(exchange, e.status, e.code, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "InternalError", String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean shouldFail() {
+        if (failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            return true;
+        }
+        if (errorRate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException, InterruptedException {
+        String path = decode(exchange.getRequestURI().getRawPath());
+        path = path.startsWith("/") ? path.substring(1) : path;
+        int slash = path.indexOf('/');
+        String bucket = slash < 0 ? path : path.substring(0, slash);
+        String key = slash < 0 ? "" : path.substring(slash + 1);
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String method = exchange.getRequestMethod();
+
+        if (bucket.isEmpty()) {
+            throw new S3Error(400, "InvalidRequest", "Requests must use path-style addressing.");
+        }
+        if (key.isEmpty()) {
+            if ("PUT".equals(method)) {
+                readBody(exchange);
+                createBucket(bucket);
+                sendEmpty(exchange, 200);
+            } else if ("HEAD".equals(method)) {
+                bucket(bucket);
+                sendEmpty(exchange, 200);
+            } else if ("GET".equals(method)) {
+                list(exchange, bucket, query);
+            } else {
+                throw notImplemented(method);
+            }
+            return;
+        }
+
+        Headers headers = exchange.getRequestHeaders();
+        switch (method) {
+            case "PUT":
+                if (query.containsKey("uploadId")) {
+                    uploadPart(exchange, query);
+                } else if (headers.containsKey("x-amz-copy-source")) {
+                    copyObject(exchange, bucket, key);
+                } else {
+                    putObject(exchange, bucket, key);
+                }
+                break;
+            case "POST":
+                if (query.containsKey("uploads")) {
+                    initiateMultipartUpload(exchange, bucket, key);
+                } else if (query.containsKey("uploadId")) {
+                    completeMultipartUpload(exchange, bucket, key, query.get("uploadId"));
+                } else {
+                    throw notImplemented(method);
+                }
+                break;
+            case "GET":
+            case "HEAD":
+                getObject(exchange, bucket, key, "HEAD".equals(method));
+                break;
+            case "DELETE":
+                if (query.containsKey("uploadId")) {
+                    uploads.remove(query.get("uploadId"));
+                } else {
+                    bucket(bucket).remove(key);
+                }
+                sendEmpty(exchange, 204);
+                break;
+            default:
+                throw notImplemented(method);
+        }
+    }
+
+    private void putObject(HttpExchange exchange, String bucket, String key) throws IOException, InterruptedException {
+        NavigableMap<String, StoredObject> objects = bucket(bucket);
+        byte[] data = readBody(exchange);
+        StoredObject object = new StoredObject(data, md5Hex(data), contentType(exchange.getRequestHeaders()), userMetadata(exchange.getRequestHeaders()));
+        objects.put(key, object);
+        exchange.getResponseHeaders().set("ETag", quote(object.etag));
+        sendEmpty(exchange, 200);
+    }
+
+    private void getObject(HttpExchange exchange, String bucket, String key, boolean head) throws IOException, InterruptedException {
+        readBody(exchange);
+        StoredObject object = bucket(bucket).get(key);
+        if (object == null) {
+            throw new S3Error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        Headers responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.set("ETag", quote(object.etag));
+        responseHeaders.set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified.atZone(ZoneOffset.UTC)));
+        responseHeaders.set("Content-Type", object.contentType);
+        responseHeaders.set("Accept-Ranges", "bytes");
+        object.userMetadata.forEach((name, value) -> responseHeaders.set("x-amz-meta-" + name, value));
+
+        int start = 0;
+        int end = object.data.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            long[] bounds = parseRange(range, object.data.length);
+            start = (int) bounds[0];
+            end = (int) bounds[1];
+            status = 206;
+            responseHeaders.set("Content-Range", "bytes " + start + "-" + end + "/" + object.data.length);
+        }
+        int length = end - start + 1;
+        if (head) {
+            // HttpServer sends no body for HEAD, but keeps a Content-Length set directly
+            responseHeaders.set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        sendBody(exchange, status, object.data, start, length);
+    }
+
+    private void copyObject(HttpExchange exchange, String bucket, String key) throws IOException, InterruptedException {
+        readBody(exchange);
+        Headers headers = exchange.getRequestHeaders();
+        StoredObject source = copySource(headers.getFirst("x-amz-copy-source"));
+        NavigableMap<String, StoredObject> objects = bucket(bucket);
+        boolean replace = "REPLACE".equalsIgnoreCase(headers.getFirst("x-amz-metadata-directive"));
+        StoredObject copy = new StoredObject(source.data, source.etag,
+                replace ? contentType(headers) : source.contentType,
+                replace ? userMetadata(headers) : source.userMetadata);
+        objects.put(key, copy);
+        sendXml(exchange, 200, "<CopyObjectResult" + XMLNS + ">"
+                + element("LastModified", ISO_MILLIS.format(copy.lastModified))
+                + element("ETag", quote(copy.etag))
+                + "</CopyObjectResult>");
+    }
+
+    private void initiateMultipartUpload(HttpExchange exchange, String bucket, String key) throws IOException, InterruptedException {
+        readBody(exchange);
+        bucket(bucket);
+        Headers headers = exchange.getRequestHeaders();
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new MultipartUpload(bucket, key, contentType(headers), userMetadata(headers)));
+        sendXml(exchange, 200, "<InitiateMultipartUploadResult" + XMLNS + ">"
+                + element("Bucket", bucket)
+                + element("Key", key)
+                + element("UploadId", uploadId)
+                + "</InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query) throws IOException, InterruptedException {
+        MultipartUpload upload = upload(query.get("uploadId"));
+        int partNumber = Integer.parseInt(query.get("partNumber"));
+        Headers headers = exchange.getRequestHeaders();
+        String copySource = headers.getFirst("x-amz-copy-source");
+        if (copySource == null) {
+            byte[] data = readBody(exchange);
+            String etag = md5Hex(data);
+            upload.parts.put(partNumber, data);
+            exchange.getResponseHeaders().set("ETag", quote(etag));
+            sendEmpty(exchange, 200);
+            return;
+        }
+
+        readBody(exchange);
+        StoredObject source = copySource(copySource);
+        byte[] data = source.data;
+        String range = headers.getFirst("x-amz-copy-source-range");
+        if (range != null) {
+            long[] bounds = parseRange(range, source.data.length);
+            data = new byte[(int) (bounds[1] - bounds[0] + 1)];
+            System.arraycopy(source.data, (int) bounds[0], data, 0, data.length);
+        }
+        upload.parts.put(partNumber, data);
+        sendXml(exchange, 200, "<CopyPartResult" + XMLNS + ">"
+                + element("LastModified", ISO_MILLIS.format(Instant.now()))
+                + element("ETag", quote(md5Hex(data)))
+                + "</CopyPartResult>");
+    }
+
+    private void completeMultipartUpload(HttpExchange exchange, String bucket, String key, String uploadId) throws IOException, InterruptedException {
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        MultipartUpload upload = upload(uploadId);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        MessageDigest partDigests = md5();
+        int partCount = 0;
+        Matcher partNumbers = PART_NUMBER.matcher(body);
+        while (partNumbers.find()) {
+            byte[] part = upload.parts.get(Integer.parseInt(partNumbers.group(1)));
+            if (part == null) {
+                throw new S3Error(400, "InvalidPart", "Part " + partNumbers.group(1) + " was not uploaded.");
+            }
+            content.write(part, 0, part.length);
+            partDigests.update(md5().digest(part));
+            partCount++;
+        }
+        if (partCount == 0) {
+            throw new S3Error(400, "MalformedXML", "The request lists no parts.");
+        }
+        uploads.remove(uploadId);
+        StoredObject object = new StoredObject(content.toByteArray(), hex(partDigests.digest()) + "-" + partCount, upload.contentType, upload.userMetadata);
+        bucket(upload.bucket).put(upload.key, object);
+        sendXml(exchange, 200, "<CompleteMultipartUploadResult" + XMLNS + ">"
+                + element("Location", endpoint() + "/" + bucket + "/" + key)
+                + element("Bucket", bucket)
+                + element("Key", key)
+                + element("ETag", quote(object.etag))
+                + "</CompleteMultipartUploadResult>");
+    }
+
+    /**
+     * Answers ListObjects, or ListObjectsV2 when the request has {@code list-type=2}. Objects and common prefixes
+     * count alike against {@code max-keys}, and a listing continues after the last one returned.
+     */
+    private void list(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException, InterruptedException {
+        readBody(exchange);
+        NavigableMap<String, StoredObject> objects = bucket(bucket);
+        boolean v2 = "2".equals(query.get("list-type"));
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.getOrDefault("delimiter", "");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        boolean urlEncoded = "url".equals(query.get("encoding-type"));
+        String after;
+        if (v2) {
+            String token = query.get("continuation-token");
+            after = token != null ? new String(Base64.getDecoder().decode(token), StandardCharsets.UTF_8) : query.getOrDefault("start-after", "");
+        } else {
+            after = query.getOrDefault("marker", "");
+        }
+
+        StringBuilder contents = new StringBuilder();
+        Set<String> commonPrefixes = new LinkedHashSet<>();
+        String last = null;
+        int count = 0;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(prefix, true).entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            String commonPrefix = commonPrefix(key, prefix, delimiter);
+            String listed = commonPrefix != null ? commonPrefix : key;
+            if (listed.compareTo(after) <= 0 || commonPrefixes.contains(listed)) {
+                continue;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            count++;
+            last = listed;
+            if (commonPrefix != null) {
+                commonPrefixes.add(commonPrefix);
+                continue;
+            }
+            StoredObject object = entry.getValue();
+            contents.append("<Contents>")
+                    .append(element("Key", listingName(key, urlEncoded)))
+                    .append(element("LastModified", ISO_MILLIS.format(object.lastModified)))
+                    .append(element("ETag", quote(object.etag)))
+                    .append(element("Size", String.valueOf(object.data.length)))
+                    .append(element("StorageClass", "STANDARD"))
+                    .append("</Contents>");
+        }
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult" + XMLNS + ">")
+                .append(element("Name", bucket))
+                .append(element("Prefix", listingName(prefix, urlEncoded)))
+                .append(element("MaxKeys", String.valueOf(maxKeys)))
+                .append(element("IsTruncated", String.valueOf(truncated)));
+        if (!delimiter.isEmpty()) {
+            xml.append(element("Delimiter", listingName(delimiter, urlEncoded)));
+        }
+        if (urlEncoded) {
+            xml.append(element("EncodingType", "url"));
+        }
+        if (v2) {
+            xml.append(element("KeyCount", String.valueOf(count)));
+            if (query.containsKey("continuation-token")) {
+                xml.append(element("ContinuationToken", query.get("continuation-token")));
+            }
+            if (truncated) {
+                xml.append(element("NextContinuationToken", Base64.getEncoder().encodeToString(last.getBytes(StandardCharsets.UTF_8))));
+            }
+        } else {
+            xml.append(element("Marker", listingName(after, urlEncoded)));
+            if (truncated) {
+                xml.append(element("NextMarker", listingName(last, urlEncoded)));
+            }
+        }
+        xml.append(contents);
+        for (String commonPrefix : commonPrefixes) {
+            xml.append("<CommonPrefixes>").append(element("Prefix", listingName(commonPrefix, urlEncoded))).append("</CommonPrefixes>");
+        }
+        xml.append("</ListBucketResult>");
+        sendXml(exchange, 200, xml.toString());
+    }
+
+    private static String commonPrefix(String key, String prefix, String delimiter) {
+        if (delimiter.isEmpty()) {
+            return null;
+        }
+        int index = key.indexOf(delimiter, prefix.length());
+        return index < 0 ? null : key.substring(0, index + delimiter.length());
+    }
+
+    private NavigableMap<String, StoredObject> bucket(String bucket) {
+        NavigableMap<String, StoredObject> objects = buckets.get(bucket);
+        if (objects == null) {
+            throw new S3Error(404, "NoSuchBucket", "The specified bucket does not exist.");
+        }
+        return objects;
+    }
+
+    private MultipartUpload upload(String uploadId) {
+        MultipartUpload upload = uploadId == null ? null : uploads.get(uploadId);
+        if (upload == null) {
+            throw new S3Error(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+        return upload;
+    }
+
+    private StoredObject copySource(String copySource) {
+        String source = decode(copySource);
+        int version = source.indexOf("?versionId=");
+        source = version < 0 ? source : source.substring(0, version);
+        source = source.startsWith("/") ? source.substring(1) : source;
+        int slash = source.indexOf('/');
+        if (slash < 0) {
+            throw new S3Error(400, "InvalidArgument", "Copy source must be of the form bucket/key.");
+        }
+        StoredObject object = bucket(source.substring(0, slash)).get(source.substring(slash + 1));
+        if (object == null) {
+            throw new S3Error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        return object;
+    }
+
+    private static long[] parseRange(String range, long size) {
+        Matcher matcher = RANGE.matcher(range.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            throw new S3Error(416, "InvalidRange", "The requested range is not satisfiable.");
+        }
+        long start;
+        long end;
+        if (matcher.group(1).isEmpty()) {
+            start = Math.max(0, size - Long.parseLong(matcher.group(2)));
+            end = size - 1;
+        } else {
+            start = Long.parseLong(matcher.group(1));
+            end = matcher.group(2).isEmpty() ? size - 1 : Math.min(Long.parseLong(matcher.group(2)), size - 1);
+        }
+        if (start >= size || start > end) {
+            throw new S3Error(416, "InvalidRange", "The requested range is not satisfiable.");
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * Reads the whole request body through the upload throttle, decoding it when the SDK sent it
+     * {@code aws-chunked}.
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[IO_CHUNK_SIZE];
+        Throttle throttle = uploadThrottle;
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+                if (throttle != null) {
+                    throttle.acquire(read);
+                }
+                body.write(chunk, 0, read);
+            }
+        }
+        bytesReceived.add(body.size());
+        String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (contentSha256 != null && contentSha256.startsWith("STREAMING-")) {
+            return decodeAwsChunked(body.toByteArray());
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Decodes chunks of the form {@code <hex size>;chunk-signature=<signature>\r\n<data>\r\n}, up to the empty one.
+     */
+    static byte[] decodeAwsChunked(byte[] body) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (position < body.length) {
+            int lineEnd = indexOfCrLf(body, position);
+            if (lineEnd < 0) {
+                throw new S3Error(400, "IncompleteBody", "Chunk header is not terminated.");
+            }
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int semicolon = header.indexOf(';');
+            int size = Integer.parseInt((semicolon < 0 ? header : header.substring(0, semicolon)).trim(), 16);
+            position = lineEnd + 2;
+            if (size == 0) {
+                break;
+            }
+            if (position + size > body.length) {
+                throw new S3Error(400, "IncompleteBody", "Chunk is shorter than its declared size.");
+            }
+            data.write(body, position, size);
+            position += size + 2;
+        }
+        return data.toByteArray();
+    }
+
+    private static int indexOfCrLf(byte[] body, int from) {
+        for (int i = from; i + 1 < body.length; i++) {
+            if (body[i] == '\r' && body[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void sendBody(HttpExchange exchange, int status, byte[] data, int offset, int length) throws IOException, InterruptedException {
+        if (length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length);
+        Throttle throttle = downloadThrottle;
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int written = 0; written < length; ) {
+                int n = Math.min(IO_CHUNK_SIZE, length - written);
+                if (throttle != null) {
+                    throttle.acquire(n);
+                }
+                out.write(data, offset + written, n);
+                written += n;
+            }
+        }
+        bytesSent.add(length);
+    }
+
+    private void sendXml(HttpExchange exchange, int status, String xml) throws IOException, InterruptedException {
+        byte[] body = (XML_HEADER + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        sendBody(exchange, status, body, 0, body.length);
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        String requestId = UUID.randomUUID().toString();
+        exchange.getResponseHeaders().set("x-amz-request-id", requestId);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        try {
+            sendXml(exchange, status, "<Error>" + element("Code", code) + element("Message", message) + element("RequestId", requestId) + "</Error>");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String contentType(Headers headers) {
+        String contentType = headers.getFirst("Content-Type");
+        return contentType != null ? contentType : "binary/octet-stream";
+    }
+
+    private static Map<String, String> userMetadata(Headers headers) {
+        Map<String, String> metadata = new TreeMap<>();
+        headers.forEach((name, values) -> {
+            if (name.toLowerCase().startsWith("x-amz-meta-") && !values.isEmpty()) {
+                metadata.put(name.substring("x-amz-meta-".length()).toLowerCase(), values.get(0));
+            }
+        });
+        return metadata;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0) {
+                query.put(decode(parameter), "");
+            } else {
+                query.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+            }
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        try {
+            // the SDKs encode a literal + as %2B, so + is taken literally rather than as a space
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String listingName(String name, boolean urlEncoded) {
+        if (!urlEncoded) {
+            return name;
+        }
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String element(String name, String value) {
+        return "<" + name + ">" + escape(value) + "</" + name + ">";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&apos;");
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+
+    private static String md5Hex(byte[] data) {
+        return hex(md5().digest(data));
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static S3Error notImplemented(String method) {
+        return new S3Error(501, "NotImplemented", method + " is not supported by the fake S3 server.");
+    }
+
+    private static class StoredObject {
+        private final byte[] data;
+        private final String etag;
+        private final String contentType;
+        private final Map<String, String> userMetadata;
+        private final Instant lastModified = Instant.now();
+
+        StoredObject(byte[] data, String etag, String contentType, Map<String, String> userMetadata) {
+            this.data = data;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.userMetadata = userMetadata;
+        }
+    }
+
+    private static class MultipartUpload {
+        private final String bucket;
+        private final String key;
+        private final String contentType;
+        private final Map<String, String> userMetadata;
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+        MultipartUpload(String bucket, String key, String contentType, Map<String, String> userMetadata) {
+            this.bucket = bucket;
+            this.key = key;
+            this.contentType = contentType;
+            this.userMetadata = userMetadata;
+        }
+    }
+
+    /**
+     * Paces bytes to a rate: each caller waits until the bytes reserved before it, plus its own, would have
+     * passed at {@code bytesPerSecond}.
+     */
+    private static class Throttle {
+        private final long bytesPerSecond;
+        private long nextFreeNanos = System.nanoTime();
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(int bytes) throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFreeNanos = Math.max(now, nextFreeNanos) + TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+                waitNanos = nextFreeNanos - now;
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    private static class S3Error extends RuntimeException {
+        private final int status;
+        private final String code;
+
+        S3Error(int status, String code, String message) {
+            super(message);
+            this.status = status;
+            this.code = code;
+        }
+    }
+}
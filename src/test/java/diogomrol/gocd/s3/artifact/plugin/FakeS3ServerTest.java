@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.amazonaws.util.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+public class FakeS3ServerTest {
+    private static final String BUCKET = "artifacts";
+
+    private FakeS3Server server;
+    private AmazonS3 s3;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        server = FakeS3Server.start();
+        s3 = new S3ClientFactory().s3(server.storeConfig(BUCKET));
+        content = new byte[100_000];
+        new Random(7).nextBytes(content);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void shouldServeObjectsWholeAndInRanges() throws IOException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.addUserMetadata("sha256", "abc");
+        s3.putObject(new PutObjectRequest(BUCKET, "dir/a b+c.bin", new ByteArrayInputStream(content), metadata));
+
+        S3Object object = s3.getObject(BUCKET, "dir/a b+c.bin");
+        assertThat(IOUtils.toByteArray(object.getObjectContent())).isEqualTo(content);
+        assertThat(object.getObjectMetadata().getUserMetadata()).containsEntry("sha256", "abc");
+
+        S3Object range = s3.getObject(new GetObjectRequest(BUCKET, "dir/a b+c.bin").withRange(10, 19));
+        assertThat(IOUtils.toByteArray(range.getObjectContent())).isEqualTo(Arrays.copyOfRange(content, 10, 20));
+
+        ObjectMetadata head = s3.getObjectMetadata(BUCKET, "dir/a b+c.bin");
+        assertThat(head.getContentLength()).isEqualTo(content.length);
+        assertThat(head.getUserMetadata()).containsEntry("sha256", "abc");
+        assertThat(s3.doesObjectExist(BUCKET, "dir/missing")).isFalse();
+    }
+
+    @Test
+    public void shouldAnswerMissingKeysWithNoSuchKey() {
+        AmazonS3Exception e = catchThrowableOfType(() -> s3.getObject(BUCKET, "missing"), AmazonS3Exception.class);
+
+        assertThat(e.getStatusCode()).isEqualTo(404);
+        assertThat(e.getErrorCode()).isEqualTo("NoSuchKey");
+    }
+
+    @Test
+    public void shouldCompleteMultipartUploadsWithTheEtagOfS3() throws IOException {
+        InitiateMultipartUploadResult upload = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(BUCKET, "big"));
+        List<PartETag> parts = new ArrayList<>();
+        for (int part = 1; part <= 2; part++) {
+            parts.add(s3.uploadPart(new UploadPartRequest().withBucketName(BUCKET).withKey("big").withUploadId(upload.getUploadId())
+                    .withPartNumber(part).withInputStream(new ByteArrayInputStream(content, (part - 1) * 50_000, 50_000)).withPartSize(50_000))
+                    .getPartETag());
+        }
+
+        CompleteMultipartUploadResult result = s3.completeMultipartUpload(new CompleteMultipartUploadRequest(BUCKET, "big", upload.getUploadId(), parts));
+
+        assertThat(result.getETag()).endsWith("-2");
+        assertThat(IOUtils.toByteArray(s3.getObject(BUCKET, "big").getObjectContent())).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldCopyObjectsAndParts() {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.addUserMetadata("sha256", "abc");
+        s3.putObject(new PutObjectRequest(BUCKET, "source", new ByteArrayInputStream(content), metadata));
+
+        s3.copyObject(BUCKET, "source", BUCKET, "copy");
+        InitiateMultipartUploadResult upload = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(BUCKET, "part-copy"));
+        CopyPartResult part = s3.copyPart(new CopyPartRequest().withSourceBucketName(BUCKET).withSourceKey("source")
+                .withDestinationBucketName(BUCKET).withDestinationKey("part-copy").withUploadId(upload.getUploadId())
+                .withPartNumber(1).withFirstByte(0L).withLastByte(999L));
+        s3.completeMultipartUpload(new CompleteMultipartUploadRequest(BUCKET, "part-copy", upload.getUploadId(), Collections.singletonList(part.getPartETag())));
+
+        assertThat(server.getObject(BUCKET, "copy")).isEqualTo(content);
+        assertThat(s3.getObjectMetadata(BUCKET, "copy").getUserMetadata()).containsEntry("sha256", "abc");
+        assertThat(server.getObject(BUCKET, "part-copy")).isEqualTo(Arrays.copyOf(content, 1000));
+    }
+
+    @Test
+    public void shouldListObjectsInPages() {
+        for (String key : Arrays.asList("list/a", "list/b", "list/c", "list/sub/x", "list/sub/y", "list/tub/z", "other")) {
+            s3.putObject(BUCKET, key, key);
+        }
+
+        List<String> keys = new ArrayList<>();
+        ObjectListing listing = s3.listObjects(new ListObjectsRequest().withBucketName(BUCKET).withPrefix("list/").withMaxKeys(2));
+        listing.getObjectSummaries().forEach(summary -> keys.add(summary.getKey()));
+        while (listing.isTruncated()) {
+            listing = s3.listNextBatchOfObjects(listing);
+            listing.getObjectSummaries().forEach(summary -> keys.add(summary.getKey()));
+        }
+        assertThat(keys).containsExactly("list/a", "list/b", "list/c", "list/sub/x", "list/sub/y", "list/tub/z");
+
+        List<String> entries = new ArrayList<>();
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(BUCKET).withPrefix("list/").withDelimiter("/").withMaxKeys(2);
+        ListObjectsV2Result result;
+        do {
+            result = s3.listObjectsV2(request);
+            result.getObjectSummaries().forEach(summary -> entries.add(summary.getKey()));
+            entries.addAll(result.getCommonPrefixes());
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        assertThat(entries).containsExactly("list/a", "list/b", "list/c", "list/sub/", "list/tub/");
+    }
+
+    @Test
+    public void shouldFailInjectedRequestsWhichTheClientRetries() {
+        server.failNextRequests(2);
+
+        s3.putObject(BUCKET, "retried", "content");
+
+        assertThat(server.getInjectedErrorCount()).isEqualTo(2);
+        assertThat(s3.getObjectAsString(BUCKET, "retried")).isEqualTo("content");
+    }
+
+    @Test
+    public void shouldDelayRequestsByTheLatency() {
+        s3.putObject(BUCKET, "key", "content");
+        server.setLatencyMillis(100);
+
+        long start = System.nanoTime();
+        s3.getObjectAsString(BUCKET, "key");
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(100_000_000L);
+    }
+
+    @Test
+    public void shouldCapTheBandwidth() throws IOException {
+        s3.putObject(new PutObjectRequest(BUCKET, "key", new ByteArrayInputStream(content), new ObjectMetadata()));
+        server.setBytesPerSecond(500_000);
+
+        long start = System.nanoTime();
+        IOUtils.toByteArray(s3.getObject(BUCKET, "key").getObjectContent());
+
+        // the first 16 KB chunk goes out at once, the rest at the capped rate
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(150_000_000L);
+    }
+
+    @Test
+    public void shouldDecodeAwsChunkedBodies() {
+        byte[] body = ("5;chunk-signature=abc\r\nhello\r\n6;chunk-signature=def\r\n world\r\n0;chunk-signature=ghi\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(new String(FakeS3Server.decodeAwsChunked(body), StandardCharsets.US_ASCII)).isEqualTo("hello world");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.transfer.CircuitBreaker;
+import diogomrol.gocd.s3.artifact.plugin.transfer.S3Transport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class S3ClientFactoryTest {
+    private S3ClientFactory clientFactory;
+    private ArtifactStoreConfig storeConfig;
+
+    @Before
+    public void setUp() {
+        clientFactory = new S3ClientFactory();
+        storeConfig = new ArtifactStoreConfig("bucket", "eu-west-1", "key", "secret");
+        storeConfig.setTransport("async");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        clientFactory.asyncTransport(storeConfig).close();
+    }
+
+    @Test
+    public void shouldKeepOneTransportPerBucketWhileItsConfigIsUnchanged() {
+        S3Transport transport = clientFactory.asyncTransport(storeConfig);
+        ArtifactStoreConfig sameConfig = new ArtifactStoreConfig("bucket", "eu-west-1", "key", "secret");
+        sameConfig.setTransport("async");
+
+        assertThat(clientFactory.asyncTransport(sameConfig)).isSameAs(transport);
+    }
+
+    @Test
+    public void shouldReplaceTransportOfBucketWhenItsConfigChanges() {
+        S3Transport transport = clientFactory.asyncTransport(storeConfig);
+        storeConfig = new ArtifactStoreConfig("bucket", "eu-west-1", "rotated-key", "rotated-secret");
+        storeConfig.setTransport("async");
+
+        S3Transport replaced = clientFactory.asyncTransport(storeConfig);
+
+        assertThat(replaced).isNotSameAs(transport);
+        assertThat(clientFactory.asyncTransport(storeConfig)).isSameAs(replaced);
+    }
+
+    @Test
+    public void shouldKeepCircuitBreakerOfBucketUntilItsErrorRateChanges() {
+        storeConfig.setCircuitBreakerErrorRate("50");
+        CircuitBreaker circuitBreaker = clientFactory.circuitBreaker(storeConfig);
+        ArtifactStoreConfig rotated = new ArtifactStoreConfig("bucket", "eu-west-1", "rotated-key", "rotated-secret");
+        rotated.setCircuitBreakerErrorRate("50");
+
+        assertThat(clientFactory.circuitBreaker(rotated)).isSameAs(circuitBreaker);
+
+        rotated.setCircuitBreakerErrorRate("20");
+        assertThat(clientFactory.circuitBreaker(rotated)).isNotSameAs(circuitBreaker).isNotNull();
+
+        rotated.setCircuitBreakerErrorRate("");
+        assertThat(clientFactory.circuitBreaker(rotated)).isNull();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin;
+
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+import org.junit.rules.ExternalResource;
+
+/**
+ * The bucket integration tests publish to. When the {@code AWS_BUCKET} environment variable is set, that bucket in
+ * eu-west-1 with the {@code AWS_ACCESS_KEY} and {@code AWS_SECRET_ACCESS_KEY} credentials. Otherwise a bucket of a
+ * {@link FakeS3Server} started for each test, with the latency, bandwidth and error rate of the {@code fakeS3.*}
+ * system properties.
+ */
+public class S3TestBucket extends ExternalResource {
+    private static final String FAKE_BUCKET = "gocd-artifacts";
+
+    private FakeS3Server server;
+    private ArtifactStoreConfig storeConfig;
+
+    @Override
+    protected void before() throws Throwable {
+        String bucketName = System.getenv("AWS_BUCKET");
+        if (Util.isBlank(bucketName)) {
+            server = FakeS3Server.startFromSystemProperties();
+            storeConfig = server.storeConfig(FAKE_BUCKET);
+        } else {
+            storeConfig = new ArtifactStoreConfig(bucketName, "eu-west-1", System.getenv("AWS_ACCESS_KEY"), System.getenv("AWS_SECRET_ACCESS_KEY"));
+        }
+    }
+
+    @Override
+    protected void after() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public ArtifactStoreConfig storeConfig() {
+        return storeConfig;
+    }
+
+    public String name() {
+        return storeConfig.getS3bucket();
+    }
+
+    /**
+     * @return the fake server, or null when testing against AWS
+     */
+    public FakeS3Server fakeServer() {
+        return server;
+    }
+}
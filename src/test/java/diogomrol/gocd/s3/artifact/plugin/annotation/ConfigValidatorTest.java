@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.annotation;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.reflect.TypeToken;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigValidatorTest {
+    private final ConfigValidator validator = MetadataRegistry.of(ArtifactStoreConfig.class).validator();
+
+    @Test
+    public void shouldReportBlankFieldsWhichAreNotExcluded() {
+        ArtifactStoreConfig config = new ArtifactStoreConfig(" ", null, "key", "secret");
+
+        assertThat(validator.validateAllFieldsAsRequired(config, ImmutableSet.of("Region")))
+                .contains(new ValidationError("S3Bucket", "S3Bucket must not be blank."))
+                .doesNotContain(new ValidationError("Region", "Region must not be blank."))
+                .extracting(ValidationError::key).doesNotContain("VerifyChecksums", "AWSAccessKey");
+    }
+
+    @Test
+    public void shouldReportFieldsWhichMustBeFilledAltogether() {
+        ImmutableSet<String> awsAccess = ImmutableSet.of("AWSAccessKey", "AWSSecretAccessKey");
+
+        assertThat(validator.validateAllOrNoneRequired(new ArtifactStoreConfig("bucket", null, "key", "secret"), awsAccess)).isEmpty();
+        assertThat(validator.validateAllOrNoneRequired(new ArtifactStoreConfig("bucket", null, null, ""), awsAccess)).isEmpty();
+        assertThat(validator.validateAllOrNoneRequired(new ArtifactStoreConfig("bucket", null, "key", ""), awsAccess)).containsExactly(
+                new ValidationError("AWSAccessKey", "AWSAccessKey and AWSSecretAccessKey must be filled altogether, if required."),
+                new ValidationError("AWSSecretAccessKey", "AWSAccessKey and AWSSecretAccessKey must be filled altogether, if required."));
+    }
+
+    @Test
+    public void shouldCheckTheTypeOfFilledFields() {
+        ArtifactStoreConfig config = new ArtifactStoreConfig("bucket", null, null, null);
+        config.setDownloadBufferSize("1048576");
+        config.setSmallObjectSize("small");
+        config.setHedgePercentile(" ");
+
+        assertThat(validator.validateFieldTypes(config)).containsExactly(new ValidationError("SmallObjectSize", "SmallObjectSize must be positive decimal."));
+    }
+
+    @Test
+    public void shouldReportBlankFieldsAsTheGsonPropertiesDo() {
+        ArtifactStoreConfig config = new ArtifactStoreConfig("", "eu-west-1", "key", null);
+        Map<String, String> properties = Util.GSON.fromJson(config.toJSON(), new TypeToken<Map<String, String>>() {
+        }.getType());
+
+        assertThat(validator.validateAllFieldsAsRequired(config, Collections.emptySet()))
+                .containsExactlyElementsOf(properties.entrySet().stream()
+                        .filter(property -> StringUtils.isBlank(property.getValue()))
+                        .map(property -> new ValidationError(property.getKey(), property.getKey() + " must not be blank."))
+                        .collect(Collectors.toList()));
+    }
+}
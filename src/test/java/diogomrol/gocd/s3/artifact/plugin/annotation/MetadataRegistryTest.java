@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.annotation;
+
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
+import diogomrol.gocd.s3.artifact.plugin.model.S3FileArtifactPlanConfig;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetadataRegistryTest {
+    @Test
+    public void shouldScanClassOnlyOnce() {
+        MetadataRegistry.ClassMetadata first = MetadataRegistry.of(ArtifactStoreConfig.class);
+
+        assertThat(MetadataRegistry.of(ArtifactStoreConfig.class)).isSameAs(first);
+        assertThat(first.getMetadata()).extracting(ConfigMetadata::getKey).startsWith("S3Bucket", "Region");
+        assertThat(first.toJSON()).isEqualTo(Util.GSON.toJson(first.getMetadata()));
+    }
+
+    @Test
+    public void shouldBuildValidatorOfConfigsWhoseFieldsMatchTheirMetadata() {
+        assertThat(MetadataRegistry.of(ArtifactStoreConfig.class).validator()).isNotNull();
+        assertThat(MetadataRegistry.of(S3FileArtifactPlanConfig.class).validator()).isNotNull();
+    }
+
+    @Test
+    public void shouldLeaveClassesWithoutMatchingMetadataToGson() {
+        assertThat(MetadataRegistry.of(Unannotated.class).validator()).isNull();
+    }
+
+    private static class Unannotated {
+        @com.google.gson.annotations.Expose
+        private int count;
+    }
+}
@@ -5,14 +5,19 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
 import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactLayout;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactManifest;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.FetchArtifactConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.FetchArtifactRequest;
+import diogomrol.gocd.s3.artifact.plugin.transfer.Checksums;
+import diogomrol.gocd.s3.artifact.plugin.transfer.S3Transport;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -22,16 +27,21 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -50,6 +60,8 @@ public class FetchArtifactExecutorTest {
     private File agentWorkingDir;
     @Mock
     private AmazonS3 s3Client;
+    @Mock
+    private S3Transport transport;
 
     @Captor ArgumentCaptor<GetObjectRequest> getRequestCaptor;
     @Captor ArgumentCaptor<File> fileCaptor;
@@ -81,6 +93,170 @@ public class FetchArtifactExecutorTest {
         assertThat(fileCaptor.getValue().getAbsoluteFile()).isEqualTo(Paths.get(agentWorkingDir.toString(), "build.json").toFile());
     }
 
+    @Test
+    public void shouldResolveVariablesInFetchSubPathAndDestination() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "build/**/*");
+        metadata.put("Destination", "x");
+        metadata.put("IsFile", false);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata,
+                new FetchArtifactConfig("lib/${GO_PIPELINE_COUNTER}/app.jar", "out/${GO_STAGE_NAME}", true), agentWorkingDir.toString());
+        Map<String, String> environmentVariables = new HashMap<>();
+        environmentVariables.put("GO_PIPELINE_COUNTER", "12");
+        environmentVariables.put("GO_STAGE_NAME", "test");
+        fetchArtifactRequest.setEnvironmentVariables(environmentVariables);
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, times(1)).getObject(getRequestCaptor.capture(), fileCaptor.capture());
+        assertThat(getRequestCaptor.getValue().getKey()).isEqualTo("x/lib/12/app.jar");
+        assertThat(fileCaptor.getValue().getAbsoluteFile()).isEqualTo(Paths.get(agentWorkingDir.toString(), "out", "test", "app.jar").toFile());
+    }
+
+    @Test
+    public void shouldFailWhenFetchSubPathHasUnresolvedVariables() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "build/**/*");
+        metadata.put("Destination", "x");
+        metadata.put("IsFile", false);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata,
+                new FetchArtifactConfig("lib/${GO_PIPELINE_COUNTER}", "", false), agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(500);
+        assertThat(response.responseBody()).contains("Failed to resolve ${GO_PIPELINE_COUNTER} in SubPath: lib/${GO_PIPELINE_COUNTER}");
+        verify(s3Client, times(0)).listObjects(any(String.class), any(String.class));
+    }
+
+    @Test
+    public void shouldFetchSingleFileThroughChannelWriterWhenDownloadBufferSizeIsConfigured() throws IOException {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "build.json");
+        metadata.put("Destination", "x/y");
+        metadata.put("IsFile", true);
+        storeConfig.setDownloadBufferSize("16384");
+        byte[] content = "{\"content\":\"example artifact file\"}".getBytes();
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream(content));
+        s3Object.getObjectMetadata().setContentLength(content.length);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, times(1)).getObject(getRequestCaptor.capture());
+        verify(s3Client, times(0)).getObject(any(GetObjectRequest.class), any(File.class));
+        assertThat(getRequestCaptor.getValue().getKey()).isEqualTo("x/y/build.json");
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "build.json"))).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldFetchFileAgainWhenItDoesNotMatchManifestChecksum() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "build.json");
+        metadata.put("Destination", "x/y");
+        metadata.put("IsFile", true);
+        metadata.put("Manifest", "x/y/.gocd-artifact-manifest.json");
+        byte[] content = "{\"content\":\"example artifact file\"}".getBytes();
+        ArtifactManifest manifest = new ArtifactManifest();
+        manifest.add("build.json", content.length, Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(content)));
+        when(s3Client.getObjectAsString("testBucket", "x/y/.gocd-artifact-manifest.json")).thenReturn(manifest.toJSON());
+        byte[] corrupted = content.clone();
+        corrupted[3] ^= 1;
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object(corrupted), s3Object(content));
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, times(2)).getObject(getRequestCaptor.capture());
+        assertThat(getRequestCaptor.getAllValues()).extracting(GetObjectRequest::getKey).containsExactly("x/y/build.json", "x/y/build.json");
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "build.json"))).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldFailWhenFileKeepsMismatchingManifestChecksum() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "build.json");
+        metadata.put("Destination", "");
+        metadata.put("IsFile", true);
+        metadata.put("Manifest", ".gocd-artifact-manifest.json");
+        ArtifactManifest manifest = new ArtifactManifest();
+        manifest.add("build.json", 7, Checksums.toHex(MessageDigest.getInstance("SHA-256").digest("content".getBytes())));
+        when(s3Client.getObjectAsString("testBucket", ".gocd-artifact-manifest.json")).thenReturn(manifest.toJSON());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> s3Object("CONTENT".getBytes()));
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(500);
+        assertThat(response.responseBody()).contains("Checksum mismatch");
+        verify(s3Client, times(3)).getObject(any(GetObjectRequest.class));
+        assertThat(Paths.get(agentWorkingDir.toString(), "build.json").toFile()).doesNotExist();
+    }
+
+    @Test
+    public void shouldFetchContentAddressedBlobsListedInManifest() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "lib/*.jar");
+        metadata.put("Destination", "pipe/12");
+        metadata.put("IsFile", false);
+        metadata.put("Layout", "cas");
+        metadata.put("Manifest", "pipe/12/.gocd-artifact-manifest.json");
+        byte[] vendored = "vendored library".getBytes();
+        byte[] built = "freshly built library".getBytes();
+        String vendoredSha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(vendored));
+        String builtSha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(built));
+        ArtifactManifest manifest = new ArtifactManifest();
+        manifest.add("lib/vendor.jar", vendored.length, vendoredSha256);
+        manifest.add("lib/app.jar", built.length, builtSha256);
+        manifest.add("docs/readme.txt", built.length, builtSha256);
+        when(s3Client.getObjectAsString("testBucket", "pipe/12/.gocd-artifact-manifest.json")).thenReturn(manifest.toJSON());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            return s3Object(request.getKey().equals("cas/" + vendoredSha256) ? vendored : built);
+        });
+        fetchArtifactConfig = new FetchArtifactConfig("lib", "", false);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, times(2)).getObject(getRequestCaptor.capture());
+        assertThat(getRequestCaptor.getAllValues()).extracting(GetObjectRequest::getKey)
+                .containsExactlyInAnyOrder("cas/" + vendoredSha256, "cas/" + builtSha256);
+        verify(s3Client, times(0)).listObjects(any(String.class), any(String.class));
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "vendor.jar"))).isEqualTo(vendored);
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "app.jar"))).isEqualTo(built);
+    }
+
+    @Test
+    public void shouldFetchShardedFilesListedInManifest() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "lib/*.jar");
+        metadata.put("Destination", "pipe/12");
+        metadata.put("IsFile", false);
+        metadata.put("Layout", "sharded");
+        metadata.put("Manifest", "pipe/12/.gocd-artifact-manifest.json");
+        byte[] vendored = "vendored library".getBytes();
+        byte[] built = "freshly built library".getBytes();
+        ArtifactManifest manifest = new ArtifactManifest(ArtifactLayout.SHARDED);
+        manifest.add("lib/vendor.jar", vendored.length, Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(vendored)));
+        manifest.add("lib/app.jar", built.length, Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(built)));
+        when(s3Client.getObjectAsString("testBucket", "pipe/12/.gocd-artifact-manifest.json")).thenReturn(manifest.toJSON());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            return s3Object(request.getKey().equals("85/pipe/12/lib/vendor.jar") ? vendored : built);
+        });
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        final GoPluginApiResponse response = executor.execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, times(2)).getObject(getRequestCaptor.capture());
+        assertThat(getRequestCaptor.getAllValues()).extracting(GetObjectRequest::getKey)
+                .containsExactlyInAnyOrder("85/pipe/12/lib/vendor.jar", "d4/pipe/12/lib/app.jar");
+        verify(s3Client, times(0)).listObjects(any(String.class), any(String.class));
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "lib", "vendor.jar"))).isEqualTo(vendored);
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "lib", "app.jar"))).isEqualTo(built);
+    }
+
     @Test
     public void shouldFetchSingleFileWhenUploadedAtDestinationFolder() {
         Map<String, Object> metadata = new HashMap<>();
@@ -230,6 +406,84 @@ public class FetchArtifactExecutorTest {
                 .contains(Paths.get(agentWorkingDir.toString(), "local/build.json").toString(), Paths.get(agentWorkingDir.toString(), "local/test.json").toString());
     }
 
+    @Test
+    public void shouldStripDestinationWithRegexCharactersFromFetchedKeys() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "*.json");
+        metadata.put("Destination", "release+1.0(rc)");
+        metadata.put("IsFile", false);
+        fetchArtifactConfig = new FetchArtifactConfig(null, "local", false);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        ObjectListing objectLists = new ObjectListing();
+        objectLists.setBucketName("testBucket");
+        addObject(objectLists, "release+1.0(rc)/build.json");
+        when(s3Client.listObjects(any(String.class), any(String.class))).thenReturn(objectLists);
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client).getObject(getRequestCaptor.capture(), fileCaptor.capture());
+        assertThat(getRequestCaptor.getValue().getKey()).isEqualTo("release+1.0(rc)/build.json");
+        assertThat(fileCaptor.getValue().getAbsolutePath()).isEqualTo(Paths.get(agentWorkingDir.toString(), "local/build.json").toString());
+    }
+
+    @Test
+    public void shouldFetchDirectoryThroughAsyncTransportWhenConfigured() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "*.json");
+        metadata.put("Destination", "");
+        metadata.put("IsFile", false);
+        storeConfig.setTransport("async");
+        fetchArtifactConfig = new FetchArtifactConfig(null, "local", false);
+        when(s3ClientFactory.asyncTransport(storeConfig)).thenReturn(transport);
+        when(transport.download(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        ObjectListing objectLists = new ObjectListing();
+        objectLists.setBucketName("testBucket");
+        addObject(objectLists, "build.json");
+        addObject(objectLists, "test.json");
+        when(s3Client.listObjects(any(String.class))).thenReturn(objectLists);
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(transport).download("testBucket", "build.json", Paths.get(agentWorkingDir.toString(), "local/build.json").toFile(), null);
+        verify(transport).download("testBucket", "test.json", Paths.get(agentWorkingDir.toString(), "local/test.json").toFile(), null);
+        verify(s3Client, times(0)).getObject(any(GetObjectRequest.class), any(File.class));
+    }
+
+    @Test
+    public void shouldFetchSmallObjectsOfDirectoryIntoBuffersWhenSmallObjectSizeIsConfigured() throws IOException {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("Source", "*.json");
+        metadata.put("Destination", "");
+        metadata.put("IsFile", false);
+        storeConfig.setSmallObjectSize("1024");
+        fetchArtifactConfig = new FetchArtifactConfig(null, "local", false);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, agentWorkingDir.toString());
+        FetchArtifactExecutor executor = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, s3ClientFactory);
+        ObjectListing objectLists = new ObjectListing();
+        objectLists.setBucketName("testBucket");
+        addObject(objectLists, "build.json").setSize(20);
+        addObject(objectLists, "test.json").setSize(19);
+        addObject(objectLists, "large.json").setSize(2048);
+        when(s3Client.listObjects(any(String.class))).thenReturn(objectLists);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation ->
+                s3Object(("content of " + ((GetObjectRequest) invocation.getArgument(0)).getKey()).getBytes()));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, times(2)).getObject(any(GetObjectRequest.class));
+        verify(s3Client, times(1)).getObject(getRequestCaptor.capture(), fileCaptor.capture());
+        assertThat(getRequestCaptor.getValue().getKey()).isEqualTo("large.json");
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "local/build.json"))).isEqualTo("content of build.json".getBytes());
+        assertThat(Files.readAllBytes(Paths.get(agentWorkingDir.toString(), "local/test.json"))).isEqualTo("content of test.json".getBytes());
+        verify(consoleLogger).info(startsWith("Fetched small objects: 2 requests"));
+    }
+
     @Test
     public void shouldFetchDirectoryWhenMultipleWerePublishedAtCustomDirectory() {
         Map<String, Object> metadata = new HashMap<>();
@@ -332,9 +586,17 @@ public class FetchArtifactExecutorTest {
                 .contains(Paths.get(agentWorkingDir.toString(), "local/build.json").toString(), Paths.get(agentWorkingDir.toString(), "local/test.json").toString());
     }
 
-    private void addObject(ObjectListing objectLists, String key) {
+    private S3ObjectSummary addObject(ObjectListing objectLists, String key) {
         S3ObjectSummary buildJsonObj = new S3ObjectSummary();
         buildJsonObj.setKey(key);
         objectLists.getObjectSummaries().add(buildJsonObj);
+        return buildJsonObj;
+    }
+
+    private static S3Object s3Object(byte[] content) {
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream(content));
+        s3Object.getObjectMetadata().setContentLength(content.length);
+        return s3Object;
     }
 }
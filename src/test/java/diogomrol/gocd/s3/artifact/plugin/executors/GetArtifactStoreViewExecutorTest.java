@@ -41,6 +41,14 @@ public class GetArtifactStoreViewExecutorTest extends ViewTest {
         assertThat(responseHash).containsEntry("template", Util.readResource("/artifact-store.template.html"));
     }
 
+    @Test
+    public void shouldRenderTheTemplateOnlyOnce() {
+        GoPluginApiResponse first = getRequestExecutor().execute();
+        GoPluginApiResponse second = getRequestExecutor().execute();
+
+        assertThat(second.responseBody()).isSameAs(first.responseBody());
+    }
+
     @Override
     protected List<ConfigMetadata> getMetadataList() {
         return MetadataHelper.getMetadata(ArtifactStoreConfig.class);
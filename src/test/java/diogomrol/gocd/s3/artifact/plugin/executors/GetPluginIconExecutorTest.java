@@ -36,4 +36,12 @@ public class GetPluginIconExecutorTest {
         assertThat(hashMap.get("content_type")).isEqualTo("image/svg+xml");
         assertThat(Util.readResourceBytes("/plugin-icon.svg")).isEqualTo(Base64.getDecoder().decode(hashMap.get("data")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldEncodeIconOnlyOnce() {
+        GoPluginApiResponse first = new GetPluginIconExecutor().execute();
+        GoPluginApiResponse second = new GetPluginIconExecutor().execute();
+
+        assertThat(second.responseBody()).isSameAs(first.responseBody());
+    }
+}
@@ -11,6 +11,7 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
 import diogomrol.gocd.s3.artifact.plugin.IntegrationTests;
 import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
+import diogomrol.gocd.s3.artifact.plugin.S3TestBucket;
 import diogomrol.gocd.s3.artifact.plugin.model.*;
 import org.junit.Before;
 import org.junit.Rule;
@@ -37,6 +38,8 @@ import static org.mockito.MockitoAnnotations.initMocks;
 public class PublishAndFetchIntegrationTest {
     @Rule
     public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Rule
+    public S3TestBucket s3TestBucket = new S3TestBucket();
 
     @Mock
     private GoPluginApiRequest publishRequest;
@@ -57,8 +60,8 @@ public class PublishAndFetchIntegrationTest {
         s3ClientFactory = new S3ClientFactory();
         sourceWorkingDir = temporaryFolder.newFolder("go-agent-source");
         destinationWorkingDir = temporaryFolder.newFolder("go-agent-dest");
-        bucketName = System.getenv("AWS_BUCKET");
-        storeConfig = new ArtifactStoreConfig(bucketName, "eu-west-1", System.getenv("AWS_ACCESS_KEY"), System.getenv("AWS_SECRET_ACCESS_KEY"));
+        bucketName = s3TestBucket.name();
+        storeConfig = s3TestBucket.storeConfig();
         s3Client = s3ClientFactory.s3(storeConfig);
         ObjectListing listing = s3Client.listObjects( bucketName);
         List<S3ObjectSummary> summaries = listObjects(listing);
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.executors;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
+import diogomrol.gocd.s3.artifact.plugin.FakeS3Server;
+import diogomrol.gocd.s3.artifact.plugin.IntegrationTests;
+import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
+import diogomrol.gocd.s3.artifact.plugin.S3TestBucket;
+import diogomrol.gocd.s3.artifact.plugin.model.*;
+import diogomrol.gocd.s3.artifact.plugin.transfer.CircuitBreaker;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Publishes and fetches through a {@link FakeS3Server} with injected failures and a bandwidth cap. Skipped when
+ * running against AWS.
+ */
+@Category(IntegrationTests.class)
+public class PublishAndFetchUnderFaultsIntegrationTest {
+    private static final int FILE_COUNT = 40;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Rule
+    public S3TestBucket s3TestBucket = new S3TestBucket();
+
+    @Mock
+    private GoPluginApiRequest publishRequest;
+    @Mock
+    private ConsoleLogger consoleLogger;
+
+    private FakeS3Server server;
+    private S3ClientFactory clientFactory;
+    private ArtifactStoreConfig storeConfig;
+    private File sourceWorkingDir;
+    private File destinationWorkingDir;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+        server = s3TestBucket.fakeServer();
+        assumeTrue("Faults are only injected by the fake S3 server", server != null);
+        clientFactory = new S3ClientFactory();
+        storeConfig = s3TestBucket.storeConfig();
+        sourceWorkingDir = temporaryFolder.newFolder("go-agent-source");
+        destinationWorkingDir = temporaryFolder.newFolder("go-agent-dest");
+    }
+
+    @Test
+    public void shouldPublishAndFetchAllFilesWhenRequestsFailIntermittently() throws IOException {
+        writeFiles(FILE_COUNT, 16 * 1024);
+        server.failNextRequests(3);
+        server.setErrorRate(0.05);
+
+        Map<String, Object> metadata = publish();
+        fetch(metadata);
+
+        assertThat(server.getInjectedErrorCount()).isGreaterThanOrEqualTo(3);
+        assertFetchedFilesMatch(FILE_COUNT);
+    }
+
+    @Test
+    public void shouldPublishAndFetchAllFilesWithChecksumsWhenRequestsFailIntermittently() throws IOException {
+        storeConfig.setVerifyChecksums(true);
+        storeConfig.setLayout("cas");
+        writeFiles(FILE_COUNT, 16 * 1024);
+        server.failNextRequests(3);
+        server.setErrorRate(0.05);
+
+        Map<String, Object> metadata = publish();
+        fetch(metadata);
+
+        assertThat(server.getInjectedErrorCount()).isGreaterThanOrEqualTo(3);
+        assertFetchedFilesMatch(FILE_COUNT);
+    }
+
+    @Test
+    public void shouldTransferNoFasterThanTheBandwidthCap() throws IOException {
+        long bytesPerSecond = 4 * 1024 * 1024;
+        int fileSize = 256 * 1024;
+        long totalBytes = (long) FILE_COUNT / 4 * fileSize;
+        writeFiles(FILE_COUNT / 4, fileSize);
+        server.setLatencyMillis(10);
+        server.setBytesPerSecond(bytesPerSecond);
+
+        long start = System.nanoTime();
+        Map<String, Object> metadata = publish();
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        start = System.nanoTime();
+        fetch(metadata);
+        long fetchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.println(String.format("Published %d bytes in %d ms, fetched them in %d ms, %d requests",
+                totalBytes, publishMillis, fetchMillis, server.getRequestCount()));
+        long minimumMillis = totalBytes * 1000 / bytesPerSecond;
+        assertThat(publishMillis).isGreaterThanOrEqualTo(minimumMillis * 9 / 10);
+        assertThat(fetchMillis).isGreaterThanOrEqualTo(minimumMillis * 9 / 10);
+        assertFetchedFilesMatch(FILE_COUNT / 4);
+    }
+
+    @Test
+    public void shouldFailFastOnceCircuitBreakerOpens() throws IOException {
+        storeConfig.setCircuitBreakerErrorRate("50");
+        writeFiles(FILE_COUNT, 1024);
+        server.setErrorRate(1.0);
+
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "bin/**/*", Optional.of("DestinationFolder"));
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(new ArtifactStore(artifactPlan.getId(), storeConfig), artifactPlan, sourceWorkingDir.getAbsolutePath());
+        when(publishRequest.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+        GoPluginApiResponse response = new PublishArtifactExecutor(publishRequest, consoleLogger, clientFactory).execute();
+
+        assertThat(response.responseCode()).isEqualTo(500);
+        CircuitBreaker circuitBreaker = clientFactory.circuitBreaker(storeConfig);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        long requests = server.getRequestCount();
+
+        response = new PublishArtifactExecutor(publishRequest, consoleLogger, clientFactory).execute();
+
+        assertThat(response.responseCode()).isEqualTo(500);
+        assertThat(response.responseBody()).contains("is failing");
+        assertThat(server.getRequestCount()).isEqualTo(requests);
+        assertThat(circuitBreaker.getRejected()).isPositive();
+    }
+
+    private void writeFiles(int count, int size) throws IOException {
+        Random random = new Random(count);
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Path file = sourceWorkingDir.toPath().resolve(relativePath(i));
+            Files.createDirectories(file.getParent());
+            Files.write(file, content);
+        }
+    }
+
+    private static String relativePath(int i) {
+        return "bin/dir" + (i % 4) + "/file" + i + ".bin";
+    }
+
+    private Map<String, Object> publish() {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "bin/**/*", Optional.of("DestinationFolder"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, sourceWorkingDir.getAbsolutePath());
+        when(publishRequest.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(publishRequest, consoleLogger, clientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        Map<String, Object> responseHash = new Gson().fromJson(response.responseBody(), new TypeToken<Map<String, Object>>(){}.getType());
+        return (Map<String, Object>) responseHash.get("metadata");
+    }
+
+    private void fetch(Map<String, Object> metadata) {
+        FetchArtifactConfig fetchArtifactConfig = new FetchArtifactConfig("", "", false);
+        FetchArtifactRequest fetchArtifactRequest = new FetchArtifactRequest(storeConfig, metadata, fetchArtifactConfig, destinationWorkingDir.toString());
+        GoPluginApiResponse fetchResponse = new FetchArtifactExecutor(fetchArtifactRequest, consoleLogger, clientFactory).execute();
+        assertThat(fetchResponse.responseCode()).isEqualTo(200);
+    }
+
+    private void assertFetchedFilesMatch(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path fetched = destinationWorkingDir.toPath().resolve(relativePath(i));
+            assertThat(fetched).isRegularFile();
+            assertThat(Files.readAllBytes(fetched)).isEqualTo(Files.readAllBytes(sourceWorkingDir.toPath().resolve(relativePath(i))));
+        }
+    }
+}
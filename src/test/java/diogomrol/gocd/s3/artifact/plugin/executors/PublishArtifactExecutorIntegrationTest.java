@@ -10,11 +10,11 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
 import diogomrol.gocd.s3.artifact.plugin.IntegrationTests;
 import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
+import diogomrol.gocd.s3.artifact.plugin.S3TestBucket;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactPlan;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStore;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.PublishArtifactRequest;
-import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Rule;
@@ -47,6 +47,8 @@ import static org.mockito.MockitoAnnotations.initMocks;
 public class PublishArtifactExecutorIntegrationTest {
     @Rule
     public TemporaryFolder tmpFolder = new TemporaryFolder();
+    @Rule
+    public S3TestBucket s3TestBucket = new S3TestBucket();
 
     @Mock
     private GoPluginApiRequest request;
@@ -65,10 +67,8 @@ public class PublishArtifactExecutorIntegrationTest {
         initMocks(this);
         s3ClientFactory = new S3ClientFactory();
         agentWorkingDir = tmpFolder.newFolder("go-agent");
-        bucketName = System.getenv("AWS_BUCKET");
-        if(Util.isBlank(bucketName))
-            throw new RuntimeException("Must set AWS_BUCKET env var");
-        storeConfig = new ArtifactStoreConfig(bucketName, "eu-west-1", System.getenv("AWS_ACCESS_KEY"), System.getenv("AWS_SECRET_ACCESS_KEY"));
+        bucketName = s3TestBucket.name();
+        storeConfig = s3TestBucket.storeConfig();
         s3Client = s3ClientFactory.s3(storeConfig);
         ObjectListing listing = s3Client.listObjects( bucketName);
         List<S3ObjectSummary> summaries = listObjects(listing);
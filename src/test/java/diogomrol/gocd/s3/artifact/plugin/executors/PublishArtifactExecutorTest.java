@@ -17,15 +17,22 @@
 package diogomrol.gocd.s3.artifact.plugin.executors;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import diogomrol.gocd.s3.artifact.plugin.ConsoleLogger;
 import diogomrol.gocd.s3.artifact.plugin.S3ClientFactory;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactLayout;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactManifest;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactPlan;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStore;
 import diogomrol.gocd.s3.artifact.plugin.model.ArtifactStoreConfig;
 import diogomrol.gocd.s3.artifact.plugin.model.PublishArtifactRequest;
+import diogomrol.gocd.s3.artifact.plugin.transfer.Checksums;
 import com.amazonaws.SdkClientException;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
@@ -41,16 +48,22 @@ import org.mockito.Mock;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -358,4 +371,218 @@ public class PublishArtifactExecutorTest {
                 .extracting(PutObjectRequest::getKey)
                 .contains("bin/build.json", "bin/test.json");
     }
+
+    @Test
+    public void shouldRecordChecksumsInObjectMetadataAndManifestWhenVerifyChecksumsIsEnabled() throws Exception {
+        storeConfig.setVerifyChecksums(true);
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "build.json", Optional.of("DestinationFolder"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+
+        byte[] content = "{\"content\":\"example artifact file\"}".getBytes();
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "build.json"), content);
+        String sha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, s3ClientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        String expectedJSON = "{" +
+                "\"metadata\": {" +
+                "\"Source\": \"build.json\"," +
+                "\"Destination\": \"DestinationFolder\"," +
+                "\"IsFile\": true," +
+                "\"Manifest\": \"DestinationFolder/.gocd-artifact-manifest-id.json\"" +
+                "}}";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.STRICT);
+
+        verify(s3Client, times(2)).putObject(requestCaptor.capture());
+        PutObjectRequest fileRequest = requestCaptor.getAllValues().get(0);
+        assertThat(fileRequest.getKey()).isEqualTo("DestinationFolder/build.json");
+        assertThat(fileRequest.getMetadata().getContentLength()).isEqualTo(content.length);
+        assertThat(fileRequest.getMetadata().getContentMD5()).isEqualTo(Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content)));
+        assertThat(fileRequest.getMetadata().getUserMetadata()).containsEntry("sha256", sha256);
+
+        PutObjectRequest manifestRequest = requestCaptor.getAllValues().get(1);
+        assertThat(manifestRequest.getKey()).isEqualTo("DestinationFolder/.gocd-artifact-manifest-id.json");
+        ArtifactManifest manifest = ArtifactManifest.fromJSON(new String(readAll(manifestRequest.getInputStream()), StandardCharsets.UTF_8));
+        assertThat(manifest.get("build.json").getSha256()).isEqualTo(sha256);
+        assertThat(manifest.get("build.json").getSize()).isEqualTo(content.length);
+    }
+
+    @Test
+    public void shouldStoreFilesUnderShardsAndRecordThemInManifest() throws Exception {
+        storeConfig.setLayout("sharded");
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "lib/*.jar", Optional.of("pipe/12"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+
+        Files.createDirectories(Paths.get(agentWorkingDir.getAbsolutePath(), "lib"));
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "lib", "vendor.jar"), "vendored library".getBytes());
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "lib", "app.jar"), "freshly built library".getBytes());
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, s3ClientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        String expectedJSON = "{" +
+                "\"metadata\": {" +
+                "\"Source\": \"lib/*.jar\"," +
+                "\"Destination\": \"pipe/12\"," +
+                "\"IsFile\": false," +
+                "\"Layout\": \"sharded\"," +
+                "\"Manifest\": \"pipe/12/.gocd-artifact-manifest-id.json\"" +
+                "}}";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.STRICT);
+
+        verify(s3Client, times(3)).putObject(requestCaptor.capture());
+        assertThat(requestCaptor.getAllValues()).extracting(PutObjectRequest::getKey)
+                .containsExactlyInAnyOrder("d4/pipe/12/lib/app.jar", "85/pipe/12/lib/vendor.jar", "pipe/12/.gocd-artifact-manifest-id.json");
+        PutObjectRequest manifestRequest = requestCaptor.getAllValues().get(2);
+        ArtifactManifest manifest = ArtifactManifest.fromJSON(new String(readAll(manifestRequest.getInputStream()), StandardCharsets.UTF_8));
+        assertThat(manifest.getLayout()).isEqualTo(ArtifactLayout.SHARDED);
+        assertThat(manifest.getFiles()).containsOnlyKeys("lib/vendor.jar", "lib/app.jar");
+    }
+
+    @Test
+    public void shouldStoreFilesAsContentAddressedBlobsAndSkipExistingOnes() throws Exception {
+        storeConfig.setLayout("cas");
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "lib/*.jar", Optional.of("pipe/12"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+
+        Files.createDirectories(Paths.get(agentWorkingDir.getAbsolutePath(), "lib"));
+        byte[] vendored = "vendored library".getBytes();
+        byte[] built = "freshly built library".getBytes();
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "lib", "vendor.jar"), vendored);
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "lib", "app.jar"), built);
+        String vendoredSha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(vendored));
+        String builtSha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(built));
+        when(s3Client.doesObjectExist("test", "cas/" + vendoredSha256)).thenReturn(true);
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, s3ClientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        String expectedJSON = "{" +
+                "\"metadata\": {" +
+                "\"Source\": \"lib/*.jar\"," +
+                "\"Destination\": \"pipe/12\"," +
+                "\"IsFile\": false," +
+                "\"Layout\": \"cas\"," +
+                "\"Manifest\": \"pipe/12/.gocd-artifact-manifest-id.json\"" +
+                "}}";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.STRICT);
+
+        verify(s3Client, times(2)).putObject(requestCaptor.capture());
+        assertThat(requestCaptor.getAllValues()).extracting(PutObjectRequest::getKey)
+                .containsExactly("cas/" + builtSha256, "pipe/12/.gocd-artifact-manifest-id.json");
+        ArtifactManifest manifest = ArtifactManifest.fromJSON(new String(readAll(requestCaptor.getAllValues().get(1).getInputStream()), StandardCharsets.UTF_8));
+        assertThat(manifest.getFiles()).containsOnlyKeys("lib/vendor.jar", "lib/app.jar");
+        assertThat(manifest.get("lib/vendor.jar").getSha256()).isEqualTo(vendoredSha256);
+        assertThat(manifest.get("lib/app.jar").getSha256()).isEqualTo(builtSha256);
+    }
+
+    @Test
+    public void shouldCopyFilesUnchangedSinceBaselineAndUploadChangedOnes() throws Exception {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "lib/*.jar", Optional.of("pipe/12"), Optional.of("pipe/11"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+
+        Files.createDirectories(Paths.get(agentWorkingDir.getAbsolutePath(), "lib"));
+        byte[] vendored = "vendored library".getBytes();
+        byte[] built = "freshly built library".getBytes();
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "lib", "vendor.jar"), vendored);
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "lib", "app.jar"), built);
+        ArtifactManifest baseline = new ArtifactManifest();
+        baseline.add("lib/vendor.jar", vendored.length, Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(vendored)));
+        baseline.add("lib/app.jar", 3, Checksums.toHex(MessageDigest.getInstance("SHA-256").digest("old".getBytes())));
+        when(s3Client.getObjectAsString("test", "pipe/11/.gocd-artifact-manifest-id.json")).thenReturn(baseline.toJSON());
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, s3ClientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+
+        ArgumentCaptor<CopyObjectRequest> copyCaptor = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client, times(1)).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getValue().getSourceKey()).isEqualTo("pipe/11/lib/vendor.jar");
+        assertThat(copyCaptor.getValue().getDestinationKey()).isEqualTo("pipe/12/lib/vendor.jar");
+        verify(s3Client, times(2)).putObject(requestCaptor.capture());
+        assertThat(requestCaptor.getAllValues()).extracting(PutObjectRequest::getKey)
+                .containsExactly("pipe/12/lib/app.jar", "pipe/12/.gocd-artifact-manifest-id.json");
+        ArtifactManifest manifest = ArtifactManifest.fromJSON(new String(readAll(requestCaptor.getAllValues().get(1).getInputStream()), StandardCharsets.UTF_8));
+        assertThat(manifest.getFiles()).containsOnlyKeys("lib/vendor.jar", "lib/app.jar");
+    }
+
+    @Test
+    public void shouldUploadAllFilesWhenBaselineHasNoManifest() throws Exception {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "build.json", Optional.of("pipe/12"), Optional.of("pipe/11"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+        Files.write(Paths.get(agentWorkingDir.getAbsolutePath(), "build.json"), "{\"content\":\"example artifact file\"}".getBytes());
+        AmazonS3Exception notFound = new AmazonS3Exception("The specified key does not exist.");
+        notFound.setStatusCode(404);
+        when(s3Client.getObjectAsString("test", "pipe/11/.gocd-artifact-manifest-id.json")).thenThrow(notFound);
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, s3ClientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client, times(2)).putObject(requestCaptor.capture());
+        assertThat(requestCaptor.getAllValues()).extracting(PutObjectRequest::getKey)
+                .containsExactly("pipe/12/build.json", "pipe/12/.gocd-artifact-manifest-id.json");
+    }
+
+    @Test
+    public void shouldPromoteArtifactFromAnotherBucketWithServerSideCopies() throws Exception {
+        final ArtifactPlan artifactPlan = new ArtifactPlan("id", "storeId", "s3://build-bucket/${GO_DEPENDENCY_LOCATOR_BUILD}/job", Optional.of("release/${GO_PIPELINE_COUNTER}"));
+        final ArtifactStore artifactStore = new ArtifactStore(artifactPlan.getId(), storeConfig);
+        final PublishArtifactRequest publishArtifactRequest = new PublishArtifactRequest(artifactStore, artifactPlan, agentWorkingDir.getAbsolutePath());
+        Map<String, String> environmentVariables = new HashMap<>();
+        environmentVariables.put("GO_DEPENDENCY_LOCATOR_BUILD", "build/7/test/1");
+        environmentVariables.put("GO_PIPELINE_COUNTER", "3");
+        publishArtifactRequest.setEnvironmentVariables(environmentVariables);
+        AmazonS3Exception notFound = new AmazonS3Exception("The specified key does not exist.");
+        notFound.setStatusCode(404);
+        when(s3Client.getObjectAsString("build-bucket", "build/7/test/1/job/.gocd-artifact-manifest-id.json")).thenThrow(notFound);
+        ObjectListing listing = new ObjectListing();
+        for (String key : Arrays.asList("build/7/test/1/job/app.jar", "build/7/test/1/job/docs/index.html")) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setKey(key);
+            summary.setSize(1024);
+            listing.getObjectSummaries().add(summary);
+        }
+        when(s3Client.listObjects("build-bucket", "build/7/test/1/job")).thenReturn(listing);
+
+        when(request.requestBody()).thenReturn(publishArtifactRequest.toJSON());
+
+        final GoPluginApiResponse response = new PublishArtifactExecutor(request, consoleLogger, s3ClientFactory).execute();
+        assertThat(response.responseCode()).isEqualTo(200);
+        String expectedJSON = "{" +
+                "\"metadata\": {" +
+                "\"Source\": \"s3://build-bucket/build/7/test/1/job\"," +
+                "\"Destination\": \"release/3\"," +
+                "\"IsFile\": false" +
+                "}}";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.STRICT);
+
+        ArgumentCaptor<CopyObjectRequest> copyCaptor = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client, times(2)).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getAllValues()).extracting(CopyObjectRequest::getDestinationKey)
+                .containsExactlyInAnyOrder("release/3/app.jar", "release/3/docs/index.html");
+        assertThat(copyCaptor.getAllValues()).extracting(CopyObjectRequest::getDestinationBucketName).containsOnly("test");
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
 }
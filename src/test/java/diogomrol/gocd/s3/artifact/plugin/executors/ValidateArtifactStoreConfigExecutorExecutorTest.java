@@ -18,6 +18,7 @@ package diogomrol.gocd.s3.artifact.plugin.executors;
 
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import diogomrol.gocd.s3.artifact.plugin.AccelerationProbe;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
@@ -26,12 +27,16 @@ import org.mockito.Mock;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 public class ValidateArtifactStoreConfigExecutorExecutorTest {
     @Mock
     private GoPluginApiRequest request;
+    @Mock
+    private AccelerationProbe accelerationProbe;
 
     @Before
     public void setUp() {
@@ -130,4 +135,267 @@ public class ValidateArtifactStoreConfigExecutorExecutorTest {
         String expectedJSON = "[]";
         JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
     }
+
+    @Test
+    public void shouldRejectNegativeDownloadBufferSize() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "http://localhost/index")
+                .put("Region", "us-west-1")
+                .put("DownloadBufferSize", "-1")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"DownloadBufferSize\",\n" +
+                "    \"message\": \"DownloadBufferSize must be positive decimal.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectUnknownLayout() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "http://localhost/index")
+                .put("Region", "us-west-1")
+                .put("Layout", "flat")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"Layout\",\n" +
+                "    \"message\": \"Layout must be one of `prefix`, `cas` or `sharded`.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectUnknownTransport() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "http://localhost/index")
+                .put("Region", "us-west-1")
+                .put("Transport", "http2")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"Transport\",\n" +
+                "    \"message\": \"Transport must be one of `blocking` or `async`.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectEndpointWhichIsNotAnHttpUrl() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "http://localhost/index")
+                .put("Region", "us-west-1")
+                .put("Endpoint", "minio.local:9000")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"Endpoint\",\n" +
+                "    \"message\": \"Endpoint must be an `http` or `https` URL.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectSigningRegionWithoutEndpoint() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "http://localhost/index")
+                .put("Region", "us-west-1")
+                .put("SigningRegion", "us-east-1")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"SigningRegion\",\n" +
+                "    \"message\": \"SigningRegion can only be set together with Endpoint.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldAcceptCustomEndpointWithPathStyleAccess() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "us-west-1")
+                .put("Endpoint", "http://minio.local:9000")
+                .put("PathStyleAccess", "true")
+                .put("SigningRegion", "us-east-1")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        JSONAssert.assertEquals("[]", response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectTransferAccelerationAndDualStackWithEndpoint() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "us-west-1")
+                .put("Endpoint", "http://minio.local:9000")
+                .put("TransferAcceleration", "true")
+                .put("DualStack", "true")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request, accelerationProbe).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"TransferAcceleration\",\n" +
+                "    \"message\": \"TransferAcceleration cannot be used together with Endpoint.\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"key\": \"DualStack\",\n" +
+                "    \"message\": \"DualStack cannot be used together with Endpoint.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+        verifyZeroInteractions(accelerationProbe);
+    }
+
+    @Test
+    public void shouldRejectTransferAccelerationWhenNotEnabledOnBucket() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("TransferAcceleration", "true")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+        when(accelerationProbe.probe(any())).thenReturn(AccelerationProbe.Result.notEnabled("S3 Transfer Acceleration is not configured on this bucket"));
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request, accelerationProbe).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"TransferAcceleration\",\n" +
+                "    \"message\": \"Transfer Acceleration is not enabled on bucket `artifacts`: S3 Transfer Acceleration is not configured on this bucket\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldAcceptTransferAccelerationWhenProbeMeasuredBothEndpoints() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("TransferAcceleration", "true")
+                .put("DualStack", "true")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+        when(accelerationProbe.probe(any())).thenReturn(AccelerationProbe.Result.measured(120_000_000L, 340_000_000L));
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request, accelerationProbe).execute();
+
+        JSONAssert.assertEquals("[]", response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldShowProbeResultWithoutEnablingTransferAcceleration() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("ProbeTransferAcceleration", "true")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+        when(accelerationProbe.probe(any())).thenReturn(AccelerationProbe.Result.measured(120_000_000L, 340_000_000L));
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request, accelerationProbe).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"ProbeTransferAcceleration\",\n" +
+                "    \"message\": \"Transfer Acceleration probe of bucket `artifacts` from the GoCD server: accelerated 120 ms, standard 340 ms per request. Clear ProbeTransferAcceleration to save the store.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectHedgePercentileOutOfRange() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("HedgePercentile", "99.99")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        String expectedJSON = "[\n" +
+                "  {\n" +
+                "    \"key\": \"HedgePercentile\",\n" +
+                "    \"message\": \"HedgePercentile must be between 50 and 99.9.\"\n" +
+                "  }\n" +
+                "]";
+        JSONAssert.assertEquals(expectedJSON, response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectInvalidRoleArnAndExternalIdWithoutRole() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("RoleArn", "gocd-artifacts")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        JSONAssert.assertEquals("[{\"key\": \"RoleArn\", \"message\": \"RoleArn must be the ARN of an IAM role, e.g. `arn:aws:iam::123456789012:role/gocd-artifacts`.\"}]",
+                response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+
+        requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("ExternalId", "external")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        JSONAssert.assertEquals("[{\"key\": \"ExternalId\", \"message\": \"ExternalId can only be set together with RoleArn.\"}]",
+                response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
+
+    @Test
+    public void shouldRejectCircuitBreakerErrorRateOutOfRange() throws Exception {
+        String requestBody = new JSONObject()
+                .put("S3Bucket", "artifacts")
+                .put("Region", "eu-west-1")
+                .put("CircuitBreakerErrorRate", "0")
+                .toString();
+        when(request.requestBody()).thenReturn(requestBody);
+
+        final GoPluginApiResponse response = new ValidateArtifactStoreConfigExecutor(request).execute();
+
+        JSONAssert.assertEquals("[{\"key\": \"CircuitBreakerErrorRate\", \"message\": \"CircuitBreakerErrorRate must be between 1 and 100.\"}]",
+                response.responseBody(), JSONCompareMode.NON_EXTENSIBLE);
+    }
 }
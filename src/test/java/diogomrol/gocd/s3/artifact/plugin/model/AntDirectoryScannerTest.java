@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -67,6 +68,27 @@ public class AntDirectoryScannerTest {
                 .contains(test);
     }
 
+    @Test
+    public void shouldReportEachMatchOnceWhileScanning() throws IOException {
+        File test = createFile("out/test.bin");
+        File other = createFile("out/other.bin");
+        List<File> reported = new ArrayList<>();
+        scanner.scan(workingDir, "out/test.bin,out", reported::add);
+        assertThat(reported)
+                .hasSize(2)
+                .contains(test, other);
+    }
+
+    @Test
+    public void shouldReportFilesOfSelectedBaseDirectoryOnceByRelativePath() throws IOException {
+        File top = createFile("build.json");
+        File nested = createFile("out/test.bin");
+        List<File> reported = new ArrayList<>();
+        scanner.scan(workingDir, "**", reported::add);
+        assertThat(reported)
+                .hasSize(2)
+                .contains(top, nested);
+    }
 
     private File createFile(String path) throws IOException {
         Path filepath = Paths.get(workingDir.toPath().toAbsolutePath().toString(), path);
@@ -1,13 +1,17 @@
 package diogomrol.gocd.s3.artifact.plugin.model;
 
+import com.google.gson.JsonParseException;
 import org.json.JSONException;
 import org.json.JSONObject;
+import diogomrol.gocd.s3.artifact.plugin.utils.Util;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.fail;
 
@@ -28,4 +32,39 @@ public class ArtifactPlanConfigTypeAdapterTest {
         }
     }
 
+    @Test
+    public void shouldDeserializeBaselineOfBuildFilePlanConfig() throws JSONException {
+        String json = new JSONObject()
+                .put("Source", "info.json")
+                .put("Destination", "${GO_ARTIFACT_LOCATOR}")
+                .put("Baseline", "pipe/11")
+                .toString();
+
+        ArtifactPlanConfig artifactPlanConfig = ArtifactPlanConfig.fromJSON(json);
+
+        assertThat(artifactPlanConfig).isEqualTo(new S3FileArtifactPlanConfig("info.json", Optional.of("${GO_ARTIFACT_LOCATOR}"), Optional.of("pipe/11")));
+        assertThat(ArtifactPlanConfig.fromJSON(new JSONObject().put("Source", "info.json").toString()).getBaseline()).isNull();
+    }
+
+    @Test
+    public void shouldRejectConfigWithoutSource() throws JSONException {
+        List<String> inputs = Arrays.asList(
+                new JSONObject().put("Destination", "out").toString(),
+                new JSONObject().put("Source", "  ").toString(),
+                new JSONObject().put("Source", new JSONObject().put("nested", "info.json")).toString());
+
+        for (String json : inputs) {
+            assertThatThrownBy(() -> ArtifactPlanConfig.fromJSON(json))
+                    .isInstanceOf(JsonParseException.class)
+                    .hasMessage("Ambiguous or unknown json. `Source` property must be specified.");
+        }
+    }
+
+    @Test
+    public void shouldSerializeBuildFilePlanConfig() {
+        ArtifactPlanConfig artifactPlanConfig = new S3FileArtifactPlanConfig("info.json", Optional.empty(), Optional.of("pipe/11"));
+
+        assertThat(Util.GSON.toJson(artifactPlanConfig, ArtifactPlanConfig.class))
+                .isEqualTo("{\"Source\":\"info.json\",\"Destination\":\"\",\"Baseline\":\"pipe/11\"}");
+    }
 }
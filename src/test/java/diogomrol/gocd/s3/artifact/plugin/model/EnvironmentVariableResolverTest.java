@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 
 public class EnvironmentVariableResolverTest {
@@ -64,4 +65,27 @@ public class EnvironmentVariableResolverTest {
         assertThat(exceptionCaught).isTrue();
     }
 
+    @Test
+    public void shouldReportEachUnresolvedVariable() {
+        EnvironmentVariableResolver environmentVariableResolver = new EnvironmentVariableResolver("${GO_PIPELINE_NAME}/${GO_PIPELINE_COUNTER}-${GO_STAGE_COUNTER}", "Destination");
+        Map<String, String> environmentVariables = ImmutableMap.of("GO_PIPELINE_COUNTER", "112");
+
+        try {
+            environmentVariableResolver.resolve(environmentVariables);
+            fail("Expected unresolved variables");
+        } catch (UnresolvedPropertyException e) {
+            assertThat(e.getUnresolvedVariables()).containsExactly("GO_PIPELINE_NAME", "GO_STAGE_COUNTER");
+            assertThat(e.getMessage()).isEqualTo("Failed to resolve ${GO_PIPELINE_NAME}, ${GO_STAGE_COUNTER} in Destination: ${GO_PIPELINE_NAME}/112-${GO_STAGE_COUNTER}");
+        }
+    }
+
+    @Test
+    public void shouldResolveDefaultValuesAndEscapedVariables() throws UnresolvedPropertyException {
+        EnvironmentVariableResolver environmentVariableResolver = new EnvironmentVariableResolver("${GO_PIPELINE_COUNTER:-0}/${BRANCH:-main}/$${GO_PIPELINE_COUNTER}", "tag");
+        Map<String, String> environmentVariables = ImmutableMap.of("GO_PIPELINE_COUNTER", "112");
+
+        String tag = environmentVariableResolver.resolve(environmentVariables);
+
+        assertThat(tag).isEqualTo("112/main/${GO_PIPELINE_COUNTER}");
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FetchArtifactRequestTest {
+
+    @Test
+    public void shouldDeserializeRequestBody() {
+        final String json = "{\n" +
+                "  \"store_configuration\": {\n" +
+                "    \"S3Bucket\": \"s3-url\",\n" +
+                "    \"Region\": \"us-west-1\",\n" +
+                "    \"AWSAccessKey\": \"aws-access-key\",\n" +
+                "    \"AWSSecretAccessKey\": \"aws-secret-access-key\"\n" +
+                "  },\n" +
+                "  \"fetch_artifact_configuration\": {\n" +
+                "    \"SubPath\": \"lib\",\n" +
+                "    \"IsFile\": true,\n" +
+                "    \"Destination\": \"out\"\n" +
+                "  },\n" +
+                "  \"artifact_metadata\": {\n" +
+                "    \"Source\": \"bin/*\",\n" +
+                "    \"IsFile\": false,\n" +
+                "    \"Size\": 12,\n" +
+                "    \"Files\": [\"a\", {\"b\": null}]\n" +
+                "  },\n" +
+                "  \"unknown\": {\"nested\": [1, 2]},\n" +
+                "  \"agent_working_directory\": \"/temp\"\n" +
+                "}";
+
+        final FetchArtifactRequest fetchArtifactRequest = FetchArtifactRequest.fromJSON(json);
+
+        assertThat(fetchArtifactRequest.getAgentWorkingDir()).isEqualTo("/temp");
+        assertThat(fetchArtifactRequest.getArtifactStoreConfig())
+                .isEqualTo(new ArtifactStoreConfig("s3-url", "us-west-1", "aws-access-key", "aws-secret-access-key"));
+        assertThat(fetchArtifactRequest.getFetchArtifactConfig().getSubPath()).isEqualTo("lib");
+        assertThat(fetchArtifactRequest.getFetchArtifactConfig().getIsFile()).isTrue();
+        assertThat(fetchArtifactRequest.getFetchArtifactConfig().getDestination()).isEqualTo("out");
+        assertThat(fetchArtifactRequest.getMetadata())
+                .containsEntry("Source", "bin/*")
+                .containsEntry("IsFile", false)
+                .containsEntry("Size", 12.0)
+                .containsEntry("Files", Arrays.asList("a", Collections.singletonMap("b", null)));
+    }
+
+    @Test
+    public void shouldSerializeToTheJsonItIsDeserializedFrom() {
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("Source", "bin/*");
+        metadata.put("IsFile", true);
+        final FetchArtifactRequest request = new FetchArtifactRequest(new ArtifactStoreConfig("s3-url", "us-west-1", "key", "secret"),
+                metadata, new FetchArtifactConfig("lib", "out", true), "/temp");
+
+        final FetchArtifactRequest deserialized = FetchArtifactRequest.fromJSON(request.toJSON());
+
+        assertThat(deserialized.getArtifactStoreConfig()).isEqualTo(request.getArtifactStoreConfig());
+        assertThat(deserialized.getMetadata()).isEqualTo(metadata);
+        assertThat(deserialized.getFetchArtifactConfig().getDestination()).isEqualTo("out");
+        assertThat(deserialized.getAgentWorkingDir()).isEqualTo("/temp");
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.model;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PropertyTemplateTest {
+
+    @Test
+    public void shouldCompileEachValueOnce() {
+        PropertyTemplate template = PropertyTemplate.compile("artifacts/${GO_ARTIFACT_LOCATOR}");
+
+        assertThat(PropertyTemplate.compile("artifacts/${GO_ARTIFACT_LOCATOR}")).isSameAs(template);
+        assertThat(template.hasVariables()).isTrue();
+    }
+
+    @Test
+    public void shouldKeepRecentlyUsedTemplatesWhenManyValuesAreCompiled() {
+        PropertyTemplate template = PropertyTemplate.compile("recent/${GO_PIPELINE_NAME}");
+
+        for (int i = 0; i < 2 * PropertyTemplate.MAX_CACHED; i++) {
+            PropertyTemplate.compile("other/" + i);
+            assertThat(PropertyTemplate.compile("recent/${GO_PIPELINE_NAME}")).isSameAs(template);
+        }
+        PropertyTemplate latest = PropertyTemplate.compile("other/latest");
+        assertThat(PropertyTemplate.compile("other/latest")).isSameAs(latest);
+    }
+
+    @Test
+    public void shouldApplyDefaultOfArtifactLocatorToEachOfItsVariables() throws UnresolvedPropertyException {
+        PropertyTemplate template = PropertyTemplate.compile("artifacts/${GO_ARTIFACT_LOCATOR:-none}");
+
+        assertThat(template.render(ImmutableMap.of("GO_PIPELINE_NAME", "app", "GO_STAGE_NAME", "build"), "Destination"))
+                .isEqualTo("artifacts/app/none/build/none/none");
+    }
+
+    @Test
+    public void shouldRenderValuesWithoutVariablesWithoutTheEnvironment() throws UnresolvedPropertyException {
+        PropertyTemplate template = PropertyTemplate.compile("plain/path$");
+
+        assertThat(template.hasVariables()).isFalse();
+        assertThat(template.render(null, "Destination")).isEqualTo("plain/path$");
+        assertThat(PropertyTemplate.compile("").render(null, "Destination")).isEmpty();
+    }
+
+    @Test
+    public void shouldResolveFetchConfigOnlyWhenItHasVariables() throws UnresolvedPropertyException {
+        FetchArtifactConfig plain = new FetchArtifactConfig("lib", "out", false);
+        FetchArtifactConfig templated = new FetchArtifactConfig("lib/${GO_PIPELINE_COUNTER}", null, true);
+
+        assertThat(plain.resolve(null)).isSameAs(plain);
+        FetchArtifactConfig resolved = templated.resolve(ImmutableMap.of("GO_PIPELINE_COUNTER", "7"));
+        assertThat(resolved.getSubPath()).isEqualTo("lib/7");
+        assertThat(resolved.getDestination()).isNull();
+        assertThat(resolved.getIsFile()).isTrue();
+    }
+
+    @Test
+    public void shouldResolveVariablesInValuesOfVariables() throws UnresolvedPropertyException {
+        PropertyTemplate template = PropertyTemplate.compile("artifacts/${RELEASE}/${LITERAL}");
+
+        assertThat(template.render(ImmutableMap.of("RELEASE", "${GO_PIPELINE_NAME}-${GO_PIPELINE_COUNTER}", "GO_PIPELINE_NAME", "app",
+                "GO_PIPELINE_COUNTER", "7", "LITERAL", "$${GO_PIPELINE_NAME}"), "Destination"))
+                .isEqualTo("artifacts/app-7/${GO_PIPELINE_NAME}");
+    }
+
+    @Test
+    public void shouldReportVariableWhoseValueRefersBackToItselfAsUnresolved() {
+        PropertyTemplate template = PropertyTemplate.compile("artifacts/${LOOP}");
+
+        assertThatThrownBy(() -> template.render(ImmutableMap.of("LOOP", "${LOOP}/next"), "Destination"))
+                .isInstanceOf(UnresolvedPropertyException.class)
+                .hasMessage("Failed to resolve ${LOOP} in Destination: artifacts/${LOOP}/next");
+    }
+
+    @Test
+    public void shouldLeaveFetchConfigAsItIsWithoutEnvironmentVariables() throws UnresolvedPropertyException {
+        FetchArtifactConfig templated = new FetchArtifactConfig("lib/${GO_PIPELINE_COUNTER}", "out/${NAME}", false);
+
+        assertThat(templated.resolve(null)).isSameAs(templated);
+        assertThat(templated.resolve(ImmutableMap.of())).isSameAs(templated);
+    }
+}
@@ -18,6 +18,8 @@ package diogomrol.gocd.s3.artifact.plugin.model;
 
 import org.junit.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -57,4 +59,50 @@ public class PublishArtifactRequestTest {
         assertThat(publishArtifactRequest.getArtifactPlan())
                 .isEqualTo(new ArtifactPlan("installers", "s3-store", "alpine-build.json", Optional.empty()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldDeserializeEnvironmentVariablesAndSkipUnknownProperties() {
+        final String json = "{\n" +
+                "  \"unknown\": [{\"nested\": {}}],\n" +
+                "  \"artifact_plan\": {\n" +
+                "    \"configuration\": {\n" +
+                "      \"Source\": \"bin/*\",\n" +
+                "      \"Destination\": \"   \"\n" +
+                "    },\n" +
+                "    \"id\": \"installers\",\n" +
+                "    \"storeId\": \"s3-store\"\n" +
+                "  },\n" +
+                "  \"environment_variables\": {\n" +
+                "    \"GO_PIPELINE_NAME\": \"build\",\n" +
+                "    \"GO_PIPELINE_COUNTER\": 12,\n" +
+                "    \"EMPTY\": null\n" +
+                "  },\n" +
+                "  \"agent_working_directory\": \"/temp\"\n" +
+                "}";
+
+        final PublishArtifactRequest publishArtifactRequest = PublishArtifactRequest.fromJSON(json);
+
+        assertThat(publishArtifactRequest.getArtifactStore()).isNull();
+        assertThat(publishArtifactRequest.getArtifactPlan())
+                .isEqualTo(new ArtifactPlan("installers", "s3-store", "bin/*", Optional.empty()));
+        assertThat(publishArtifactRequest.getEnvironmentVariables())
+                .containsEntry("GO_PIPELINE_NAME", "build")
+                .containsEntry("GO_PIPELINE_COUNTER", "12")
+                .containsEntry("EMPTY", null)
+                .hasSize(3);
+    }
+
+    @Test
+    public void shouldSerializeToTheJsonItIsDeserializedFrom() {
+        final Map<String, String> environmentVariables = new LinkedHashMap<>();
+        environmentVariables.put("GO_PIPELINE_NAME", "build");
+        final PublishArtifactRequest request = new PublishArtifactRequest(new ArtifactStore("s3-store", new ArtifactStoreConfig("s3-url", "us-west-1", "key", "secret")),
+                new ArtifactPlan("installers", "s3-store", "bin/*", Optional.of("out"), Optional.of("pipe/11")), "/temp");
+        request.setEnvironmentVariables(environmentVariables);
+
+        final PublishArtifactRequest deserialized = PublishArtifactRequest.fromJSON(request.toJSON());
+
+        assertThat(deserialized).isEqualTo(request);
+        assertThat(deserialized.getEnvironmentVariables()).isEqualTo(environmentVariables);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactLayout;
+import diogomrol.gocd.s3.artifact.plugin.model.ArtifactManifest;
+import diogomrol.gocd.s3.artifact.plugin.model.S3Uri;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ArtifactPromoterTest {
+    @Mock
+    private AmazonS3 s3Client;
+    @Captor
+    private ArgumentCaptor<CopyObjectRequest> copyCaptor;
+
+    private TransferExecutor transfers;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        transfers = new TransferExecutor(2);
+    }
+
+    @After
+    public void tearDown() {
+        transfers.close();
+    }
+
+    @Test
+    public void shouldCopyListedObjectsWhenSourceHasNoManifest() throws IOException {
+        when(s3Client.getObjectAsString("build", "pipe/12/.gocd-artifact-manifest-app.json")).thenThrow(notFound());
+        when(s3Client.listObjects("build", "pipe/12")).thenReturn(listing("pipe/12/app.jar", "pipe/12/lib/vendor.jar", "pipe/12/.gocd-artifact-manifest-docs.json", "pipe/123/other.jar"));
+
+        ArtifactPromoter.Result result = new ArtifactPromoter().promote(s3Client, S3Uri.parse("s3://build/pipe/12"), "app", "release", "app/1.0", ArtifactLayout.PREFIX, transfers);
+
+        assertThat(result.getFileCount()).isEqualTo(2);
+        assertThat(result.getManifest()).isNull();
+        verify(s3Client, times(2)).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getAllValues()).extracting(CopyObjectRequest::getDestinationKey)
+                .containsExactlyInAnyOrder("app/1.0/app.jar", "app/1.0/lib/vendor.jar");
+        assertThat(copyCaptor.getAllValues()).extracting(CopyObjectRequest::getSourceBucketName).containsOnly("build");
+        assertThat(copyCaptor.getAllValues()).extracting(CopyObjectRequest::getDestinationBucketName).containsOnly("release");
+    }
+
+    @Test
+    public void shouldCopyBlobsListedInContentAddressedManifest() throws IOException {
+        ArtifactManifest manifest = new ArtifactManifest(ArtifactLayout.CAS);
+        manifest.add("app.jar", 10, "aaa");
+        manifest.add("lib/vendor.jar", 20, "bbb");
+        when(s3Client.getObjectAsString("build", "pipe/12/.gocd-artifact-manifest-app.json")).thenReturn(manifest.toJSON());
+        when(s3Client.doesObjectExist("release", "cas/bbb")).thenReturn(true);
+
+        ArtifactPromoter.Result result = new ArtifactPromoter().promote(s3Client, S3Uri.parse("s3://build/pipe/12/"), "app", "release", "app/1.0", ArtifactLayout.CAS, transfers);
+
+        verify(s3Client, times(1)).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getValue().getSourceKey()).isEqualTo("cas/aaa");
+        assertThat(copyCaptor.getValue().getDestinationKey()).isEqualTo("cas/aaa");
+        assertThat(result.getManifest().getLayout()).isEqualTo(ArtifactLayout.CAS);
+        assertThat(result.getManifest().getFiles()).containsOnlyKeys("app.jar", "lib/vendor.jar");
+        verify(s3Client, never()).listObjects(any(String.class), any(String.class));
+    }
+
+    @Test
+    public void shouldRefuseToPromoteArtifactWithoutManifestIntoContentAddressedLayout() throws IOException {
+        when(s3Client.getObjectAsString("build", "pipe/12/.gocd-artifact-manifest-app.json")).thenThrow(notFound());
+        when(s3Client.listObjects("build", "pipe/12")).thenReturn(listing("pipe/12/app.jar"));
+
+        try {
+            new ArtifactPromoter().promote(s3Client, S3Uri.parse("s3://build/pipe/12"), "app", "release", "app/1.0", ArtifactLayout.CAS, transfers);
+            fail("Expected promote to be refused");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("requires the source artifact to have a manifest");
+        }
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+    }
+
+    private static AmazonS3Exception notFound() {
+        AmazonS3Exception exception = new AmazonS3Exception("The specified key does not exist.");
+        exception.setStatusCode(404);
+        return exception;
+    }
+
+    private static ObjectListing listing(String... keys) {
+        ObjectListing listing = new ObjectListing();
+        for (String key : keys) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setKey(key);
+            summary.setSize(10);
+            listing.getObjectSummaries().add(summary);
+        }
+        return listing;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AsyncS3TransportTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+    @Mock
+    private S3AsyncClient s3Client;
+    @Captor
+    private ArgumentCaptor<PutObjectRequest> putCaptor;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+        file = tmpFolder.newFile("build.json");
+        Files.write(file.toPath(), "{\"content\":\"example artifact file\"}".getBytes());
+    }
+
+    @Test
+    public void shouldDigestBodyWhileItIsStreamed() throws Exception {
+        when(s3Client.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenAnswer(invocation -> drain(invocation.getArgument(1))
+                        .thenApply(size -> PutObjectResponse.builder().build()));
+
+        FileChecksums checksums = new AsyncS3Transport(s3Client).upload("bucket", "x/build.json", file, true).get();
+
+        verify(s3Client).putObject(putCaptor.capture(), any(AsyncRequestBody.class));
+        assertThat(checksums.getSha256()).isEqualTo(Checksums.digest(file).getSha256());
+        assertThat(checksums.getSize()).isEqualTo(file.length());
+        assertThat(putCaptor.getValue().key()).isEqualTo("x/build.json");
+        assertThat(putCaptor.getValue().contentLength()).isEqualTo(file.length());
+        assertThat(putCaptor.getValue().contentMD5()).isNull();
+    }
+
+    @Test
+    public void shouldUploadWithoutChecksumsWhenNotRequested() throws Exception {
+        when(s3Client.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+
+        FileChecksums checksums = new AsyncS3Transport(s3Client).upload("bucket", "build.json", file, false).get();
+
+        verify(s3Client).putObject(putCaptor.capture(), any(AsyncRequestBody.class));
+        assertThat(checksums).isNull();
+        assertThat(putCaptor.getValue().contentMD5()).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRemovePartialFileWhenDownloadFails() throws IOException {
+        File target = new File(tmpFolder.getRoot(), "local/build.json");
+        CompletableFuture<Object> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("connection reset"));
+        doReturn(failed).when(s3Client).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+
+        CompletableFuture<Void> download = new AsyncS3Transport(s3Client).download("bucket", "build.json", target, null);
+
+        assertThatThrownBy(() -> S3Transport.awaitAll(Collections.singletonList(download)))
+                .isInstanceOf(IOException.class)
+                .hasMessage("connection reset");
+        assertThat(target).doesNotExist();
+        assertThat(target.getParentFile().list()).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldVerifyDownloadWhileItIsWritten() throws Exception {
+        File target = new File(tmpFolder.getRoot(), "local/build.json");
+        byte[] content = Files.readAllBytes(file.toPath());
+        stream(content);
+
+        new AsyncS3Transport(s3Client).download("bucket", "build.json", target, Checksums.digest(file).getSha256()).get();
+
+        assertThat(target).hasBinaryContent(content);
+        assertThat(target.getParentFile().list()).containsExactly("build.json");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRemovePartialFileWhenStreamedChecksumDoesNotMatch() {
+        File target = new File(tmpFolder.getRoot(), "local/build.json");
+        stream("{\"content\":\"corrupted\"}".getBytes());
+
+        CompletableFuture<Void> download = new AsyncS3Transport(s3Client).download("bucket", "build.json", target, "0000");
+
+        assertThatThrownBy(() -> S3Transport.awaitAll(Collections.singletonList(download)))
+                .isInstanceOf(ChecksumMismatchException.class);
+        assertThat(target).doesNotExist();
+        assertThat(target.getParentFile().list()).isEmpty();
+    }
+
+    @Test
+    public void shouldReleaseInFlightPermitWhenRequestCompletes() throws Exception {
+        when(s3Client.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+        AsyncS3Transport transport = new AsyncS3Transport(s3Client, 1);
+
+        transport.upload("bucket", "a.json", file, false).get();
+        transport.upload("bucket", "b.json", file, false).get();
+
+        verify(s3Client, times(2)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stream(byte[] content) {
+        doAnswer(invocation -> {
+            AsyncResponseTransformer<GetObjectResponse, FileChecksums> transformer = invocation.getArgument(1);
+            CompletableFuture<FileChecksums> result = transformer.prepare();
+            transformer.onResponse(GetObjectResponse.builder().build());
+            transformer.onStream(AsyncRequestBody.fromBytes(content));
+            return result;
+        }).when(s3Client).getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class));
+    }
+
+    private static CompletableFuture<Long> drain(AsyncRequestBody body) {
+        CompletableFuture<Long> drained = new CompletableFuture<>();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            private Subscription subscription;
+            private long size;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                size += buffer.remaining();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable failure) {
+                drained.completeExceptionally(failure);
+            }
+
+            @Override
+            public void onComplete() {
+                drained.complete(size);
+            }
+        });
+        return drained;
+    }
+}
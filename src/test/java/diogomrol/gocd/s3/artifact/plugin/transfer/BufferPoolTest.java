@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class BufferPoolTest {
+    @Test
+    public void shouldRoundSizesUpToPowerOfTwo() {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+
+        assertThat(pool.acquire(0).capacity()).isEqualTo(BufferPool.MIN_BUFFER_SIZE);
+        assertThat(pool.acquire(16 * 1024).capacity()).isEqualTo(16 * 1024);
+        assertThat(pool.acquire(16 * 1024 + 1).capacity()).isEqualTo(32 * 1024);
+    }
+
+    @Test
+    public void shouldReuseReleasedBufferOfSameSize() {
+        BufferPool pool = new BufferPool(1024 * 1024, true);
+        ByteBuffer buffer = pool.acquire(10000);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(16 * 1024);
+
+        assertThat(reused).isSameAs(buffer);
+        assertThat(reused.isDirect()).isTrue();
+        assertThat(reused.position()).isEqualTo(0);
+        assertThat(reused.remaining()).isEqualTo(16 * 1024);
+        assertThat(pool.getHits()).isEqualTo(1);
+        assertThat(pool.getMisses()).isEqualTo(1);
+        assertThat(pool.hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void shouldNotReuseBufferOfAnotherSize() {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        ByteBuffer buffer = pool.acquire(8 * 1024);
+        pool.release(buffer);
+
+        assertThat(pool.acquire(64 * 1024)).isNotSameAs(buffer);
+        assertThat(pool.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepNoMoreThanMaxPooledBytes() {
+        BufferPool pool = new BufferPool(16 * 1024, false);
+        ByteBuffer first = pool.acquire(8 * 1024);
+        ByteBuffer second = pool.acquire(8 * 1024);
+        ByteBuffer third = pool.acquire(8 * 1024);
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(16 * 1024);
+        assertThat(pool.getInUseBytes()).isEqualTo(0);
+        assertThat(pool.getPeakInUseBytes()).isEqualTo(24 * 1024);
+    }
+
+    @Test
+    public void shouldRejectBuffersLargerThanMaximum() {
+        try {
+            new BufferPool(0, false).acquire(BufferPool.MAX_BUFFER_SIZE + 1);
+            fail("Expected the size to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("limited to");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class ChannelDownloadWriterTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File workingDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDir = tmpFolder.newFolder("go-agent");
+    }
+
+    @Test
+    public void shouldWriteContentLargerThanBufferToTarget() throws IOException {
+        byte[] content = randomBytes(100 * 1024 + 17);
+        File target = new File(workingDir, "bin/build.bin");
+
+        long written = new ChannelDownloadWriter(8 * 1024).write(new ByteArrayInputStream(content), content.length, target);
+
+        assertThat(written).isEqualTo(content.length);
+        assertThat(Files.readAllBytes(target.toPath())).isEqualTo(content);
+        assertThat(target.getParentFile().list()).containsExactly("build.bin");
+    }
+
+    @Test
+    public void shouldReplaceExistingTarget() throws IOException {
+        File target = new File(workingDir, "build.json");
+        Files.write(target.toPath(), "old content which is longer".getBytes());
+        byte[] content = "new".getBytes();
+
+        new ChannelDownloadWriter().write(new ByteArrayInputStream(content), content.length, target);
+
+        assertThat(Files.readAllBytes(target.toPath())).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldCreateTargetWithDefaultPermissionsOfNewFiles() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File newFile = new File(workingDir, "new.json");
+        Files.createFile(newFile.toPath());
+        File target = new File(workingDir, "build.json");
+        byte[] content = "content".getBytes();
+
+        new ChannelDownloadWriter().write(new ByteArrayInputStream(content), content.length, target);
+
+        assertThat(Files.getPosixFilePermissions(target.toPath())).isEqualTo(Files.getPosixFilePermissions(newFile.toPath()));
+    }
+
+    @Test
+    public void shouldWriteContentOfUnknownLength() throws IOException {
+        byte[] content = randomBytes(20000);
+        File target = new File(workingDir, "build.bin");
+
+        new ChannelDownloadWriter().write(new ByteArrayInputStream(content), -1, target);
+
+        assertThat(Files.readAllBytes(target.toPath())).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldNotLeaveTargetOrPartFileWhenContentIsTruncated() throws IOException {
+        byte[] content = randomBytes(1000);
+        File target = new File(workingDir, "build.bin");
+
+        try {
+            new ChannelDownloadWriter().write(new ByteArrayInputStream(content), 2000, target);
+            fail("Expected truncated content to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("Expected 2000 bytes");
+        }
+
+        assertThat(workingDir.list()).isEmpty();
+    }
+
+    @Test
+    public void shouldWriteContentMatchingExpectedChecksum() throws Exception {
+        byte[] content = randomBytes(50 * 1024);
+        File target = new File(workingDir, "build.bin");
+        String sha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        new ChannelDownloadWriter(8 * 1024).write(new ByteArrayInputStream(content), content.length, target, sha256);
+
+        assertThat(Files.readAllBytes(target.toPath())).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldKeepExistingTargetWhenChecksumDoesNotMatch() throws Exception {
+        byte[] content = randomBytes(1000);
+        File target = new File(workingDir, "build.bin");
+        Files.write(target.toPath(), "previous".getBytes());
+        String sha256 = Checksums.toHex(MessageDigest.getInstance("SHA-256").digest("expected".getBytes()));
+
+        try {
+            new ChannelDownloadWriter().write(new ByteArrayInputStream(content), content.length, target, sha256);
+            fail("Expected content with a different checksum to be rejected");
+        } catch (ChecksumMismatchException e) {
+            assertThat(e.getMessage()).contains(sha256);
+        }
+
+        assertThat(Files.readAllBytes(target.toPath())).isEqualTo("previous".getBytes());
+        assertThat(workingDir.list()).containsExactly("build.bin");
+    }
+
+    @Test
+    public void shouldReuseOnePooledBufferAcrossFiles() throws IOException {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        ChannelDownloadWriter writer = new ChannelDownloadWriter(8 * 1024, pool);
+        byte[] content = randomBytes(20000);
+
+        for (int i = 0; i < 3; i++) {
+            writer.write(new ByteArrayInputStream(content), content.length, new File(workingDir, "build" + i + ".bin"));
+        }
+
+        assertThat(Files.readAllBytes(new File(workingDir, "build2.bin").toPath())).isEqualTo(content);
+        assertThat(pool.getMisses()).isEqualTo(1);
+        assertThat(pool.getHits()).isEqualTo(2);
+        assertThat(pool.getInUseBytes()).isEqualTo(0);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
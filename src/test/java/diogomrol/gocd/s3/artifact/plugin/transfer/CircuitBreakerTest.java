@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerTest {
+    private AtomicLong now;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(1_000_000);
+        circuitBreaker = new CircuitBreaker("artifacts", 0.5, now::get);
+    }
+
+    @Test
+    public void shouldStayClosedUntilEnoughRequestsFailed() {
+        for (int i = 0; i < CircuitBreaker.MIN_REQUESTS - 1; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.onFailure();
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        for (int i = 0; i < 11; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.onSuccess();
+        }
+        circuitBreaker.acquire();
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getWindowRequests()).isEqualTo(CircuitBreaker.WINDOW);
+        assertThat(circuitBreaker.getWindowFailures()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldOpenAtErrorRateAndFailFast() {
+        failRequests(CircuitBreaker.MIN_REQUESTS);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> circuitBreaker.acquire())
+                .isInstanceOf(CircuitBreakerOpenException.class)
+                .hasMessage("S3 bucket `artifacts` is failing, 10 of the last 10 requests failed. Failing fast for another 30 s.");
+        assertThat(circuitBreaker.getRejected()).isEqualTo(1);
+        assertThat(circuitBreaker.getOpened()).isEqualTo(1);
+        assertThat(circuitBreaker.getWindowRequests()).isEqualTo(10);
+        assertThat(circuitBreaker.getWindowFailures()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldLetProbesThroughWhenHalfOpenAndCloseOnSuccess() {
+        failRequests(CircuitBreaker.MIN_REQUESTS);
+        now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; i++) {
+            circuitBreaker.acquire();
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(() -> circuitBreaker.acquire()).isInstanceOf(CircuitBreakerOpenException.class);
+
+        circuitBreaker.onSuccess();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.toString()).isEqualTo("closed, 0 of the last 0 requests failed, opened 1 times, 1 requests rejected");
+    }
+
+    @Test
+    public void shouldOpenAgainWhenProbeFails() {
+        failRequests(CircuitBreaker.MIN_REQUESTS);
+        now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+
+        circuitBreaker.acquire();
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.getOpened()).isEqualTo(2);
+        assertThatThrownBy(() -> circuitBreaker.acquire()).isInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    public void shouldAdmitNewProbesWhenEarlierOnesNeverReported() {
+        failRequests(CircuitBreaker.MIN_REQUESTS);
+        now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; i++) {
+            circuitBreaker.acquire();
+        }
+
+        now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+        circuitBreaker.acquire();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void shouldNeedReportOnlyWhileNotClosedOrAfterChangingState() {
+        circuitBreaker.acquire();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.needsReport()).isFalse();
+
+        failRequests(CircuitBreaker.MIN_REQUESTS);
+        assertThat(circuitBreaker.needsReport()).isTrue();
+        assertThat(circuitBreaker.needsReport()).isTrue();
+
+        now.addAndGet(CircuitBreaker.OPEN_MILLIS);
+        circuitBreaker.acquire();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.needsReport()).isTrue();
+        assertThat(circuitBreaker.needsReport()).isFalse();
+    }
+
+    private void failRequests(int count) {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.onFailure();
+        }
+    }
+}
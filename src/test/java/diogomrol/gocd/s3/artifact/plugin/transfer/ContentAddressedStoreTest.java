@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ContentAddressedStoreTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+    @Mock
+    private AmazonS3 s3Client;
+    @Captor
+    private ArgumentCaptor<PutObjectRequest> putCaptor;
+
+    private File file;
+    private FileChecksums checksums;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+        file = tmpFolder.newFile("vendor.jar");
+        Files.write(file.toPath(), "shared library".getBytes());
+        checksums = Checksums.digest(file);
+    }
+
+    @Test
+    public void shouldUploadBlobUnderItsHashWhenItIsNotStoredYet() throws IOException {
+        when(s3Client.doesObjectExist("bucket", "cas/" + checksums.getSha256())).thenReturn(false);
+
+        boolean uploaded = new ContentAddressedStore().store(s3Client, "bucket", file, checksums);
+
+        assertThat(uploaded).isTrue();
+        verify(s3Client).putObject(putCaptor.capture());
+        assertThat(putCaptor.getValue().getKey()).isEqualTo("cas/" + checksums.getSha256());
+        assertThat(putCaptor.getValue().getMetadata().getUserMetadata()).containsEntry("sha256", checksums.getSha256());
+    }
+
+    @Test
+    public void shouldSkipBlobWhichIsAlreadyStored() throws IOException {
+        when(s3Client.doesObjectExist("bucket", "cas/" + checksums.getSha256())).thenReturn(true);
+
+        boolean uploaded = new ContentAddressedStore().store(s3Client, "bucket", file, checksums);
+
+        assertThat(uploaded).isFalse();
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void shouldNotCheckBlobAgainOnceItWasUploaded() throws IOException {
+        ContentAddressedStore store = new ContentAddressedStore();
+
+        assertThat(store.store(s3Client, "bucket", file, checksums)).isTrue();
+        assertThat(store.store(s3Client, "bucket", file, checksums)).isFalse();
+
+        verify(s3Client, times(1)).doesObjectExist(any(), any());
+        verify(s3Client, times(1)).putObject(any(PutObjectRequest.class));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileUploadSourceTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldProducePartsWithTheirMd5AndChecksumOfWholeFile() throws Exception {
+        byte[] content = new byte[2500];
+        new Random(3).nextBytes(content);
+        File file = tmpFolder.newFile("build.bin");
+        Files.write(file.toPath(), content);
+
+        List<FileUploadSource.Part> parts = new ArrayList<>();
+        FileChecksums checksums;
+        try (FileUploadSource source = new FileUploadSource(file, 1000)) {
+            while (source.hasNextPart()) {
+                parts.add(source.nextPart());
+            }
+            checksums = source.checksums();
+        }
+
+        assertThat(parts).extracting(FileUploadSource.Part::getPartNumber).containsExactly(1, 2, 3);
+        assertThat(parts).extracting(FileUploadSource.Part::getLength).containsExactly(1000L, 1000L, 500L);
+        assertThat(parts).extracting(FileUploadSource.Part::isLastPart).containsExactly(false, false, true);
+        for (FileUploadSource.Part part : parts) {
+            int offset = (part.getPartNumber() - 1) * 1000;
+            byte[] expected = Arrays.copyOfRange(content, offset, offset + (int) part.getLength());
+            assertThat(readAll(part.openStream())).isEqualTo(expected);
+            assertThat(part.getMd5()).isEqualTo(Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(expected)));
+        }
+        assertThat(checksums.getSize()).isEqualTo(2500);
+        assertThat(checksums.getSha256()).isEqualTo(Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(content)));
+    }
+
+    @Test
+    public void shouldProduceSingleEmptyPartForEmptyFile() throws IOException {
+        File file = tmpFolder.newFile("empty.txt");
+
+        try (FileUploadSource source = new FileUploadSource(file, 1000)) {
+            FileUploadSource.Part part = source.nextPart();
+
+            assertThat(part.getLength()).isEqualTo(0);
+            assertThat(part.isLastPart()).isTrue();
+            assertThat(source.hasNextPart()).isFalse();
+            assertThat(source.checksums().getSha256()).isEqualTo("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[300];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
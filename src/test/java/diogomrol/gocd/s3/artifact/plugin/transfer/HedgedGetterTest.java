@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HedgedGetterTest {
+    private AmazonS3 s3;
+    private HedgedGetter getter;
+
+    @Before
+    public void setUp() {
+        s3 = mock(AmazonS3.class);
+        getter = new HedgedGetter(95);
+    }
+
+    @After
+    public void tearDown() {
+        getter.close();
+    }
+
+    @Test
+    public void shouldNotHedgeBeforeEnoughRequestsWereAnswered() {
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> s3Object());
+
+        for (int i = 1; i < HedgedGetter.MIN_SAMPLES; i++) {
+            getter.getObject(s3, new GetObjectRequest("bucket", "key" + i));
+        }
+        assertThat(getter.getThresholdMillis()).isEqualTo(-1);
+
+        getter.getObject(s3, new GetObjectRequest("bucket", "last"));
+        assertThat(getter.getThresholdMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(getter.getRequests()).isEqualTo(HedgedGetter.MIN_SAMPLES);
+        assertThat(getter.getHedges()).isZero();
+    }
+
+    @Test
+    public void shouldAnswerSlowRequestWithHedgeAndAbortTheSlowAnswer() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        S3Object slow = s3Object();
+        S3Object hedge = s3Object();
+        AtomicInteger stalledRequests = new AtomicInteger();
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest getRequest = invocation.getArgument(0);
+            if (!"stalled".equals(getRequest.getKey())) {
+                return s3Object();
+            }
+            if (stalledRequests.incrementAndGet() > 1) {
+                return hedge;
+            }
+            stalled.await(10, TimeUnit.SECONDS);
+            return slow;
+        });
+        warmUp(100);
+
+        S3Object object = getter.getObject(s3, new GetObjectRequest("bucket", "stalled"));
+        stalled.countDown();
+
+        assertThat(object).isSameAs(hedge);
+        assertThat(getter.getHedges()).isEqualTo(1);
+        assertThat(getter.getHedgeWins()).isEqualTo(1);
+        verify(slow.getObjectContent(), timeout(1000)).abort();
+    }
+
+    @Test
+    public void shouldCapHedgesToShareOfRequests() {
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest getRequest = invocation.getArgument(0);
+            if (getRequest.getKey().startsWith("slow")) {
+                Thread.sleep(50);
+            }
+            return s3Object();
+        });
+        warmUp(100);
+
+        for (int i = 0; i < 20; i++) {
+            getter.getObject(s3, new GetObjectRequest("bucket", "slow" + i));
+        }
+
+        assertThat(getter.getRequests()).isEqualTo(120);
+        assertThat(getter.getHedges()).isPositive().isLessThanOrEqualTo((long) (120 * HedgedGetter.MAX_HEDGED_SHARE));
+    }
+
+    private void warmUp(int requests) {
+        for (int i = 0; i < requests; i++) {
+            getter.getObject(s3, new GetObjectRequest("bucket", "fast" + i));
+        }
+    }
+
+    private static S3Object s3Object() {
+        S3Object object = mock(S3Object.class);
+        when(object.getObjectContent()).thenReturn(mock(S3ObjectInputStream.class));
+        return object;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MultipartFileUploaderTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+    @Mock
+    private AmazonS3 s3Client;
+    @Captor
+    private ArgumentCaptor<UploadPartRequest> partCaptor;
+    @Captor
+    private ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+        file = tmpFolder.newFile("build.bin");
+        Files.write(file.toPath(), new byte[250]);
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-1");
+        when(s3Client.initiateMultipartUpload(any())).thenReturn(initiated);
+    }
+
+    @Test
+    public void shouldUploadFileInPartsAndCompleteUpload() throws IOException {
+        when(s3Client.uploadPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+
+        FileChecksums checksums = new MultipartFileUploader(100).upload(s3Client, "bucket", "x/build.bin", file);
+
+        verify(s3Client, times(3)).uploadPart(partCaptor.capture());
+        assertThat(partCaptor.getAllValues()).extracting(UploadPartRequest::getPartSize).containsExactly(100L, 100L, 50L);
+        assertThat(partCaptor.getAllValues()).extracting(UploadPartRequest::getMd5Digest).doesNotContainNull();
+        assertThat(partCaptor.getAllValues()).extracting(UploadPartRequest::getUploadId).containsOnly("upload-1");
+        verify(s3Client).completeMultipartUpload(completeCaptor.capture());
+        assertThat(completeCaptor.getValue().getKey()).isEqualTo("x/build.bin");
+        assertThat(completeCaptor.getValue().getPartETags()).extracting(PartETag::getETag).containsExactly("etag-1", "etag-2", "etag-3");
+        assertThat(checksums.getSize()).isEqualTo(250);
+        verify(s3Client, never()).abortMultipartUpload(any());
+    }
+
+    @Test
+    public void shouldUploadPartsConcurrentlyAndCompleteWithETagsInPartOrder() throws IOException {
+        when(s3Client.uploadPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            // later parts finish first
+            Thread.sleep(10L * (4 - request.getPartNumber()));
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+
+        FileChecksums checksums = new MultipartFileUploader(100, 3).upload(s3Client, "bucket", "x/build.bin", file);
+
+        verify(s3Client, times(3)).uploadPart(partCaptor.capture());
+        assertThat(partCaptor.getAllValues()).extracting(UploadPartRequest::getPartNumber).containsExactlyInAnyOrder(1, 2, 3);
+        verify(s3Client).completeMultipartUpload(completeCaptor.capture());
+        assertThat(completeCaptor.getValue().getPartETags()).extracting(PartETag::getETag).containsExactly("etag-1", "etag-2", "etag-3");
+        assertThat(checksums.getSize()).isEqualTo(250);
+    }
+
+    @Test
+    public void shouldSendPartsOnGivenTransferExecutor() throws IOException {
+        Set<String> partThreads = ConcurrentHashMap.newKeySet();
+        when(s3Client.uploadPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            partThreads.add(Thread.currentThread().getName());
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+
+        try (TransferExecutor transfers = new TransferExecutor(1, null)) {
+            new MultipartFileUploader(100, 3, transfers).upload(s3Client, "bucket", "x/build.bin", file);
+        }
+
+        verify(s3Client, times(3)).uploadPart(any());
+        assertThat(partThreads).containsExactly("s3-transfer-1");
+    }
+
+    @Test
+    public void shouldAbortConcurrentUploadWhenPartFails() throws IOException {
+        when(s3Client.uploadPart(any())).thenThrow(new SdkClientException("connection reset"));
+
+        try {
+            new MultipartFileUploader(100, 3).upload(s3Client, "bucket", "x/build.bin", file);
+            fail("Expected upload to fail");
+        } catch (SdkClientException e) {
+            assertThat(e.getMessage()).isEqualTo("connection reset");
+        }
+
+        verify(s3Client).abortMultipartUpload(any());
+        verify(s3Client, never()).completeMultipartUpload(any());
+    }
+
+    @Test
+    public void shouldAbortUploadWhenPartFails() throws IOException {
+        when(s3Client.uploadPart(any())).thenThrow(new SdkClientException("connection reset"));
+
+        try {
+            new MultipartFileUploader(100).upload(s3Client, "bucket", "x/build.bin", file);
+            fail("Expected upload to fail");
+        } catch (SdkClientException e) {
+            assertThat(e.getMessage()).isEqualTo("connection reset");
+        }
+
+        verify(s3Client).abortMultipartUpload(any());
+        verify(s3Client, never()).completeMultipartUpload(any());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ServerSideCopierTest {
+    @Mock
+    private AmazonS3 s3Client;
+    @Captor
+    private ArgumentCaptor<CopyObjectRequest> copyCaptor;
+    @Captor
+    private ArgumentCaptor<CopyPartRequest> partCaptor;
+    @Captor
+    private ArgumentCaptor<InitiateMultipartUploadRequest> initiateCaptor;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        ObjectMetadata sourceMetadata = new ObjectMetadata();
+        sourceMetadata.setContentType("application/java-archive");
+        sourceMetadata.setUserMetadata(Collections.singletonMap("sha256", "abc"));
+        when(s3Client.getObjectMetadata("build", "x/app.jar")).thenReturn(sourceMetadata);
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-1");
+        when(s3Client.initiateMultipartUpload(any())).thenReturn(initiated);
+    }
+
+    @Test
+    public void shouldCopyObjectInOneRequestUpToTheCopyObjectLimit() {
+        new ServerSideCopier(100).copy(s3Client, "build", "x/app.jar", "release", "y/app.jar", 100);
+
+        verify(s3Client).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getValue().getSourceBucketName()).isEqualTo("build");
+        assertThat(copyCaptor.getValue().getSourceKey()).isEqualTo("x/app.jar");
+        assertThat(copyCaptor.getValue().getDestinationBucketName()).isEqualTo("release");
+        assertThat(copyCaptor.getValue().getDestinationKey()).isEqualTo("y/app.jar");
+        verify(s3Client, never()).initiateMultipartUpload(any());
+    }
+
+    @Test
+    public void shouldCopyLargerObjectsInByteRangesKeepingTheirMetadata() {
+        when(s3Client.copyPart(any())).thenAnswer(invocation -> {
+            CopyPartRequest request = invocation.getArgument(0);
+            CopyPartResult result = new CopyPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+
+        new ServerSideCopier(100).copy(s3Client, "build", "x/app.jar", "release", "y/app.jar", 250);
+
+        verify(s3Client).initiateMultipartUpload(initiateCaptor.capture());
+        assertThat(initiateCaptor.getValue().getObjectMetadata().getUserMetadata()).containsEntry("sha256", "abc");
+        assertThat(initiateCaptor.getValue().getObjectMetadata().getContentType()).isEqualTo("application/java-archive");
+        verify(s3Client, times(3)).copyPart(partCaptor.capture());
+        assertThat(partCaptor.getAllValues()).extracting(CopyPartRequest::getFirstByte).containsExactly(0L, 100L, 200L);
+        assertThat(partCaptor.getAllValues()).extracting(CopyPartRequest::getLastByte).containsExactly(99L, 199L, 249L);
+        verify(s3Client).completeMultipartUpload(any());
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+    }
+
+    @Test
+    public void shouldAbortUploadWhenPartCopyFails() {
+        when(s3Client.copyPart(any())).thenThrow(new SdkClientException("access denied"));
+
+        try {
+            new ServerSideCopier(100).copy(s3Client, "build", "x/app.jar", "release", "y/app.jar", 250);
+            fail("Expected copy to fail");
+        } catch (SdkClientException e) {
+            assertThat(e.getMessage()).isEqualTo("access denied");
+        }
+
+        verify(s3Client).abortMultipartUpload(any());
+        verify(s3Client, never()).completeMultipartUpload(any());
+    }
+}
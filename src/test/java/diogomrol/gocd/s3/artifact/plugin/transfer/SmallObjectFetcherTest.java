@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SmallObjectFetcherTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File workingDir;
+    private AmazonS3 s3;
+    private TransferMetrics metrics;
+    private SmallObjectFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDir = tmpFolder.newFolder("go-agent");
+        s3 = mock(AmazonS3.class);
+        metrics = new TransferMetrics();
+        fetcher = new SmallObjectFetcher(metrics);
+    }
+
+    @Test
+    public void shouldWriteObjectsLargerThanInitialBufferAndCountThem() throws Exception {
+        byte[] small = randomBytes(100);
+        byte[] larger = randomBytes(200 * 1024 + 3);
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(s3Object(small), s3Object(larger));
+        Path smallTarget = new File(workingDir, "a/small.bin").toPath();
+        Path largerTarget = new File(workingDir, "a/b/larger.bin").toPath();
+
+        fetcher.fetch(s3, new GetObjectRequest("bucket", "small.bin"), smallTarget, null);
+        fetcher.fetch(s3, new GetObjectRequest("bucket", "larger.bin"), largerTarget, sha256(larger));
+
+        assertThat(Files.readAllBytes(smallTarget)).isEqualTo(small);
+        assertThat(Files.readAllBytes(largerTarget)).isEqualTo(larger);
+        assertThat(metrics.getRequests()).isEqualTo(2);
+        assertThat(metrics.getBytes()).isEqualTo(small.length + larger.length);
+    }
+
+    @Test
+    public void shouldSetMetricCollectorOnRequest() throws Exception {
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(s3Object(randomBytes(10)));
+        GetObjectRequest getRequest = new GetObjectRequest("bucket", "build.bin");
+
+        fetcher.fetch(s3, getRequest, new File(workingDir, "build.bin").toPath(), null);
+
+        assertThat(getRequest.getRequestMetricCollector()).isSameAs(metrics.collector());
+    }
+
+    @Test
+    public void shouldNotWriteObjectWhichDoesNotMatchChecksum() throws Exception {
+        byte[] content = randomBytes(1000);
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(s3Object(content));
+        Path target = new File(workingDir, "build.bin").toPath();
+
+        try {
+            fetcher.fetch(s3, new GetObjectRequest("bucket", "build.bin"), target, sha256(randomBytes(10)));
+            fail("Expected a checksum mismatch");
+        } catch (ChecksumMismatchException e) {
+            assertThat(Files.exists(target)).isFalse();
+            assertThat(metrics.getRequests()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void shouldRejectObjectLargerThanMaximum() throws Exception {
+        S3Object object = s3Object(new byte[0]);
+        object.getObjectMetadata().setContentLength(SmallObjectFetcher.MAX_SMALL_OBJECT_SIZE + 1);
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(object);
+        Path target = new File(workingDir, "build.bin").toPath();
+
+        try {
+            fetcher.fetch(s3, new GetObjectRequest("bucket", "build.bin"), target, null);
+            fail("Expected the object to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("too large");
+            assertThat(Files.exists(target)).isFalse();
+        }
+    }
+
+    private static S3Object s3Object(byte[] content) {
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream(content));
+        s3Object.getObjectMetadata().setContentLength(content.length);
+        return s3Object;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
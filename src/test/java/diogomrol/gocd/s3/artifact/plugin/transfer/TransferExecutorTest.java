@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TransferExecutorTest {
+    @Test
+    public void shouldReturnResultsInOrderOfTasks() throws IOException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            tasks.add(() -> {
+                Thread.sleep(20 - value);
+                return value;
+            });
+        }
+
+        try (TransferExecutor executor = new TransferExecutor(4)) {
+            List<Integer> results = executor.invokeAll(tasks);
+            assertThat(results).hasSize(20);
+            assertThat(results.get(0)).isEqualTo(0);
+            assertThat(results.get(19)).isEqualTo(19);
+        }
+    }
+
+    @Test
+    public void shouldRethrowFirstTransferFailure() {
+        List<Callable<Void>> tasks = Arrays.asList(
+                () -> null,
+                () -> {
+                    throw new IOException("connection reset");
+                });
+
+        try (TransferExecutor executor = new TransferExecutor(2)) {
+            executor.invokeAll(tasks);
+            fail("Expected the failing transfer to be rethrown");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).isEqualTo("connection reset");
+        }
+    }
+
+    @Test
+    public void shouldBoundConcurrencyWhenEachTransferHasItsOwnThread() throws IOException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return null;
+            });
+        }
+
+        try (TransferExecutor executor = new TransferExecutor(3, Thread::new)) {
+            executor.invokeAll(tasks);
+        }
+
+        assertThat(maxRunning.get()).isBetween(1, 3);
+    }
+
+    @Test
+    public void shouldFallBackToPlatformThreadsWithoutVirtualThreads() throws IOException {
+        try (TransferExecutor executor = new TransferExecutor(2, null)) {
+            List<String> threadNames = executor.invokeAll(Arrays.<Callable<String>>asList(
+                    () -> Thread.currentThread().getName(),
+                    () -> Thread.currentThread().getName()));
+            assertThat(threadNames).allMatch(name -> name.startsWith("s3-transfer-"));
+        }
+    }
+}
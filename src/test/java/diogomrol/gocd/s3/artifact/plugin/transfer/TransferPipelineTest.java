@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.transfer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TransferPipelineTest {
+    @Test
+    public void shouldPassEveryItemThroughAllStages() throws IOException {
+        List<String> recorded = new ArrayList<>();
+
+        long count = new TransferPipeline<Integer, Integer, String>(2, 4, 3).run(
+                emit -> {
+                    for (int i = 0; i < 100; i++) {
+                        emit.accept(i);
+                    }
+                },
+                item -> item * 2,
+                item -> "uploaded-" + item,
+                recorded::add);
+
+        assertThat(count).isEqualTo(100);
+        assertThat(recorded).hasSize(100).contains("uploaded-0", "uploaded-198");
+    }
+
+    @Test
+    public void shouldStartTransfersBeforeTheSourceIsExhausted() throws IOException, InterruptedException {
+        CountDownLatch firstTransfer = new CountDownLatch(1);
+
+        new TransferPipeline<Integer, Integer, Integer>(1, 1, 1).run(
+                emit -> {
+                    emit.accept(1);
+                    try {
+                        assertThat(firstTransfer.await(5, TimeUnit.SECONDS)).isTrue();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    emit.accept(2);
+                },
+                item -> item,
+                item -> {
+                    firstTransfer.countDown();
+                    return item;
+                },
+                item -> { });
+    }
+
+    @Test
+    public void shouldBlockTheSourceWhileQueuesAreFull() throws IOException {
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        AtomicInteger transferred = new AtomicInteger();
+
+        new TransferPipeline<Integer, Integer, Integer>(1, 1, 2).run(
+                emit -> {
+                    for (int i = 0; i < 50; i++) {
+                        emit.accept(i);
+                        maxAhead.accumulateAndGet(emitted.incrementAndGet() - transferred.get(), Math::max);
+                    }
+                },
+                item -> item,
+                item -> {
+                    transferred.incrementAndGet();
+                    return item;
+                },
+                item -> { });
+
+        // two queues of two items ahead of the transfer stage, plus one item held by each worker
+        assertThat(maxAhead.get()).isLessThanOrEqualTo(6);
+    }
+
+    @Test
+    public void shouldTransferInTransferOrderOnceAllItemsArePrepared() throws IOException {
+        List<Integer> recorded = new ArrayList<>();
+
+        new TransferPipeline<Integer, Integer, Integer>(1, 1, 8)
+                .withTransferOrder(Comparator.<Integer>reverseOrder(), 8)
+                .run(
+                        emit -> {
+                            for (int size : new int[]{1, 5, 3, 9, 2}) {
+                                emit.accept(size);
+                            }
+                        },
+                        item -> item,
+                        item -> item,
+                        recorded::add);
+
+        assertThat(recorded).containsExactly(9, 5, 3, 2, 1);
+    }
+
+    @Test
+    public void shouldStartTransfersInTransferOrderOnceWindowIsFull() throws IOException {
+        CountDownLatch windowFilled = new CountDownLatch(1);
+        List<Integer> recorded = new ArrayList<>();
+
+        new TransferPipeline<Integer, Integer, Integer>(1, 1, 8)
+                .withTransferOrder(Comparator.<Integer>reverseOrder(), 3)
+                .run(
+                        emit -> {
+                            for (int size : new int[]{1, 5, 3}) {
+                                emit.accept(size);
+                            }
+                            // the rest of the scan is held back until the first transfer started
+                            try {
+                                windowFilled.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                            emit.accept(2);
+                        },
+                        item -> item,
+                        item -> {
+                            windowFilled.countDown();
+                            return item;
+                        },
+                        recorded::add);
+
+        assertThat(recorded.get(0)).isEqualTo(5);
+        assertThat(recorded).containsExactlyInAnyOrder(5, 3, 2, 1);
+    }
+
+    @Test
+    public void shouldStopAllStagesAndRethrowFirstFailure() {
+        List<Integer> recorded = Collections.synchronizedList(new ArrayList<>());
+        try {
+            new TransferPipeline<Integer, Integer, Integer>(2, 2, 2).run(
+                    emit -> {
+                        for (int i = 0; i < 100_000; i++) {
+                            emit.accept(i);
+                        }
+                    },
+                    item -> item,
+                    item -> {
+                        if (item == 10) {
+                            throw new IOException("connection reset");
+                        }
+                        return item;
+                    },
+                    recorded::add);
+            fail("Expected the failing transfer to be rethrown");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).isEqualTo("connection reset");
+        }
+        assertThat(recorded.size()).isLessThan(100_000);
+    }
+
+    @Test
+    public void shouldRethrowSourceFailure() {
+        try {
+            new TransferPipeline<Integer, Integer, Integer>(1, 1, 2).run(
+                    emit -> {
+                        emit.accept(1);
+                        throw new IOException("workspace is not readable");
+                    },
+                    item -> item,
+                    item -> item,
+                    item -> { });
+            fail("Expected the source failure to be rethrown");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).isEqualTo("workspace is not readable");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package diogomrol.gocd.s3.artifact.plugin.utils;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class S3KeyBuilderTest {
+    @Test
+    public void shouldJoinPrefixAndPathWithSingleSlash() {
+        assertThat(S3KeyBuilder.join("x/y", "build.json")).isEqualTo("x/y/build.json");
+        assertThat(S3KeyBuilder.join("x/y/", "/build.json")).isEqualTo("x/y/build.json");
+        assertThat(S3KeyBuilder.join("x//y", "out//build.json")).isEqualTo("x/y/out/build.json");
+    }
+
+    @Test
+    public void shouldSkipEmptyPrefix() {
+        assertThat(S3KeyBuilder.join("", "out/build.json")).isEqualTo("out/build.json");
+        assertThat(S3KeyBuilder.join("", "")).isEqualTo("");
+    }
+
+    @Test
+    public void shouldTreatBackslashesAsSeparators() {
+        assertThat(S3KeyBuilder.join("x\\y", "out\\\\build.json")).isEqualTo("x/y/out/build.json");
+        assertThat(S3KeyBuilder.normalize("out\\bin\\")).isEqualTo("out/bin");
+    }
+
+    @Test
+    public void shouldKeepLeadingSlashAndDropTrailingSlashes() {
+        assertThat(S3KeyBuilder.normalize("//x/y//")).isEqualTo("/x/y");
+        assertThat(S3KeyBuilder.join("", "/x")).isEqualTo("/x");
+        assertThat(S3KeyBuilder.normalize("/")).isEqualTo("/");
+    }
+
+    @Test
+    public void shouldJoinThreeParts() {
+        assertThat(S3KeyBuilder.join("x", "out/", ".gocd-artifact-manifest.json")).isEqualTo("x/out/.gocd-artifact-manifest.json");
+    }
+
+    @Test
+    public void shouldReuseBuilderAfterReset() {
+        S3KeyBuilder builder = new S3KeyBuilder();
+
+        assertThat(builder.append("a").append("b").build()).isEqualTo("a/b");
+        assertThat(builder.reset().append("c").build()).isEqualTo("c");
+    }
+
+    @Test
+    public void shouldReturnLastSegmentAsFileName() {
+        assertThat(S3KeyBuilder.fileName("out/build.json")).isEqualTo("build.json");
+        assertThat(S3KeyBuilder.fileName("out\\build.json")).isEqualTo("build.json");
+        assertThat(S3KeyBuilder.fileName("out/bin/")).isEqualTo("bin");
+        assertThat(S3KeyBuilder.fileName("build.json")).isEqualTo("build.json");
+        assertThat(S3KeyBuilder.fileName("")).isEqualTo("");
+    }
+
+    @Test
+    public void shouldPrefixKeysWithShardDerivedFromKey() {
+        assertThat(S3KeyBuilder.sharded("pipe/12", "lib/app.jar")).isEqualTo("d4/pipe/12/lib/app.jar");
+        assertThat(S3KeyBuilder.sharded("pipe/12", "lib/vendor.jar")).isEqualTo("85/pipe/12/lib/vendor.jar");
+        assertThat(S3KeyBuilder.sharded("", "build.json")).isEqualTo("8d/build.json");
+        assertThat(S3KeyBuilder.sharded("pipe\\12", "lib/app.jar")).isEqualTo("d4/pipe/12/lib/app.jar");
+    }
+}